@@ -65,6 +65,56 @@ added/removed. You may register a `griffon.plugins.preferences.PreferenceChangeL
 to handle the first type of event, and a `griffon.plugins.preferences.NodeChangeListener`
 to handle the second one.
 
+Changes to several keys or nodes may be applied as a unit with a transaction.
+Nothing is visible until the transaction is committed; listeners are then notified
+once per changed key, while a `griffon.plugins.preferences.ChangeBatchListener`
+receives all changes in a single event. Only `PersistentPreferences` makes all the
+changes of a commit visible at once; other trees apply them in order, and changes
+made outside of the transaction are not held back meanwhile. A commit that fails is
+undone and publishes no events. Rolling back discards the changes silently.
+
+    PreferencesTransaction tx = preferences.beginTransaction()
+    tx.put('/window', 'width', 800).put('/window', 'height', 600)
+    tx.commit()
+
+Other bulk updates may be grouped the same way between `preferences.beginBatch()`
+and `preferences.endBatch()`; reading persisted preferences and merging nodes already
+do so. A change listener that also implements `ChangeBatchListener` receives a single
+event per batch instead of one per change, while `ChangeBatchAdapter` lets a per-change
+listener be registered as a batch listener.
+
+Nodes compare the new value of a key with the old one before publishing a change.
+Large `List`, `Set` or `Map` values may be wrapped with
+`griffon.plugins.preferences.util.ContentHashedCollections`; the resulting immutable
+collections cache a hash of their contents, which lets nodes tell them apart without
+comparing every element.
+
+Nodes and keys may be looked up with glob patterns; `*` and `?` match within a path
+segment while `**` matches any number of segments. Results are computed lazily as
+they are iterated, and subtrees that cannot match are never visited.
+
+    preferences.query('/plugins/*/window.*').each { entry ->
+        println "${entry.path}#${entry.key} = ${entry.value}"
+    }
+
+Listeners may also be registered for a subtree, and optionally for a few keys only,
+in which case they are not notified of changes elsewhere in the tree. When such a
+listener also implements `ChangeBatchListener`, its single event per batch only holds
+the changes it watches.
+
+    preferences.addPreferencesChangeListener('/editor', ['fontSize'], listener)
+
+A listener that may be slow, such as one that syncs to a remote service, can be
+isolated so that it receives events from its own bounded queue and thread. The queue
+either blocks publishers, drops the oldest events, or keeps the latest value per key
+when full. A timeout and a circuit breaker suspend listeners that misbehave, and the
+lag of each isolated listener is reported as metrics.
+
+    preferences.addPreferencesChangeListener(
+        new IsolatedPreferenceChangeListener(listener, COALESCE_LATEST_PER_KEY, 1000)
+            .withTimeout(2, TimeUnit.SECONDS)
+            .withCircuitBreaker(5, 30, TimeUnit.SECONDS))
+
 `Preferences` may be resolved at any time given a `PreferencesManager`; this
 plugin will automatically instantiate a manager given the default configuration.
 Preference  values may also be injected following a naming convention. Classes
@@ -154,6 +204,153 @@ Flag: *preferences.persistor.location*
 
 Default: *$USER_HOME/$applicationName/preferences/default.json*
 
+### Injection Accessors
+
+Flag: *preferences.injection.accessors*
+
+Type: *String*, one of `direct` or `dynamic`
+
+Default: *direct*
+
+`direct` resolves the accessor methods (or the field itself when no accessor is
+available) of every `@Preference` once and invokes them directly. `dynamic` goes
+through the Groovy runtime on every access, as previous versions of this plugin did.
+
+### Preference Formats
+
+Flag: *preferences.format.cache.size*
+
+Type: *int*
+
+Default: *128*
+
+Maximum number of parsed patterns kept for preferences that define `args`.
+Patterns are cached per locale; the least recently used ones are discarded
+first. Set it to `0` to parse the pattern every time.
+
+### Memoized Preference Values
+
+Flag: *preferences.injection.memoize*
+
+Type: *boolean*
+
+Default: *false*
+
+Remembers the result of evaluating a preference whose value is a `Closure`, a
+`CallableWithArgs` or a pattern with `args`, per path and arguments. The result
+is reused until the preference changes. Leave it disabled if any of those values
+may produce a different result when evaluated again with the same arguments.
+
+### Coalesced Injection
+
+Flags: *preferences.injection.coalesce*, *preferences.injection.coalesce.window*
+
+Type: *boolean*, *int*
+
+Default: *false*, *0*
+
+When enabled, changes to preferences are not pushed right away into
+`@PreferencesAware` instances. The latest value of every changed preference is
+collected per instance and applied in a single pass inside the UI thread,
+following the declaration order of the annotated members. A window of `0`
+applies them as soon as the UI thread is done with the current burst of
+changes; a positive value waits that many milliseconds first.
+
+### Metrics
+
+Flag: *preferences.metrics*
+
+Type: *String*, one of `none`, `memory`, `jmx` or the name of a class that
+implements `griffon.plugins.preferences.metrics.PreferencesMetrics`
+
+Default: *none*
+
+Records counts and latency histograms for injection, saving, value conversion
+and event dispatch (per listener), as well as the number of registered instances
+and injection points. `memory` keeps them in memory, reachable through
+`preferencesManager.metrics`. `jmx` also publishes them as the
+`griffon.plugins.preferences:type=PreferencesMetrics` MXBean. `none` adds next
+to no overhead.
+
+### Compact Nodes
+
+Flag: *preferences.nodes.compact*
+
+Type: *boolean*
+
+Default: *false*
+
+Stores preferences in `CompactPreferencesNode`s instead of `DefaultPreferencesNode`s.
+Compact nodes take a fraction of the memory. They keep small arrays that turn
+into hashed maps only when a node has many keys or children, and their paths
+are neither cached nor indexed. In exchange, access is synchronized per node and
+lookups are slower. Consider it for trees with a very large number of nodes.
+
+### Persistent Nodes
+
+Flag: *preferences.nodes.persistent*
+
+Type: *boolean*
+
+Default: *false*
+
+Stores preferences in an immutable tree that shares structure between versions.
+`preferences.copy()` takes constant time no matter how large the tree is, and
+later writes to either the original or the copy only copy the nodes along the
+path to the changed key. Writes are lock free. Reads walk the tree from its root.
+Child nodes are not kept in insertion order. This flag takes precedence over
+`preferences.nodes.compact`. Consider it when you take copies often, for example
+for undo, for dialogs that may be cancelled, or for saving in the background.
+
+### Event Dispatch Threads
+
+Flag: *preferences.dispatch.threads*
+
+Type: *int*
+
+Default: *0*
+
+Number of threads that deliver change events to listeners. With the default,
+events are delivered on the thread that changes a preference, so a slow listener
+slows down every write. With a positive value, events are queued and delivered
+by a pool of that many threads. Events of the same node are still delivered in
+the order they happened. Listeners then run outside the thread that made the
+change, including the UI thread. Pending events are given a few seconds to be
+delivered when the application shuts down. A custom
+`griffon.plugins.preferences.dispatch.PreferencesEventDispatcher` may also be
+set directly on the `Preferences` instance.
+
+### Change Journal
+
+Flag: *preferences.journal.size*
+
+Type: *int*
+
+Default: *0*
+
+Number of recent changes kept in memory, each one numbered with an increasing
+sequence number. The journal is disabled with the default. Listeners that
+register late, or that fall behind, may catch up by replaying the journal from
+the last sequence they saw; `getFirstSequence()` tells whether older changes
+were already discarded.
+
+    PreferencesJournal journal = preferences.journal
+    long seen = journal.replay(lastSeen + 1, preferenceListener, nodeListener)
+
+### Change Journal File
+
+Flag: *preferences.journal.file*
+
+Type: *String*
+
+Default: *none*
+
+Appends every change recorded by the journal to the given file, one JSON object
+per line, for auditing or for feeding another consumer. The file is written in
+the background and is never truncated. Up to 8192 changes may wait to be written;
+further changes are dropped, counted and logged until the writer catches up. The
+file stops being written if an error occurs. Requires `preferences.journal.size`.
+
 
 [1]: http://docs.oracle.com/javase/7/docs/api/java/util/prefs/Preferences.html
 [2]: http://griffon.codehaus.org/guide/latest/guide/resourceManagement.html
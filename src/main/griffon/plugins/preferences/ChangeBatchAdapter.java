@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences;
+
+/**
+ * Replays every change of a batch to listeners that handle one change at a
+ * time, in the order the batch lists them, node events first. Either listener
+ * may be null.
+ *
+ * @author Andres Almiray
+ */
+public class ChangeBatchAdapter implements ChangeBatchListener {
+    private final PreferenceChangeListener preferenceChangeListener;
+    private final NodeChangeListener nodeChangeListener;
+
+    public ChangeBatchAdapter(PreferenceChangeListener preferenceChangeListener) {
+        this(preferenceChangeListener, null);
+    }
+
+    public ChangeBatchAdapter(NodeChangeListener nodeChangeListener) {
+        this(null, nodeChangeListener);
+    }
+
+    public ChangeBatchAdapter(PreferenceChangeListener preferenceChangeListener, NodeChangeListener nodeChangeListener) {
+        this.preferenceChangeListener = preferenceChangeListener;
+        this.nodeChangeListener = nodeChangeListener;
+    }
+
+    public void changesCommitted(ChangeBatchEvent event) {
+        if (null != nodeChangeListener) {
+            for (NodeChangeEvent nodeEvent : event.getNodeEvents()) {
+                nodeChangeListener.nodeChanged(nodeEvent);
+            }
+        }
+        if (null != preferenceChangeListener) {
+            for (PreferenceChangeEvent preferenceEvent : event.getPreferenceEvents()) {
+                preferenceChangeListener.preferenceChanged(preferenceEvent);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ChangeBatchAdapter)) return false;
+        ChangeBatchAdapter that = (ChangeBatchAdapter) o;
+        return same(preferenceChangeListener, that.preferenceChangeListener) &&
+            same(nodeChangeListener, that.nodeChangeListener);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = null != preferenceChangeListener ? preferenceChangeListener.hashCode() : 0;
+        return 31 * result + (null != nodeChangeListener ? nodeChangeListener.hashCode() : 0);
+    }
+
+    private static boolean same(Object a, Object b) {
+        return null == a ? null == b : a.equals(b);
+    }
+}
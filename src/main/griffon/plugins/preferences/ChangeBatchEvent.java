@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changes published together by a batch or a committed transaction, reduced to
+ * their net effect. There is at most one preference event per changed key,
+ * carrying its value before the batch and its final value; a node is listed as
+ * added or removed, or as removed then added if it was replaced.
+ *
+ * @author Andres Almiray
+ */
+public class ChangeBatchEvent {
+    private final List<NodeChangeEvent> nodeEvents;
+    private final List<PreferenceChangeEvent> preferenceEvents;
+
+    public ChangeBatchEvent(List<NodeChangeEvent> nodeEvents, List<PreferenceChangeEvent> preferenceEvents) {
+        this.nodeEvents = Collections.unmodifiableList(nodeEvents);
+        this.preferenceEvents = Collections.unmodifiableList(preferenceEvents);
+    }
+
+    public List<NodeChangeEvent> getNodeEvents() {
+        return nodeEvents;
+    }
+
+    public List<PreferenceChangeEvent> getPreferenceEvents() {
+        return preferenceEvents;
+    }
+
+    public boolean isEmpty() {
+        return nodeEvents.isEmpty() && preferenceEvents.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeBatchEvent{" +
+            "nodeEvents=" + nodeEvents +
+            ", preferenceEvents=" + preferenceEvents +
+            '}';
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences;
+
+import java.util.Arrays;
+
+/**
+ * Describes a member annotated with {@code @Preference}, as seen by a {@code PreferencesInjector}.
+ *
+ * @author Andres Almiray
+ */
+public final class InjectedPreference {
+    private final String name;
+    private final String fqName;
+    private final String path;
+    private final String[] args;
+    private final String defaultValue;
+    private final String format;
+    private final Class<?> type;
+
+    public InjectedPreference(String name, String fqName, String path, String[] args, String defaultValue, String format, Class<?> type) {
+        this.name = name;
+        this.fqName = fqName;
+        this.path = path;
+        this.args = args;
+        this.defaultValue = defaultValue;
+        this.format = format;
+        this.type = type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFqName() {
+        return fqName;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String[] getArgs() {
+        return args;
+    }
+
+    public String getDefaultValue() {
+        return defaultValue;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("InjectedPreference{");
+        sb.append("name='").append(name).append('\'');
+        sb.append(", fqName='").append(fqName).append('\'');
+        sb.append(", path='").append(path).append('\'');
+        sb.append(", args=").append(Arrays.toString(args));
+        sb.append(", defaultValue='").append(defaultValue).append('\'');
+        sb.append(", format='").append(format).append('\'');
+        sb.append(", type=").append(type);
+        sb.append('}');
+        return sb.toString();
+    }
+}
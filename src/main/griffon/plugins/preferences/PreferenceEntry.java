@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences;
+
+/**
+ * A key of a node along with the value it had when the entry was produced.
+ *
+ * @author Andres Almiray
+ */
+public class PreferenceEntry {
+    private final PreferencesNode node;
+    private final String key;
+    private final Object value;
+
+    public PreferenceEntry(PreferencesNode node, String key, Object value) {
+        this.node = node;
+        this.key = key;
+        this.value = value;
+    }
+
+    public PreferencesNode getNode() {
+        return node;
+    }
+
+    public String getPath() {
+        return node.path();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "PreferenceEntry{" +
+            "path='" + node.path() + '\'' +
+            ", key='" + key + '\'' +
+            ", value=" + value +
+            '}';
+    }
+}
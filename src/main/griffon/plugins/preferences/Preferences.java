@@ -16,22 +16,64 @@
 
 package griffon.plugins.preferences;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * @author Andres Almiray
  */
 public interface Preferences extends NodeChangeListener, PreferenceChangeListener {
     void addNodeChangeListener(NodeChangeListener listener);
 
+    /**
+     * Registers a listener for the node at the given path and its subtree. The
+     * listener is notified when a node is added or removed along that path,
+     * whether above, at or below the given node.
+     */
+    void addNodeChangeListener(String path, NodeChangeListener listener);
+
+    /**
+     * Removes the listener, wherever it was registered.
+     */
     void removeNodeChangeListener(NodeChangeListener listener);
 
+    void removeNodeChangeListener(String path, NodeChangeListener listener);
+
+    /**
+     * Returns the listeners registered for the whole tree.
+     */
     NodeChangeListener[] getNodeChangeListeners();
 
     void addPreferencesChangeListener(PreferenceChangeListener listener);
 
+    /**
+     * Registers a listener for the keys of the node at the given path and of its subtree.
+     */
+    void addPreferencesChangeListener(String path, PreferenceChangeListener listener);
+
+    /**
+     * Registers a listener for the given keys of the node at the given path and of its subtree.
+     */
+    void addPreferencesChangeListener(String path, Collection<String> keys, PreferenceChangeListener listener);
+
+    /**
+     * Removes the listener, wherever it was registered.
+     */
     void removePreferencesChangeListener(PreferenceChangeListener listener);
 
+    void removePreferencesChangeListener(String path, PreferenceChangeListener listener);
+
+    /**
+     * Returns the listeners registered for the whole tree.
+     */
     PreferenceChangeListener[] getPreferencesChangeListeners();
 
+    void addChangeBatchListener(ChangeBatchListener listener);
+
+    void removeChangeBatchListener(ChangeBatchListener listener);
+
+    ChangeBatchListener[] getChangeBatchListeners();
+
     PreferencesNode getRoot();
 
     PreferencesNode node(Class<?> clazz);
@@ -43,4 +85,55 @@ public interface Preferences extends NodeChangeListener, PreferenceChangeListene
     PreferencesNode removeNode(String path);
 
     Preferences copy();
+
+    /**
+     * Returns the latest modification stamp handed out to any node. Stamps are
+     * shared by all trees and only ever increase.
+     */
+    long currentStamp();
+
+    /**
+     * Returns the nodes of this tree whose keys or set of children changed after
+     * the given stamp, parents first. Unchanged subtrees are not visited.
+     */
+    List<PreferencesNode> changedSince(long stamp);
+
+    /**
+     * Returns the nodes whose path matches the given glob pattern, parents first.
+     * Segments are separated by '/' or '.'; within a segment '*' matches any
+     * number of characters and '?' a single one, while a segment made of '**'
+     * matches any number of segments. Results are computed while iterating.
+     */
+    Iterable<PreferencesNode> queryNodes(String pathPattern);
+
+    /**
+     * Returns the keys matching the given glob pattern of the nodes that match the given path pattern.
+     */
+    Iterable<PreferenceEntry> query(String pathPattern, String keyPattern);
+
+    /**
+     * Same as {@link #query(String, String)}, with the key pattern following
+     * the last '.' of the given pattern, for example <code>/plugins/*&#47;window.*</code>.
+     * All keys match if there is no '.' after the last '/'.
+     */
+    Iterable<PreferenceEntry> query(String pattern);
+
+    /**
+     * Starts collecting the change events triggered by the current thread, so
+     * that they are published together by the matching call to {@link #endBatch()}.
+     * Batches may be nested.
+     */
+    void beginBatch();
+
+    /**
+     * Ends the batch started by the matching call to {@link #beginBatch()}.
+     * Ending the outermost batch publishes every change it collected, once per
+     * changed key, followed by a single {@code ChangeBatchEvent}.
+     */
+    void endBatch();
+
+    /**
+     * Starts a transaction that applies its changes to this tree as a unit.
+     */
+    PreferencesTransaction beginTransaction();
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences;
+
+/**
+ * Reads and writes the {@code @Preference} members declared by a class without
+ * resorting to reflection.</p>
+ * Implementations are generated at compile time, either by
+ * {@code PreferencesInjectorProcessor} (Java sources) or by
+ * {@code PreferencesInjectorASTTransformation} (Groovy sources), and are named
+ * after the class they serve plus {@link #CLASS_NAME_SUFFIX}. A
+ * {@code PreferencesManager} uses them whenever they are available and falls
+ * back to reflection otherwise.
+ *
+ * @author Andres Almiray
+ */
+public interface PreferencesInjector {
+    String CLASS_NAME_SUFFIX = "$PreferencesInjector";
+
+    /**
+     * Returns the preferences declared by the target class, in declaration order.
+     * The position of each preference is the index that must be supplied to
+     * {@link #getValue(Object, int)} and {@link #setValue(Object, int, Object)}.
+     *
+     * @return all preferences declared by the target class. Never returns null.
+     */
+    InjectedPreference[] getPreferences();
+
+    Object getValue(Object instance, int index);
+
+    void setValue(Object instance, int index, Object value);
+}
@@ -40,4 +40,14 @@ public interface PreferencesManager extends ApplicationHandler {
      * @param instance an object with fields/properties annotated with {@code @Preference}.
      */
     void save(Object instance);
+
+    /**
+     * <p>Saves the preferences of every given instance, as if {@link #save(Object)}
+     * were called on each one of them.</p>
+     * <p>Change events are published once all values have been written. Each
+     * changed key is notified once, regardless of how many instances wrote to it.</p>
+     *
+     * @param instances objects with fields/properties annotated with {@code @Preference}.
+     */
+    void saveAll(Iterable<?> instances);
 }
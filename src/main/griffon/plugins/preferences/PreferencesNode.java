@@ -34,8 +34,34 @@ public interface PreferencesNode {
 
     void putAt(String key, Object value);
 
+    int getInt(String key, int defaultValue);
+
+    void putInt(String key, int value);
+
+    long getLong(String key, long defaultValue);
+
+    void putLong(String key, long value);
+
+    double getDouble(String key, double defaultValue);
+
+    void putDouble(String key, double value);
+
+    boolean getBoolean(String key, boolean defaultValue);
+
+    void putBoolean(String key, boolean value);
+
     boolean isRoot();
 
+    /**
+     * Stamp of the latest change to the keys or to the set of children of this node.
+     */
+    long modificationStamp();
+
+    /**
+     * Stamp of the latest change to this node or to any of its descendants.
+     */
+    long subtreeModificationStamp();
+
     void remove(String key);
 
     void clear();
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences;
+
+/**
+ * Set of changes to a {@code Preferences} tree that are applied as a unit.</p>
+ * Changes are buffered until {@link #commit()} is called; reads made through
+ * the transaction see them, other readers do not. Committing applies them in
+ * the order they were made, notifies per change listeners once per changed key
+ * and {@code ChangeBatchListener}s once for the whole transaction. Rolling back
+ * discards them without notifying anybody. Transactions are meant to be used
+ * by a single thread.
+ *
+ * @author Andres Almiray
+ */
+public interface PreferencesTransaction {
+    /**
+     * Reads a key, taking into account the changes made by this transaction.
+     */
+    Object get(String path, String key);
+
+    PreferencesTransaction put(String path, String key, Object value);
+
+    PreferencesTransaction remove(String path, String key);
+
+    PreferencesTransaction createNode(String path);
+
+    PreferencesTransaction removeNode(String path);
+
+    /**
+     * Applies all changes. The transaction can not be used afterwards.
+     *
+     * @throws IllegalStateException if the transaction was already committed or rolled back.
+     */
+    void commit();
+
+    /**
+     * Discards all changes. The transaction can not be used afterwards.
+     * Rolling back a finished transaction has no effect.
+     */
+    void rollback();
+
+    boolean isActive();
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences.dispatch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers change events to listeners.</p>
+ * Events that belong to the same path are delivered in the order they were
+ * dispatched; no ordering is guaranteed between different paths.
+ *
+ * @author Andres Almiray
+ */
+public interface PreferencesEventDispatcher {
+    /**
+     * Whether events are delivered on the thread that dispatches them, before
+     * {@link #dispatch(String, Runnable)} returns.
+     */
+    boolean isSynchronous();
+
+    /**
+     * Delivers an event by running the given task.
+     *
+     * @param path the path of the node the event belongs to
+     * @param task the task that notifies listeners
+     */
+    void dispatch(String path, Runnable task);
+
+    /**
+     * Returns the number of dispatched tasks that have not completed yet.
+     */
+    int getQueueDepth();
+
+    /**
+     * Waits until every task dispatched so far has completed. Must not be
+     * called from a listener, as the task running it would never complete.
+     *
+     * @return true if all tasks completed, false if the timeout elapsed first
+     */
+    boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Releases the resources held by this dispatcher. Events dispatched
+     * afterwards are delivered on the dispatching thread.
+     */
+    void shutdown();
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences.journal;
+
+import griffon.plugins.preferences.NodeChangeEvent;
+import griffon.plugins.preferences.NodeChangeListener;
+import griffon.plugins.preferences.PreferenceChangeEvent;
+import griffon.plugins.preferences.PreferenceChangeListener;
+
+/**
+ * A change recorded by a {@code PreferencesJournal}, holding either a
+ * {@code PreferenceChangeEvent} or a {@code NodeChangeEvent}.
+ *
+ * @author Andres Almiray
+ */
+public class JournalEntry {
+    private final long sequence;
+    private final long timestamp;
+    private final PreferenceChangeEvent preferenceEvent;
+    private final NodeChangeEvent nodeEvent;
+
+    public JournalEntry(long sequence, long timestamp, PreferenceChangeEvent preferenceEvent) {
+        this(sequence, timestamp, preferenceEvent, null);
+    }
+
+    public JournalEntry(long sequence, long timestamp, NodeChangeEvent nodeEvent) {
+        this(sequence, timestamp, null, nodeEvent);
+    }
+
+    private JournalEntry(long sequence, long timestamp, PreferenceChangeEvent preferenceEvent, NodeChangeEvent nodeEvent) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.preferenceEvent = preferenceEvent;
+        this.nodeEvent = nodeEvent;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the time the change was recorded, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getPath() {
+        return null != preferenceEvent ? preferenceEvent.getPath() : nodeEvent.getPath();
+    }
+
+    /**
+     * Returns the recorded event if it is a preference change, null otherwise.
+     */
+    public PreferenceChangeEvent getPreferenceEvent() {
+        return preferenceEvent;
+    }
+
+    /**
+     * Returns the recorded event if it is a node change, null otherwise.
+     */
+    public NodeChangeEvent getNodeEvent() {
+        return nodeEvent;
+    }
+
+    /**
+     * Hands the recorded event to the matching listener, which may be null.
+     */
+    public void deliver(PreferenceChangeListener preferenceChangeListener, NodeChangeListener nodeChangeListener) {
+        if (null != preferenceEvent && null != preferenceChangeListener) {
+            preferenceChangeListener.preferenceChanged(preferenceEvent);
+        } else if (null != nodeEvent && null != nodeChangeListener) {
+            nodeChangeListener.nodeChanged(nodeEvent);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEntry{" +
+            "sequence=" + sequence +
+            ", event=" + (null != preferenceEvent ? preferenceEvent : nodeEvent) +
+            '}';
+    }
+}
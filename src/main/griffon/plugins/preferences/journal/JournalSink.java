@@ -0,0 +1,31 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences.journal;
+
+/**
+ * Receives every entry recorded by a {@code PreferencesJournal}, in sequence order.
+ *
+ * @author Andres Almiray
+ */
+public interface JournalSink {
+    void append(JournalEntry entry);
+
+    /**
+     * Writes out pending entries and releases any resources held by this sink.
+     */
+    void close();
+}
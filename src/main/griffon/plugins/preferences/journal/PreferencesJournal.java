@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences.journal;
+
+import griffon.plugins.preferences.NodeChangeListener;
+import griffon.plugins.preferences.PreferenceChangeListener;
+
+import java.util.List;
+
+/**
+ * Keeps the most recent changes of a {@code Preferences} tree, numbered with
+ * increasing sequence numbers starting at 1.</p>
+ * The journal is notified of every change as it is published, in the order
+ * changes are published. Older entries are discarded once the journal is
+ * full; callers that find {@link #getFirstSequence()} past the sequence they
+ * expected have missed changes and should read the tree again.
+ *
+ * @author Andres Almiray
+ */
+public interface PreferencesJournal extends PreferenceChangeListener, NodeChangeListener {
+    /**
+     * Returns the sequence of the oldest entry still kept, or the sequence the
+     * next entry will have if the journal is empty.
+     */
+    long getFirstSequence();
+
+    /**
+     * Returns the sequence of the latest entry, 0 if nothing was recorded yet.
+     */
+    long getLastSequence();
+
+    /**
+     * Returns the entries kept from the given sequence on, oldest first.
+     */
+    List<JournalEntry> entriesFrom(long sequence);
+
+    /**
+     * Delivers the entries kept from the given sequence on to the given listeners,
+     * either of which may be null.
+     *
+     * @return the sequence of the last entry delivered, or {@code sequence - 1} if there was none
+     */
+    long replay(long sequence, PreferenceChangeListener preferenceChangeListener, NodeChangeListener nodeChangeListener);
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences.metrics;
+
+/**
+ * Records how often, and for how long, the preferences machinery runs.</p>
+ * Callers are expected to guard any work needed to produce a measurement with
+ * {@link #isEnabled()}, so that a disabled implementation costs no more than
+ * a volatile read and a branch.
+ *
+ * @author Andres Almiray
+ */
+public interface PreferencesMetrics {
+    String INJECT = "inject";
+    String SAVE = "save";
+    String CONVERT = "convert";
+    String DISPATCH_NODE_CHANGE = "dispatch.node.";
+    String DISPATCH_PREFERENCE_CHANGE = "dispatch.preference.";
+    String DISPATCH_QUEUE_DEPTH = "dispatch.queueDepth";
+    String LISTENER_LAG = "listener.lag.";
+    String LISTENER_PENDING = "listener.pending.";
+    String LISTENER_DROPPED = "listener.dropped.";
+    String REGISTERED_INSTANCES = "registered.instances";
+    String REGISTERED_INJECTION_POINTS = "registered.injectionPoints";
+
+    boolean isEnabled();
+
+    /**
+     * Returns a timestamp to be handed back to {@link #stopTimer(String, long)}.
+     */
+    long startTimer();
+
+    void stopTimer(String name, long startTime);
+
+    void registerGauge(String name, Gauge gauge);
+
+    void unregisterGauge(String name);
+
+    interface Gauge {
+        long getValue();
+    }
+}
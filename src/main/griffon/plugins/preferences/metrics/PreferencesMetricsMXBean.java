@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of an in-memory {@code PreferencesMetrics}.</p>
+ * Histograms have one bucket per power of two; bucket {@code i} counts the
+ * measurements that took between 2<sup>i</sup> and 2<sup>i+1</sup> nanoseconds.
+ *
+ * @author Andres Almiray
+ */
+public interface PreferencesMetricsMXBean {
+    Map<String, Long> getCounts();
+
+    Map<String, Long> getTotalTimes();
+
+    Map<String, Long> getMaxTimes();
+
+    Map<String, Long> getGauges();
+
+    long[] getHistogram(String name);
+
+    void reset();
+}
@@ -18,7 +18,6 @@ package griffon.plugins.preferences.persistors;
 
 import griffon.core.ApplicationHandler;
 import griffon.core.GriffonApplication;
-import griffon.core.resources.editors.PropertyEditorResolver;
 import griffon.plugins.preferences.Preferences;
 import griffon.plugins.preferences.PreferencesManager;
 import griffon.plugins.preferences.PreferencesNode;
@@ -26,10 +25,10 @@ import griffon.plugins.preferences.PreferencesPersistor;
 import griffon.util.Metadata;
 import groovy.json.JsonBuilder;
 import groovy.json.JsonSlurper;
+import org.codehaus.griffon.runtime.prefs.converters.ValueConverters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.beans.PropertyEditor;
 import java.io.*;
 import java.util.*;
 
@@ -101,9 +100,14 @@ public class JsonPreferencesPersistor implements PreferencesPersistor, Applicati
             throw new IllegalArgumentException("Top node of persisted Preferences is not a Map!");
         }
 
-        PreferencesNode node = preferencesManager.getPreferences().getRoot();
+        Preferences preferences = preferencesManager.getPreferences();
         Map<String, Object> map = (Map<String, Object>) o;
-        readInto(map, node);
+        preferences.beginBatch();
+        try {
+            readInto(map, preferences.getRoot());
+        } finally {
+            preferences.endBatch();
+        }
 
         return preferencesManager.getPreferences();
     }
@@ -170,7 +174,7 @@ public class JsonPreferencesPersistor implements PreferencesPersistor, Applicati
             return tmp;
         } else if (value instanceof Collection) {
             List<Object> tmp = new ArrayList<Object>();
-            List source = (List) value;
+            Collection source = (Collection) value;
             for (Object val : source) {
                 tmp.add(convertValue(val));
             }
@@ -183,13 +187,7 @@ public class JsonPreferencesPersistor implements PreferencesPersistor, Applicati
             }
             return tmp;
         } else {
-            PropertyEditor propertyEditor = PropertyEditorResolver.findEditor(value.getClass());
-            if (propertyEditor != null) {
-                propertyEditor.setValue(value);
-                return propertyEditor.getAsText();
-            } else {
-                return value;
-            }
+            return ValueConverters.toLiteral(value, null);
         }
     }
 }
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences.util;
+
+/**
+ * Value that caches a hash of its contents. Preference nodes compare two such
+ * values by their content hash before falling back to a deep comparison, which
+ * only happens when the hashes match. Implementations must be immutable, and
+ * values that are equal must have the same content hash.
+ *
+ * @author Andres Almiray
+ */
+public interface ContentHashed {
+    long contentHash();
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.preferences.util;
+
+import java.util.*;
+
+/**
+ * Factory of immutable {@code List}s, {@code Set}s and {@code Map}s that implement
+ * {@link ContentHashed}. Storing one of these as a preference value instead of a
+ * plain collection lets nodes detect that a large collection changed without
+ * comparing it element by element. The given collection is copied, later changes
+ * to it are not reflected.
+ *
+ * @author Andres Almiray
+ */
+public final class ContentHashedCollections {
+    private ContentHashedCollections() {
+    }
+
+    public static <E> List<E> list(Collection<? extends E> elements) {
+        return new HashedList<E>(elements.toArray());
+    }
+
+    public static <E> Set<E> set(Collection<? extends E> elements) {
+        return new HashedSet<E>(new LinkedHashSet<E>(elements));
+    }
+
+    public static <K, V> Map<K, V> map(Map<? extends K, ? extends V> entries) {
+        return new HashedMap<K, V>(new LinkedHashMap<K, V>(entries));
+    }
+
+    /**
+     * Compares two values by identity first, then by content hash when both
+     * values provide one, and deeply only when those hashes match.
+     */
+    public static boolean areEqual(Object a, Object b) {
+        if (a == b) return true;
+        if (null == a || null == b) return false;
+        if (a instanceof ContentHashed && b instanceof ContentHashed &&
+            ((ContentHashed) a).contentHash() != ((ContentHashed) b).contentHash()) return false;
+        return a.equals(b);
+    }
+
+    private static long hash(Object value) {
+        if (null == value) return 0L;
+        // nested collections hash by content whether they are wrapped or not, as they compare
+        if (value instanceof ContentHashed && (value instanceof HashedList || value instanceof HashedSet || value instanceof HashedMap)) {
+            return ((ContentHashed) value).contentHash();
+        }
+        if (value instanceof List) return listHash(((List<?>) value).toArray());
+        if (value instanceof Set) return setHash((Set<?>) value);
+        if (value instanceof Map) return mapHash((Map<?, ?>) value);
+        // spreads 32 bit hashes over 64 bits
+        long h = value.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 29);
+    }
+
+    private static long listHash(Object[] elements) {
+        long h = 1L;
+        for (Object element : elements) {
+            h = 31L * h + hash(element);
+        }
+        return h;
+    }
+
+    private static long setHash(Set<?> elements) {
+        long h = 0L;
+        for (Object element : elements) {
+            h += hash(element);
+        }
+        return h;
+    }
+
+    private static long mapHash(Map<?, ?> entries) {
+        long h = 0L;
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            h += hash(entry.getKey()) ^ (31L * hash(entry.getValue()));
+        }
+        return h;
+    }
+
+    private static final class HashedList<E> extends AbstractList<E> implements RandomAccess, ContentHashed {
+        private final Object[] elements;
+        private final long contentHash;
+        private int hashCode;
+
+        private HashedList(Object[] elements) {
+            this.elements = elements;
+            this.contentHash = listHash(elements);
+        }
+
+        public long contentHash() {
+            return contentHash;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if (index < 0 || index >= elements.length) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.length);
+            return (E) elements[index];
+        }
+
+        public int size() {
+            return elements.length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof HashedList && ((HashedList) o).contentHash != contentHash) return false;
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            if (0 == hashCode) hashCode = super.hashCode();
+            return hashCode;
+        }
+    }
+
+    private static final class HashedSet<E> extends AbstractSet<E> implements ContentHashed {
+        private final Set<E> elements;
+        private final long contentHash;
+        private int hashCode;
+
+        private HashedSet(Set<E> elements) {
+            this.elements = Collections.unmodifiableSet(elements);
+            this.contentHash = setHash(elements);
+        }
+
+        public long contentHash() {
+            return contentHash;
+        }
+
+        public Iterator<E> iterator() {
+            return elements.iterator();
+        }
+
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return elements.contains(o);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof HashedSet && ((HashedSet) o).contentHash != contentHash) return false;
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            if (0 == hashCode) hashCode = super.hashCode();
+            return hashCode;
+        }
+    }
+
+    private static final class HashedMap<K, V> extends AbstractMap<K, V> implements ContentHashed {
+        private final Map<K, V> entries;
+        private final long contentHash;
+        private int hashCode;
+
+        private HashedMap(Map<K, V> entries) {
+            this.entries = Collections.unmodifiableMap(entries);
+            this.contentHash = mapHash(entries);
+        }
+
+        public long contentHash() {
+            return contentHash;
+        }
+
+        public Set<Map.Entry<K, V>> entrySet() {
+            return entries.entrySet();
+        }
+
+        @Override
+        public V get(Object key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof HashedMap && ((HashedMap) o).contentHash != contentHash) return false;
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            if (0 == hashCode) hashCode = super.hashCode();
+            return hashCode;
+        }
+    }
+}
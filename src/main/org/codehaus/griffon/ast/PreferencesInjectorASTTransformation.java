@@ -0,0 +1,317 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.ast;
+
+import griffon.plugins.preferences.InjectedPreference;
+import griffon.plugins.preferences.Preference;
+import griffon.plugins.preferences.PreferencesInjector;
+import org.codehaus.groovy.ast.*;
+import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.ast.stmt.*;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.syntax.Token;
+import org.codehaus.groovy.syntax.Types;
+import org.codehaus.groovy.transform.ASTTransformation;
+import org.codehaus.groovy.transform.GroovyASTTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.Introspector;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static griffon.util.GriffonNameUtils.getGetterName;
+import static griffon.util.GriffonNameUtils.getSetterName;
+import static java.lang.reflect.Modifier.PUBLIC;
+import static java.lang.reflect.Modifier.STATIC;
+
+/**
+ * Generates a {@code PreferencesInjector} for every Groovy class that declares
+ * members annotated with {@code @Preference}.</p>
+ * The injector is added as a static inner class of the annotated class.
+ * Classes whose members do not follow the conventions supported by reflection
+ * are left untouched; those are handled by reflection at runtime.
+ *
+ * @author Andres Almiray
+ */
+@GroovyASTTransformation(phase = CompilePhase.CANONICALIZATION)
+public class PreferencesInjectorASTTransformation implements ASTTransformation {
+    private static final Logger LOG = LoggerFactory.getLogger(PreferencesInjectorASTTransformation.class);
+    private static final ClassNode PREFERENCE_TYPE = ClassHelper.makeWithoutCaching(Preference.class);
+    private static final ClassNode PREFERENCES_INJECTOR_TYPE = ClassHelper.makeWithoutCaching(PreferencesInjector.class);
+    private static final ClassNode INJECTED_PREFERENCE_TYPE = ClassHelper.makeWithoutCaching(InjectedPreference.class);
+    private static final ClassNode INDEX_OUT_OF_BOUNDS_TYPE = ClassHelper.makeWithoutCaching(IndexOutOfBoundsException.class);
+    private static final String PROCESSED = PreferencesInjectorASTTransformation.class.getName();
+    private static final String INSTANCE = "instance";
+    private static final String INDEX = "index";
+    private static final String VALUE = "value";
+
+    public void visit(ASTNode[] nodes, SourceUnit source) {
+        if (nodes.length != 2 || !(nodes[0] instanceof AnnotationNode) || !(nodes[1] instanceof AnnotatedNode)) return;
+
+        // the transformation is triggered once per annotated member but must run once per class
+        ClassNode owner = ((AnnotatedNode) nodes[1]).getDeclaringClass();
+        if (null == owner || null != owner.getNodeMetaData(PROCESSED)) return;
+        owner.setNodeMetaData(PROCESSED, Boolean.TRUE);
+        if (owner.isInterface() || (owner instanceof InnerClassNode && ((InnerClassNode) owner).isAnonymous())) return;
+
+        List<Member> members = collectMembers(owner);
+        if (null == members || members.isEmpty()) return;
+
+        InnerClassNode injector = new InnerClassNode(owner, owner.getName() + PreferencesInjector.CLASS_NAME_SUFFIX,
+            PUBLIC | STATIC, ClassHelper.OBJECT_TYPE, new ClassNode[]{PREFERENCES_INJECTOR_TYPE}, MixinNode.EMPTY_ARRAY);
+        injector.addMethod("getPreferences", PUBLIC, INJECTED_PREFERENCE_TYPE.makeArray(), Parameter.EMPTY_ARRAY,
+            ClassNode.EMPTY_ARRAY, getPreferencesBody(members));
+        Parameter instance = new Parameter(ClassHelper.OBJECT_TYPE, INSTANCE);
+        Parameter index = new Parameter(ClassHelper.int_TYPE, INDEX);
+        Parameter value = new Parameter(ClassHelper.OBJECT_TYPE, VALUE);
+        injector.addMethod("getValue", PUBLIC, ClassHelper.OBJECT_TYPE, new Parameter[]{instance, index},
+            ClassNode.EMPTY_ARRAY, getValueBody(owner, members, instance, index));
+        injector.addMethod("setValue", PUBLIC, ClassHelper.VOID_TYPE, new Parameter[]{instance, index, value},
+            ClassNode.EMPTY_ARRAY, setValueBody(owner, members, instance, index, value));
+        owner.getModule().addClass(injector);
+    }
+
+    private List<Member> collectMembers(ClassNode owner) {
+        Map<String, Member> members = new LinkedHashMap<String, Member>();
+
+        for (MethodNode method : owner.getMethods()) {
+            AnnotationNode annotation = findPreference(method);
+            if (null == annotation || method.isStatic()) continue;
+            String propertyName = propertyName(method);
+            if (null == propertyName || members.containsKey(propertyName)) continue;
+            MethodNode getter = findGetter(owner, propertyName);
+            MethodNode setter = findSetter(owner, propertyName);
+            if (null == getter || null == setter) return skip(owner, "property " + propertyName + " does not have both read and write methods");
+            // the setter has precedence if both accessors are annotated
+            AnnotationNode setterAnnotation = findPreference(setter);
+            if (null != setterAnnotation) annotation = setterAnnotation;
+            ClassNode declaringClass = setter.getDeclaringClass();
+            members.put(propertyName, new Member(propertyName, declaringClass.getName().replace('$', '.') + "." + setter.getName(),
+                path(declaringClass, propertyName, annotation), annotation, getter.getReturnType(), Access.METHOD));
+        }
+
+        for (FieldNode field : owner.getFields()) {
+            AnnotationNode annotation = findPreference(field);
+            if (null == annotation || field.isStatic() || members.containsKey(field.getName())) continue;
+            String fieldName = field.getName();
+            Access access = Access.FIELD;
+            if (null != owner.getProperty(fieldName)) {
+                // accessors are generated for properties later on
+                access = Access.PROPERTY;
+            } else if (null != findGetter(owner, fieldName) && null != findSetter(owner, fieldName)) {
+                access = Access.METHOD;
+            }
+            members.put(fieldName, new Member(fieldName, owner.getName().replace('$', '.') + "." + fieldName,
+                path(owner, fieldName, annotation), annotation, field.getType(), access));
+        }
+
+        return new ArrayList<Member>(members.values());
+    }
+
+    private List<Member> skip(ClassNode owner, String reason) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Preferences of " + owner.getName() + " will be resolved at runtime because " + reason);
+        }
+        return null;
+    }
+
+    private static AnnotationNode findPreference(AnnotatedNode node) {
+        List<AnnotationNode> annotations = node.getAnnotations(PREFERENCE_TYPE);
+        return annotations.isEmpty() ? null : annotations.get(0);
+    }
+
+    private static String propertyName(MethodNode method) {
+        String name = method.getName();
+        int parameters = method.getParameters().length;
+        if (name.startsWith("set") && name.length() > 3 && parameters == 1) {
+            return Introspector.decapitalize(name.substring(3));
+        } else if (name.startsWith("get") && name.length() > 3 && parameters == 0) {
+            return Introspector.decapitalize(name.substring(3));
+        } else if (name.startsWith("is") && name.length() > 2 && parameters == 0) {
+            return Introspector.decapitalize(name.substring(2));
+        }
+        return null;
+    }
+
+    private static MethodNode findGetter(ClassNode owner, String propertyName) {
+        MethodNode getter = findMethod(owner, getGetterName(propertyName), 0);
+        if (null == getter) {
+            getter = findMethod(owner, "is" + getGetterName(propertyName).substring(3), 0);
+            if (null != getter && !ClassHelper.boolean_TYPE.equals(getter.getReturnType())) getter = null;
+        }
+        return null != getter && !ClassHelper.VOID_TYPE.equals(getter.getReturnType()) ? getter : null;
+    }
+
+    private static MethodNode findSetter(ClassNode owner, String propertyName) {
+        return findMethod(owner, getSetterName(propertyName), 1);
+    }
+
+    private static MethodNode findMethod(ClassNode owner, String name, int parameters) {
+        for (ClassNode type = owner; null != type; type = type.getSuperClass()) {
+            for (MethodNode method : type.getMethods(name)) {
+                if (!method.isStatic() && !method.isPrivate() && method.getParameters().length == parameters) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String path(ClassNode owner, String name, AnnotationNode annotation) {
+        String key = stringMember(annotation, "key");
+        if (key.trim().length() > 0) return key;
+        return "/" + owner.getName().replace('$', '/').replace('.', '/') + "." + name;
+    }
+
+    private static String stringMember(AnnotationNode annotation, String name) {
+        Expression member = annotation.getMember(name);
+        return member instanceof ConstantExpression ? String.valueOf(((ConstantExpression) member).getValue()) : "";
+    }
+
+    private static Expression argsMember(AnnotationNode annotation) {
+        List<Expression> args = new ArrayList<Expression>();
+        Expression member = annotation.getMember("args");
+        if (member instanceof ListExpression) {
+            for (Expression expression : ((ListExpression) member).getExpressions()) {
+                if (expression instanceof ConstantExpression) {
+                    args.add(new ConstantExpression(String.valueOf(((ConstantExpression) expression).getValue())));
+                }
+            }
+        } else if (member instanceof ConstantExpression) {
+            args.add(new ConstantExpression(String.valueOf(((ConstantExpression) member).getValue())));
+        }
+        return new ArrayExpression(ClassHelper.STRING_TYPE, args);
+    }
+
+    private static ClassNode erasure(ClassNode type) {
+        if (type.isGenericsPlaceHolder()) type = type.redirect();
+        return type.getPlainNodeReference();
+    }
+
+    private static Statement getPreferencesBody(List<Member> members) {
+        List<Expression> preferences = new ArrayList<Expression>();
+        for (Member member : members) {
+            preferences.add(new ConstructorCallExpression(INJECTED_PREFERENCE_TYPE, new ArgumentListExpression(new Expression[]{
+                new ConstantExpression(member.name),
+                new ConstantExpression(member.fqName),
+                new ConstantExpression(member.path),
+                argsMember(member.annotation),
+                new ConstantExpression(stringMember(member.annotation, "defaultValue")),
+                new ConstantExpression(stringMember(member.annotation, "format")),
+                new ClassExpression(erasure(member.type))
+            })));
+        }
+        return block(new ReturnStatement(new ArrayExpression(INJECTED_PREFERENCE_TYPE, preferences)));
+    }
+
+    private static Statement getValueBody(ClassNode owner, List<Member> members, Parameter instance, Parameter index) {
+        BlockStatement body = block();
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get(i);
+            Expression target = new CastExpression(owner, new VariableExpression(instance));
+            Expression read;
+            switch (member.access) {
+                case METHOD:
+                    read = new MethodCallExpression(target, getGetterName(member.name), ArgumentListExpression.EMPTY_ARGUMENTS);
+                    if (ClassHelper.boolean_TYPE.equals(member.type) && null == findMethod(owner, getGetterName(member.name), 0)) {
+                        read = new MethodCallExpression(target, "is" + getGetterName(member.name).substring(3), ArgumentListExpression.EMPTY_ARGUMENTS);
+                    }
+                    break;
+                case PROPERTY:
+                    read = new PropertyExpression(target, member.name);
+                    break;
+                default:
+                    read = new AttributeExpression(target, new ConstantExpression(member.name));
+            }
+            body.addStatement(new IfStatement(indexEquals(index, i), new ReturnStatement(read), EmptyStatement.INSTANCE));
+        }
+        body.addStatement(throwIndexOutOfBounds(index));
+        return body;
+    }
+
+    private static Statement setValueBody(ClassNode owner, List<Member> members, Parameter instance, Parameter index, Parameter value) {
+        BlockStatement body = block();
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get(i);
+            Expression target = new CastExpression(owner, new VariableExpression(instance));
+            Expression write;
+            switch (member.access) {
+                case METHOD:
+                    write = new MethodCallExpression(target, getSetterName(member.name), new ArgumentListExpression(new VariableExpression(value)));
+                    break;
+                case PROPERTY:
+                    write = assign(new PropertyExpression(target, member.name), new VariableExpression(value));
+                    break;
+                default:
+                    write = assign(new AttributeExpression(target, new ConstantExpression(member.name)), new VariableExpression(value));
+            }
+            body.addStatement(new IfStatement(indexEquals(index, i),
+                block(new ExpressionStatement(write), ReturnStatement.RETURN_NULL_OR_VOID), EmptyStatement.INSTANCE));
+        }
+        body.addStatement(throwIndexOutOfBounds(index));
+        return body;
+    }
+
+    private static BooleanExpression indexEquals(Parameter index, int value) {
+        return new BooleanExpression(new BinaryExpression(new VariableExpression(index),
+            Token.newSymbol(Types.COMPARE_EQUAL, -1, -1), new ConstantExpression(value, true)));
+    }
+
+    private static Expression assign(Expression left, Expression right) {
+        return new BinaryExpression(left, Token.newSymbol(Types.ASSIGN, -1, -1), right);
+    }
+
+    private static Statement throwIndexOutOfBounds(Parameter index) {
+        Expression message = new StaticMethodCallExpression(ClassHelper.STRING_TYPE, "valueOf", new ArgumentListExpression(new VariableExpression(index)));
+        return new ThrowStatement(new ConstructorCallExpression(INDEX_OUT_OF_BOUNDS_TYPE, new ArgumentListExpression(message)));
+    }
+
+    private static BlockStatement block(Statement... statements) {
+        BlockStatement block = new BlockStatement();
+        block.setVariableScope(new VariableScope());
+        for (Statement statement : statements) {
+            block.addStatement(statement);
+        }
+        return block;
+    }
+
+    private static enum Access {
+        METHOD, PROPERTY, FIELD
+    }
+
+    private static class Member {
+        private final String name;
+        private final String fqName;
+        private final String path;
+        private final AnnotationNode annotation;
+        private final ClassNode type;
+        private final Access access;
+
+        private Member(String name, String fqName, String path, AnnotationNode annotation, ClassNode type, Access access) {
+            this.name = name;
+            this.fqName = fqName;
+            this.path = path;
+            this.annotation = annotation;
+            this.type = type;
+            this.access = access;
+        }
+    }
+}
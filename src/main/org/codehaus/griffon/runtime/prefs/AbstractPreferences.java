@@ -17,25 +17,124 @@
 package org.codehaus.griffon.runtime.prefs;
 
 import griffon.plugins.preferences.*;
+import griffon.plugins.preferences.dispatch.PreferencesEventDispatcher;
+import griffon.plugins.preferences.journal.PreferencesJournal;
+import griffon.plugins.preferences.metrics.PreferencesMetrics;
+import org.codehaus.griffon.runtime.prefs.dispatch.IsolatedPreferenceChangeListener;
+import org.codehaus.griffon.runtime.prefs.dispatch.SynchronousPreferencesEventDispatcher;
+import org.codehaus.griffon.runtime.prefs.metrics.NoopPreferencesMetrics;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Andres Almiray
  */
 public abstract class AbstractPreferences implements Preferences {
-    private final List<NodeChangeListener> nodeChangeListeners = new ArrayList<NodeChangeListener>();
-    private final List<PreferenceChangeListener> changeListeners = new ArrayList<PreferenceChangeListener>();
+    private final List<NodeChangeListener> nodeChangeListeners = new CopyOnWriteArrayList<NodeChangeListener>();
+    private final List<PreferenceChangeListener> changeListeners = new CopyOnWriteArrayList<PreferenceChangeListener>();
+    private final List<ChangeBatchListener> batchListeners = new CopyOnWriteArrayList<ChangeBatchListener>();
+    private final ListenerTrie<NodeChangeListener> scopedNodeChangeListeners = new ListenerTrie<NodeChangeListener>();
+    private final ListenerTrie<PreferenceChangeListener> scopedChangeListeners = new ListenerTrie<PreferenceChangeListener>();
+    private final Object commitLock = new Object[0];
+    private final ThreadLocal<ChangeBatch> changeBatch = new ThreadLocal<ChangeBatch>();
+    private volatile PreferencesMetrics metrics = NoopPreferencesMetrics.INSTANCE;
+    private volatile PreferencesEventDispatcher dispatcher = SynchronousPreferencesEventDispatcher.INSTANCE;
+    private volatile PreferencesJournal journal;
+    private static final AtomicLong STAMPS = new AtomicLong();
+    private final ConcurrentMap<String, PreferencesNode> nodeIndex = new ConcurrentHashMap<String, PreferencesNode>();
+    private static final ClassMetadataCache<String> CLASS_PATHS = new ClassMetadataCache<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return PreferencesNode.PATH_SEPARATOR + type.getName().replace('.', PreferencesNode.PATH_SEPARATOR.charAt(0));
+        }
+    };
+    private static final ClassMetadataCache<String> PREFERENCE_CHANGE_TIMERS = new ClassMetadataCache<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return PreferencesMetrics.DISPATCH_PREFERENCE_CHANGE + type.getName();
+        }
+    };
+    private static final ClassMetadataCache<String> NODE_CHANGE_TIMERS = new ClassMetadataCache<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return PreferencesMetrics.DISPATCH_NODE_CHANGE + type.getName();
+        }
+    };
+
+    public PreferencesMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(PreferencesMetrics metrics) {
+        this.metrics = null != metrics ? metrics : NoopPreferencesMetrics.INSTANCE;
+        for (PreferenceChangeListener listener : changeListeners) {
+            registerGauges(listener);
+        }
+    }
+
+    private void registerGauges(PreferenceChangeListener listener) {
+        PreferencesMetrics metrics = this.metrics;
+        if (metrics.isEnabled() && listener instanceof IsolatedPreferenceChangeListener) {
+            ((IsolatedPreferenceChangeListener) listener).registerGauges(metrics);
+        }
+    }
+
+    private void unregisterGauges(PreferenceChangeListener listener) {
+        PreferencesMetrics metrics = this.metrics;
+        if (metrics.isEnabled() && listener instanceof IsolatedPreferenceChangeListener) {
+            ((IsolatedPreferenceChangeListener) listener).unregisterGauges(metrics);
+        }
+    }
+
+    public PreferencesJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal that records every published change, null disables it.
+     * Changes are recorded on the thread that publishes them, before they are
+     * handed to the dispatcher.
+     */
+    public void setJournal(PreferencesJournal journal) {
+        this.journal = journal;
+    }
+
+    public PreferencesEventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Sets the dispatcher that delivers change events, by default events are
+     * delivered synchronously. Events already handed to the previous dispatcher
+     * are still delivered by it.
+     */
+    public void setDispatcher(PreferencesEventDispatcher dispatcher) {
+        this.dispatcher = null != dispatcher ? dispatcher : SynchronousPreferencesEventDispatcher.INSTANCE;
+    }
 
     public void addNodeChangeListener(NodeChangeListener listener) {
-        if (listener == null || nodeChangeListeners.contains(listener)) return;
-        nodeChangeListeners.add(listener);
+        if (listener == null) return;
+        ((CopyOnWriteArrayList<NodeChangeListener>) nodeChangeListeners).addIfAbsent(listener);
+    }
+
+    public void addNodeChangeListener(String path, NodeChangeListener listener) {
+        if (listener == null) return;
+        scopedNodeChangeListeners.add(pathSegments(path), listener, null);
     }
 
     public void removeNodeChangeListener(NodeChangeListener listener) {
         if (listener == null) return;
         nodeChangeListeners.remove(listener);
+        scopedNodeChangeListeners.removeAll(listener);
+    }
+
+    public void removeNodeChangeListener(String path, NodeChangeListener listener) {
+        if (listener == null) return;
+        scopedNodeChangeListeners.remove(pathSegments(path), listener);
     }
 
     public NodeChangeListener[] getNodeChangeListeners() {
@@ -43,39 +142,590 @@ public abstract class AbstractPreferences implements Preferences {
     }
 
     public void addPreferencesChangeListener(PreferenceChangeListener listener) {
-        if (listener == null || changeListeners.contains(listener)) return;
-        changeListeners.add(listener);
+        if (listener == null) return;
+        if (((CopyOnWriteArrayList<PreferenceChangeListener>) changeListeners).addIfAbsent(listener)) {
+            registerGauges(listener);
+        }
+    }
+
+    public void addPreferencesChangeListener(String path, PreferenceChangeListener listener) {
+        if (listener == null) return;
+        scopedChangeListeners.add(pathSegments(path), listener, null);
+        registerGauges(listener);
+    }
+
+    public void addPreferencesChangeListener(String path, Collection<String> keys, PreferenceChangeListener listener) {
+        if (listener == null) return;
+        Set<String> keySet = null != keys ? Collections.unmodifiableSet(new HashSet<String>(keys)) : null;
+        scopedChangeListeners.add(pathSegments(path), listener, keySet);
+        registerGauges(listener);
     }
 
     public void removePreferencesChangeListener(PreferenceChangeListener listener) {
         if (listener == null) return;
         changeListeners.remove(listener);
+        scopedChangeListeners.removeAll(listener);
+        unregisterGauges(listener);
+    }
+
+    public void removePreferencesChangeListener(String path, PreferenceChangeListener listener) {
+        if (listener == null) return;
+        scopedChangeListeners.remove(pathSegments(path), listener);
+        if (!changeListeners.contains(listener) && !scopedChangeListeners.contains(listener)) {
+            unregisterGauges(listener);
+        }
     }
 
     public PreferenceChangeListener[] getPreferencesChangeListeners() {
         return changeListeners.toArray(new PreferenceChangeListener[changeListeners.size()]);
     }
 
+    public void addChangeBatchListener(ChangeBatchListener listener) {
+        if (listener == null) return;
+        ((CopyOnWriteArrayList<ChangeBatchListener>) batchListeners).addIfAbsent(listener);
+    }
+
+    public void removeChangeBatchListener(ChangeBatchListener listener) {
+        if (listener == null) return;
+        batchListeners.remove(listener);
+    }
+
+    public ChangeBatchListener[] getChangeBatchListeners() {
+        return batchListeners.toArray(new ChangeBatchListener[batchListeners.size()]);
+    }
+
     public void preferenceChanged(PreferenceChangeEvent event) {
-        for (PreferenceChangeListener listener : changeListeners) {
-            listener.preferenceChanged(event);
+        ChangeBatch batch = changeBatch.get();
+        if (null != batch) {
+            batch.add(event);
+            return;
         }
+        publishPreferenceChanged(event, false);
     }
 
     public void nodeChanged(NodeChangeEvent event) {
-        for (NodeChangeListener listener : nodeChangeListeners) {
-            listener.nodeChanged(event);
+        ChangeBatch batch = changeBatch.get();
+        if (null != batch) {
+            batch.add(event);
+            return;
+        }
+        publishNodeChanged(event, false);
+    }
+
+    /**
+     * Starts collecting the change events triggered by the current thread.
+     * Events are published when the matching call to {@link #endBatch()} is made.
+     * Batches may be nested, in which case events are published when the
+     * outermost batch ends.
+     */
+    public void beginBatch() {
+        ChangeBatch batch = changeBatch.get();
+        if (null == batch) {
+            batch = new ChangeBatch();
+            changeBatch.set(batch);
+        }
+        batch.depth++;
+    }
+
+    /**
+     * Publishes the events collected since the outermost call to {@link #beginBatch()}.
+     * Events are reduced to their net effect: a key is published once, with the
+     * value it had before the batch and its latest value, and not at all if both
+     * are equal; a node is published once as added or removed, not at all if it
+     * was added and then removed, and as removed then added if it was replaced.
+     * Reduced events keep the relative order of the last event they stand for.
+     * Finally, {@code ChangeBatchListener}s receive all of them in a single event.</p>
+     * Change listeners that also implement {@code ChangeBatchListener} opt out
+     * of the individual events of a batch and receive the single event instead,
+     * restricted to the events they would have received if they were registered
+     * for a subtree or for a few keys only.
+     */
+    public void endBatch() {
+        ChangeBatch batch = changeBatch.get();
+        if (null == batch) {
+            throw new IllegalStateException("There is no batch in progress");
+        }
+        if (--batch.depth > 0) return;
+        changeBatch.remove();
+        publishBatch(batch);
+    }
+
+    private void publishBatch(ChangeBatch batch) {
+        List<NodeChangeEvent> nodeEvents = new ArrayList<NodeChangeEvent>();
+        List<PreferenceChangeEvent> preferenceEvents = new ArrayList<PreferenceChangeEvent>();
+        for (Object event : batch.reduce()) {
+            if (event instanceof NodeChangeEvent) {
+                nodeEvents.add((NodeChangeEvent) event);
+                publishNodeChanged((NodeChangeEvent) event, true);
+            } else {
+                preferenceEvents.add((PreferenceChangeEvent) event);
+                publishPreferenceChanged((PreferenceChangeEvent) event, true);
+            }
+        }
+        if (!(nodeEvents.isEmpty() && preferenceEvents.isEmpty())) {
+            publishChangesCommitted(new ChangeBatchEvent(nodeEvents, preferenceEvents));
+        }
+    }
+
+    private void publishPreferenceChanged(final PreferenceChangeEvent event, final boolean batched) {
+        PreferencesJournal journal = this.journal;
+        if (null != journal) journal.preferenceChanged(event);
+        PreferencesEventDispatcher dispatcher = this.dispatcher;
+        if (dispatcher.isSynchronous()) {
+            firePreferenceChanged(event, batched);
+            return;
+        }
+        dispatcher.dispatch(event.getPath(), new Runnable() {
+            public void run() {
+                firePreferenceChanged(event, batched);
+            }
+        });
+    }
+
+    private void publishNodeChanged(final NodeChangeEvent event, final boolean batched) {
+        PreferencesJournal journal = this.journal;
+        if (null != journal) journal.nodeChanged(event);
+        PreferencesEventDispatcher dispatcher = this.dispatcher;
+        if (dispatcher.isSynchronous()) {
+            fireNodeChanged(event, batched);
+            return;
+        }
+        dispatcher.dispatch(event.getPath(), new Runnable() {
+            public void run() {
+                fireNodeChanged(event, batched);
+            }
+        });
+    }
+
+    private void publishChangesCommitted(final ChangeBatchEvent event) {
+        if (batchListeners.isEmpty() && !hasBatchAwareListeners()) return;
+        PreferencesEventDispatcher dispatcher = this.dispatcher;
+        if (dispatcher.isSynchronous()) {
+            fireChangesCommitted(event);
+            return;
+        }
+        // a batch spans several paths, it is ordered along with the events of the root
+        dispatcher.dispatch(PreferencesNode.PATH_SEPARATOR, new Runnable() {
+            public void run() {
+                fireChangesCommitted(event);
+            }
+        });
+    }
+
+    protected void fireChangesCommitted(ChangeBatchEvent event) {
+        for (ChangeBatchListener listener : batchListeners) {
+            listener.changesCommitted(event);
+        }
+        if (!hasBatchAwareListeners()) return;
+        Set<ChangeBatchListener> notified = Collections.newSetFromMap(new IdentityHashMap<ChangeBatchListener, Boolean>());
+        notified.addAll(batchListeners);
+        for (Object listener : changeListeners) {
+            if (listener instanceof ChangeBatchListener && notified.add((ChangeBatchListener) listener)) {
+                ((ChangeBatchListener) listener).changesCommitted(event);
+            }
+        }
+        for (Object listener : nodeChangeListeners) {
+            if (listener instanceof ChangeBatchListener && notified.add((ChangeBatchListener) listener)) {
+                ((ChangeBatchListener) listener).changesCommitted(event);
+            }
+        }
+        if (!hasScopedBatchAwareListeners()) return;
+
+        // scoped listeners receive the part of the batch they watch
+        Map<ChangeBatchListener, List<Object>> scoped = new LinkedHashMap<ChangeBatchListener, List<Object>>();
+        for (NodeChangeEvent nodeEvent : event.getNodeEvents()) {
+            for (Object listener : scopedNodeChangeListeners.match(nodeEvent.getPath(), null, true)) {
+                if (listener instanceof ChangeBatchListener && !notified.contains(listener)) {
+                    scopedEvents(scoped, (ChangeBatchListener) listener).add(nodeEvent);
+                }
+            }
+        }
+        for (PreferenceChangeEvent preferenceEvent : event.getPreferenceEvents()) {
+            for (Object listener : scopedChangeListeners.match(preferenceEvent.getPath(), preferenceEvent.getKey(), false)) {
+                if (listener instanceof ChangeBatchListener && !notified.contains(listener)) {
+                    scopedEvents(scoped, (ChangeBatchListener) listener).add(preferenceEvent);
+                }
+            }
+        }
+        for (Map.Entry<ChangeBatchListener, List<Object>> entry : scoped.entrySet()) {
+            List<NodeChangeEvent> nodeEvents = new ArrayList<NodeChangeEvent>();
+            List<PreferenceChangeEvent> preferenceEvents = new ArrayList<PreferenceChangeEvent>();
+            for (Object scopedEvent : entry.getValue()) {
+                if (scopedEvent instanceof NodeChangeEvent) {
+                    nodeEvents.add((NodeChangeEvent) scopedEvent);
+                } else {
+                    preferenceEvents.add((PreferenceChangeEvent) scopedEvent);
+                }
+            }
+            entry.getKey().changesCommitted(new ChangeBatchEvent(nodeEvents, preferenceEvents));
+        }
+    }
+
+    private static List<Object> scopedEvents(Map<ChangeBatchListener, List<Object>> events, ChangeBatchListener listener) {
+        List<Object> list = events.get(listener);
+        if (null == list) {
+            list = new ArrayList<Object>();
+            events.put(listener, list);
+        }
+        return list;
+    }
+
+    private boolean hasBatchAwareListeners() {
+        for (Object listener : changeListeners) {
+            if (listener instanceof ChangeBatchListener) return true;
+        }
+        for (Object listener : nodeChangeListeners) {
+            if (listener instanceof ChangeBatchListener) return true;
+        }
+        return hasScopedBatchAwareListeners();
+    }
+
+    private boolean hasScopedBatchAwareListeners() {
+        return scopedChangeListeners.containsInstanceOf(ChangeBatchListener.class) ||
+            scopedNodeChangeListeners.containsInstanceOf(ChangeBatchListener.class);
+    }
+
+    static long nextStamp() {
+        return STAMPS.incrementAndGet();
+    }
+
+    public long currentStamp() {
+        return STAMPS.get();
+    }
+
+    public List<PreferencesNode> changedSince(long stamp) {
+        List<PreferencesNode> nodes = new ArrayList<PreferencesNode>();
+        collectChangedNodes(getRoot(), stamp, nodes);
+        return nodes;
+    }
+
+    private static void collectChangedNodes(PreferencesNode node, long stamp, List<PreferencesNode> nodes) {
+        if (node.subtreeModificationStamp() <= stamp) return;
+        if (node.modificationStamp() > stamp) nodes.add(node);
+        for (PreferencesNode child : node.children().values()) {
+            collectChangedNodes(child, stamp, nodes);
+        }
+    }
+
+    public Iterable<PreferencesNode> queryNodes(String pathPattern) {
+        return new PreferencesQuery(pathPattern).nodes(this);
+    }
+
+    public Iterable<PreferenceEntry> query(String pathPattern, String keyPattern) {
+        return new PreferencesQuery(pathPattern).entries(this, keyPattern);
+    }
+
+    public Iterable<PreferenceEntry> query(String pattern) {
+        int dot = pattern.lastIndexOf('.');
+        // a dot before the last separator belongs to the path
+        if (dot < 0 || dot < pattern.lastIndexOf(PreferencesNode.PATH_SEPARATOR)) return query(pattern, "*");
+        return query(pattern.substring(0, dot), pattern.substring(dot + 1));
+    }
+
+    public PreferencesTransaction beginTransaction() {
+        return new DefaultPreferencesTransaction(this);
+    }
+
+    /**
+     * Applies the operations of a transaction, one transaction at a time.
+     * Changes made outside of transactions do not wait for a commit, so that
+     * single writes never pay for transactions. Events are collected
+     * apart from the batch of the current thread, if any, and are published
+     * (or added to that batch) only once all operations have been applied.
+     * If an operation fails the events are discarded and the exception is
+     * rethrown.
+     */
+    void commit(List<DefaultPreferencesTransaction.Operation> operations) {
+        validateOperations(operations);
+        ChangeBatch outer = changeBatch.get();
+        ChangeBatch batch = new ChangeBatch();
+        batch.depth = 1;
+        try {
+            changeBatch.set(batch);
+            synchronized (commitLock) {
+                applyOperations(operations);
+            }
+        } finally {
+            if (null != outer) {
+                changeBatch.set(outer);
+            } else {
+                changeBatch.remove();
+            }
+        }
+
+        if (null != outer) {
+            outer.addAll(batch);
+        } else {
+            publishBatch(batch);
+        }
+    }
+
+    private static void validateOperations(List<DefaultPreferencesTransaction.Operation> operations) {
+        for (DefaultPreferencesTransaction.Operation operation : operations) {
+            switch (operation.type) {
+                case PUT:
+                case REMOVE:
+                    if (null == operation.key) throw new IllegalArgumentException("Invalid operation " + operation + ": missing key");
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Applies the operations of a transaction one by one, and undoes the ones
+     * already applied if one of them fails. Readers and writers that do not
+     * take part in the transaction may observe the tree while it is being
+     * updated; subclasses that can publish all changes at once should do so.
+     */
+    protected void applyOperations(List<DefaultPreferencesTransaction.Operation> operations) {
+        List<Runnable> undo = new ArrayList<Runnable>();
+        try {
+            for (DefaultPreferencesTransaction.Operation operation : operations) {
+                switch (operation.type) {
+                    case PUT:
+                        if (null == operation.value) {
+                            removeKey(operation.path, operation.key, undo);
+                        } else {
+                            putKey(operation.path, operation.key, operation.value, undo);
+                        }
+                        break;
+                    case REMOVE:
+                        removeKey(operation.path, operation.key, undo);
+                        break;
+                    case CREATE_NODE:
+                        createNode(operation.path, undo);
+                        break;
+                    case REMOVE_NODE:
+                        if (!PreferencesNode.PATH_SEPARATOR.equals(operation.path)) removeNode(operation.path, undo);
+                        break;
+                }
+            }
+        } catch (RuntimeException e) {
+            undo(undo);
+            throw e;
+        } catch (Error e) {
+            undo(undo);
+            throw e;
+        }
+    }
+
+    private static void undo(List<Runnable> undo) {
+        for (int i = undo.size() - 1; i >= 0; i--) {
+            undo.get(i).run();
+        }
+    }
+
+    private void putKey(String path, final String key, Object value, List<Runnable> undo) {
+        createNode(path, undo);
+        final PreferencesNode node = node(path);
+        final Object oldValue = node.getAt(key);
+        // registered first, a put may fail after storing the value
+        undo.add(new Runnable() {
+            public void run() {
+                if (null == oldValue) {
+                    node.remove(key);
+                } else {
+                    node.putAt(key, oldValue);
+                }
+            }
+        });
+        node.putAt(key, value);
+    }
+
+    private void removeKey(String path, final String key, List<Runnable> undo) {
+        final PreferencesNode node = findNode(path);
+        if (null == node) return;
+        final Object oldValue = node.getAt(key);
+        if (null == oldValue) return;
+        undo.add(new Runnable() {
+            public void run() {
+                node.putAt(key, oldValue);
+            }
+        });
+        node.remove(key);
+    }
+
+    private void createNode(String path, List<Runnable> undo) {
+        // only the topmost missing node needs to be removed again
+        PreferencesNode parent = getRoot();
+        for (String segment : pathSegments(path)) {
+            PreferencesNode child = parent.getChildNode(segment);
+            if (null == child) {
+                final PreferencesNode created = parent.node(segment);
+                undo.add(new Runnable() {
+                    public void run() {
+                        removeNode(created.path());
+                    }
+                });
+                node(path);
+                return;
+            }
+            parent = child;
+        }
+    }
+
+    private void removeNode(String path, List<Runnable> undo) {
+        final PreferencesNode removed = removeNode(path);
+        if (null == removed) return;
+        final PreferencesNode parent = removed.parent();
+        undo.add(new Runnable() {
+            public void run() {
+                parent.storeChildNode(removed.name(), removed);
+            }
+        });
+    }
+
+    /**
+     * Returns the node at the given path without creating it, or null if there is none.
+     */
+    protected PreferencesNode findNode(String path) {
+        if (isNodeIndexEnabled() && isIndexable(path)) {
+            PreferencesNode node = nodeIndex.get(path);
+            if (node != null) return node;
+        }
+        PreferencesNode node = getRoot();
+        for (String segment : pathSegments(path)) {
+            node = node.getChildNode(segment);
+            if (null == node) return null;
+        }
+        return node;
+    }
+
+    static String[] pathSegments(String path) {
+        List<String> segments = new ArrayList<String>();
+        for (String segment : path.replace('.', PreferencesNode.PATH_SEPARATOR.charAt(0)).split(PreferencesNode.PATH_SEPARATOR)) {
+            if (segment.length() > 0) segments.add(segment);
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    protected void firePreferenceChanged(PreferenceChangeEvent event) {
+        firePreferenceChanged(event, false);
+    }
+
+    private void firePreferenceChanged(PreferenceChangeEvent event, boolean batched) {
+        firePreferenceChanged(event, changeListeners, batched);
+        if (!scopedChangeListeners.isEmpty()) {
+            firePreferenceChanged(event, scopedChangeListeners.match(event.getPath(), event.getKey(), false), batched);
+        }
+    }
+
+    private void firePreferenceChanged(PreferenceChangeEvent event, List<PreferenceChangeListener> listeners, boolean batched) {
+        PreferencesMetrics metrics = this.metrics;
+        if (!metrics.isEnabled()) {
+            for (PreferenceChangeListener listener : listeners) {
+                if (batched && listener instanceof ChangeBatchListener) continue;
+                listener.preferenceChanged(event);
+            }
+            return;
+        }
+        for (PreferenceChangeListener listener : listeners) {
+            if (batched && listener instanceof ChangeBatchListener) continue;
+            long start = metrics.startTimer();
+            try {
+                listener.preferenceChanged(event);
+            } finally {
+                metrics.stopTimer(PREFERENCE_CHANGE_TIMERS.get(listener.getClass()), start);
+            }
+        }
+    }
+
+    protected void fireNodeChanged(NodeChangeEvent event) {
+        fireNodeChanged(event, false);
+    }
+
+    private void fireNodeChanged(NodeChangeEvent event, boolean batched) {
+        fireNodeChanged(event, nodeChangeListeners, batched);
+        if (!scopedNodeChangeListeners.isEmpty()) {
+            // adding or removing a node also adds or removes the subtrees watched below it
+            fireNodeChanged(event, scopedNodeChangeListeners.match(event.getPath(), null, true), batched);
+        }
+    }
+
+    private void fireNodeChanged(NodeChangeEvent event, List<NodeChangeListener> listeners, boolean batched) {
+        PreferencesMetrics metrics = this.metrics;
+        if (!metrics.isEnabled()) {
+            for (NodeChangeListener listener : listeners) {
+                if (batched && listener instanceof ChangeBatchListener) continue;
+                listener.nodeChanged(event);
+            }
+            return;
+        }
+        for (NodeChangeListener listener : listeners) {
+            if (batched && listener instanceof ChangeBatchListener) continue;
+            long start = metrics.startTimer();
+            try {
+                listener.nodeChanged(event);
+            } finally {
+                metrics.stopTimer(NODE_CHANGE_TIMERS.get(listener.getClass()), start);
+            }
         }
     }
 
     public PreferencesNode node(Class<?> clazz) {
-        return getRoot().node(clazz);
+        return clazz != null ? node(CLASS_PATHS.get(clazz)) : null;
     }
 
     public PreferencesNode node(String path) {
+        if (isNodeIndexEnabled() && isIndexable(path)) {
+            PreferencesNode node = nodeIndex.get(path);
+            if (node != null) return node;
+        }
         return getRoot().node(path);
     }
 
+    /**
+     * Whether nodes are indexed by path. The index trades memory (one entry and
+     * one path string per node) for lookups that do not walk the tree.
+     */
+    protected boolean isNodeIndexEnabled() {
+        return true;
+    }
+
+    private static boolean isIndexable(String path) {
+        // same paths as the ones returned by PreferencesNode.path(), other forms take the slow path
+        int length = null != path ? path.length() : 0;
+        return length > 1 && path.charAt(0) == PreferencesNode.PATH_SEPARATOR.charAt(0) &&
+            path.charAt(length - 1) != PreferencesNode.PATH_SEPARATOR.charAt(0) && path.indexOf('.') < 0;
+    }
+
+    /**
+     * Registers a node that was just attached to this tree, along with all its
+     * descendants, for fast lookups by path.
+     */
+    protected void indexNode(PreferencesNode node) {
+        if (!isNodeIndexEnabled()) return;
+        PreferencesNode parent = node.parent();
+        if (!isAttached(parent)) return;
+        nodeIndex.put(node.path(), node);
+        // the parent may have been detached concurrently
+        if (!isAttached(parent)) {
+            nodeIndex.remove(node.path(), node);
+            return;
+        }
+        for (PreferencesNode child : node.children().values()) {
+            indexNode(child);
+        }
+    }
+
+    /**
+     * Unregisters a node that was just detached from this tree, along with all its descendants.
+     */
+    protected void unindexNode(PreferencesNode node) {
+        if (!isNodeIndexEnabled()) return;
+        if (!nodeIndex.remove(node.path(), node)) return;
+        for (PreferencesNode child : node.children().values()) {
+            unindexNode(child);
+        }
+    }
+
+    private boolean isAttached(PreferencesNode node) {
+        if (null == node) return false;
+        return node == getRoot() || nodeIndex.get(node.path()) == node;
+    }
+
     public PreferencesNode removeNode(Class<?> clazz) {
         return getRoot().removeNode(clazz);
     }
@@ -83,4 +733,75 @@ public abstract class AbstractPreferences implements Preferences {
     public PreferencesNode removeNode(String path) {
         return getRoot().removeNode(path);
     }
+
+    private static final class ChangeBatch {
+        private int depth;
+        // merged events keyed by node path or by path and key, in the order of their latest change
+        private final Map<Object, Object> events = new LinkedHashMap<Object, Object>();
+
+        private void add(NodeChangeEvent event) {
+            NodeChangeEvent.Type first = event.getType();
+            Object previous = events.remove(event.getPath());
+            if (null != previous) first = ((NodeChange) previous).first;
+            events.put(event.getPath(), new NodeChange(event.getPath(), first, event.getType()));
+        }
+
+        private void add(PreferenceChangeEvent event) {
+            List<String> id = Arrays.asList(event.getPath(), event.getKey());
+            PreferenceChangeEvent previous = (PreferenceChangeEvent) events.remove(id);
+            if (null != previous) {
+                event = new PreferenceChangeEvent(event.getPath(), event.getKey(), previous.getOldValue(), event.getNewValue());
+            }
+            events.put(id, event);
+        }
+
+        private void addAll(ChangeBatch batch) {
+            for (Object event : batch.events.values()) {
+                if (event instanceof NodeChange) {
+                    NodeChange change = (NodeChange) event;
+                    add(new NodeChangeEvent(change.path, change.first));
+                    if (change.first != change.last) add(new NodeChangeEvent(change.path, change.last));
+                } else {
+                    add((PreferenceChangeEvent) event);
+                }
+            }
+        }
+
+        private List<Object> reduce() {
+            List<Object> reduced = new ArrayList<Object>(events.size());
+            for (Object event : events.values()) {
+                if (event instanceof NodeChange) {
+                    ((NodeChange) event).reduceInto(reduced);
+                } else {
+                    PreferenceChangeEvent change = (PreferenceChangeEvent) event;
+                    if (!AbstractPreferencesNode.valuesEqual(change.getOldValue(), change.getNewValue())) {
+                        reduced.add(change);
+                    }
+                }
+            }
+            return reduced;
+        }
+    }
+
+    private static final class NodeChange {
+        private final String path;
+        private final NodeChangeEvent.Type first;
+        private final NodeChangeEvent.Type last;
+
+        private NodeChange(String path, NodeChangeEvent.Type first, NodeChangeEvent.Type last) {
+            this.path = path;
+            this.first = first;
+            this.last = last;
+        }
+
+        private void reduceInto(List<Object> events) {
+            if (first == last) {
+                events.add(new NodeChangeEvent(path, last));
+            } else if (first == NodeChangeEvent.Type.REMOVED) {
+                // the node existed before the batch and was replaced
+                events.add(new NodeChangeEvent(path, NodeChangeEvent.Type.REMOVED));
+                events.add(new NodeChangeEvent(path, NodeChangeEvent.Type.ADDED));
+            }
+        }
+    }
 }
@@ -17,42 +17,90 @@
 package org.codehaus.griffon.runtime.prefs;
 
 import griffon.core.GriffonApplication;
-import griffon.core.resources.editors.ExtendedPropertyEditor;
-import griffon.core.resources.editors.PropertyEditorResolver;
 import griffon.plugins.preferences.*;
 import griffon.util.CallableWithArgs;
 import griffon.util.GriffonClassUtils;
 import griffon.util.RunnableWithArgs;
 import groovy.lang.Closure;
-import groovy.lang.MissingMethodException;
-import org.codehaus.groovy.runtime.InvokerHelper;
+import griffon.plugins.preferences.dispatch.PreferencesEventDispatcher;
+import griffon.plugins.preferences.journal.JournalSink;
+import griffon.plugins.preferences.metrics.PreferencesMetrics;
+import griffon.plugins.preferences.metrics.PreferencesMetricsMXBean;
+import org.codehaus.griffon.runtime.prefs.converters.ValueConverters;
+import org.codehaus.griffon.runtime.prefs.dispatch.ExecutorPreferencesEventDispatcher;
+import org.codehaus.griffon.runtime.prefs.journal.FileJournalSink;
+import org.codehaus.griffon.runtime.prefs.journal.RingBufferPreferencesJournal;
+import org.codehaus.griffon.runtime.prefs.metrics.InMemoryPreferencesMetrics;
+import org.codehaus.griffon.runtime.prefs.metrics.NoopPreferencesMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
 import java.beans.PropertyDescriptor;
-import java.beans.PropertyEditor;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.text.MessageFormat;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
 import static griffon.util.GriffonExceptionHandler.sanitize;
 import static griffon.util.GriffonNameUtils.*;
 import static java.lang.reflect.Modifier.isStatic;
+import static org.codehaus.griffon.runtime.util.GriffonApplicationHelper.safeNewInstance;
 
 /**
  * @author Andres Almiray
  */
 public abstract class AbstractPreferencesManager implements PreferencesManager {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractPreferencesManager.class);
+    private static final String KEY_PREFERENCES_INJECTION_ACCESSORS = "preferences.injection.accessors";
+    private static final String KEY_PREFERENCES_INJECTION_MEMOIZE = "preferences.injection.memoize";
+    private static final String KEY_PREFERENCES_FORMAT_CACHE_SIZE = "preferences.format.cache.size";
+    private static final String KEY_PREFERENCES_INJECTION_COALESCE = "preferences.injection.coalesce";
+    private static final String KEY_PREFERENCES_INJECTION_COALESCE_WINDOW = "preferences.injection.coalesce.window";
+    private static final String KEY_PREFERENCES_METRICS = "preferences.metrics";
+    private static final String KEY_PREFERENCES_DISPATCH_THREADS = "preferences.dispatch.threads";
+    private static final String KEY_PREFERENCES_JOURNAL_SIZE = "preferences.journal.size";
+    private static final String KEY_PREFERENCES_JOURNAL_FILE = "preferences.journal.file";
+    private static final String METRICS_NONE = "none";
+    private static final String METRICS_MEMORY = "memory";
+    private static final String METRICS_JMX = "jmx";
+    private static final String METRICS_OBJECT_NAME = "griffon.plugins.preferences:type=PreferencesMetrics";
+    private static final int DEFAULT_FORMAT_CACHE_SIZE = 128;
+    private static final long DISPATCH_DRAIN_TIMEOUT_SECONDS = 5L;
     private final GriffonApplication app;
+    private final PropertyAccessors.Mode accessorMode;
     private final InstanceStore instanceStore = new InstanceStore();
+    private final MessageFormatCache messageFormatCache;
+    private final ConcurrentMap<PreferenceKey, ConcurrentMap<ArgumentsKey, EvaluatedValue>> evaluatedValues;
+    private final PendingInjections pendingInjections;
+    private final String metricsType;
+    private final PreferencesMetrics metrics;
+    private final ClassMetadataCache<PreferencesMetadata> metadataCache = new ClassMetadataCache<PreferencesMetadata>() {
+        @Override
+        protected PreferencesMetadata computeValue(Class<?> type) {
+            return harvestMetadata(type);
+        }
+    };
 
     public AbstractPreferencesManager(GriffonApplication app) {
         this.app = app;
+        this.accessorMode = PropertyAccessors.Mode.of(getConfigValueAsString(app.getConfig(), KEY_PREFERENCES_INJECTION_ACCESSORS, PropertyAccessors.Mode.DIRECT.name()));
+        this.messageFormatCache = new MessageFormatCache(getConfigValueAsInt(app.getConfig(), KEY_PREFERENCES_FORMAT_CACHE_SIZE, DEFAULT_FORMAT_CACHE_SIZE));
+        this.evaluatedValues = getConfigValueAsBoolean(app.getConfig(), KEY_PREFERENCES_INJECTION_MEMOIZE, false) ? new ConcurrentHashMap<PreferenceKey, ConcurrentMap<ArgumentsKey, EvaluatedValue>>() : null;
+        this.pendingInjections = getConfigValueAsBoolean(app.getConfig(), KEY_PREFERENCES_INJECTION_COALESCE, false) ? new PendingInjections(getConfigValueAsInt(app.getConfig(), KEY_PREFERENCES_INJECTION_COALESCE_WINDOW, 0)) : null;
+        this.metricsType = getConfigValueAsString(app.getConfig(), KEY_PREFERENCES_METRICS, METRICS_NONE);
+        this.metrics = createMetrics(metricsType);
 
         app.addApplicationEventListener(GriffonApplication.Event.NEW_INSTANCE.getName(), new RunnableWithArgs() {
             @Override
@@ -73,14 +121,131 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
         });
     }
 
+    protected PreferencesMetrics createMetrics(String type) {
+        if (METRICS_NONE.equalsIgnoreCase(type)) return NoopPreferencesMetrics.INSTANCE;
+        if (METRICS_MEMORY.equalsIgnoreCase(type) || METRICS_JMX.equalsIgnoreCase(type)) {
+            return new InMemoryPreferencesMetrics();
+        }
+        return (PreferencesMetrics) safeNewInstance(type);
+    }
+
+    private void initDispatcher() {
+        int threads = getConfigValueAsInt(app.getConfig(), KEY_PREFERENCES_DISPATCH_THREADS, 0);
+        if (threads <= 0 || !(getPreferences() instanceof AbstractPreferences)) return;
+        final PreferencesEventDispatcher dispatcher = ExecutorPreferencesEventDispatcher.withThreads(threads);
+        ((AbstractPreferences) getPreferences()).setDispatcher(dispatcher);
+        app.addApplicationEventListener(GriffonApplication.Event.SHUTDOWN_START.getName(), new RunnableWithArgs() {
+            @Override
+            public void run(Object[] args) {
+                try {
+                    if (!dispatcher.awaitDrained(DISPATCH_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS) && LOG.isWarnEnabled()) {
+                        LOG.warn("Shutting down with " + dispatcher.getQueueDepth() + " preferences events still pending");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    dispatcher.shutdown();
+                }
+            }
+        });
+    }
+
+    private void initJournal() {
+        int size = getConfigValueAsInt(app.getConfig(), KEY_PREFERENCES_JOURNAL_SIZE, 0);
+        if (size <= 0 || !(getPreferences() instanceof AbstractPreferences)) return;
+        JournalSink sink = null;
+        String fileName = getConfigValueAsString(app.getConfig(), KEY_PREFERENCES_JOURNAL_FILE, null);
+        if (!isBlank(fileName)) {
+            try {
+                sink = new FileJournalSink(new File(fileName));
+            } catch (IOException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot open preferences journal " + fileName, sanitize(e));
+                }
+            }
+        }
+        ((AbstractPreferences) getPreferences()).setJournal(new RingBufferPreferencesJournal(size, sink));
+        if (null == sink) return;
+        final JournalSink journalSink = sink;
+        app.addApplicationEventListener(GriffonApplication.Event.SHUTDOWN_START.getName(), new RunnableWithArgs() {
+            @Override
+            public void run(Object[] args) {
+                journalSink.close();
+            }
+        });
+    }
+
+    private void initMetrics() {
+        if (!metrics.isEnabled()) return;
+        if (getPreferences() instanceof AbstractPreferences) {
+            final AbstractPreferences preferences = (AbstractPreferences) getPreferences();
+            preferences.setMetrics(metrics);
+            metrics.registerGauge(PreferencesMetrics.DISPATCH_QUEUE_DEPTH, new PreferencesMetrics.Gauge() {
+                public long getValue() {
+                    return preferences.getDispatcher().getQueueDepth();
+                }
+            });
+        }
+        metrics.registerGauge(PreferencesMetrics.REGISTERED_INSTANCES, new PreferencesMetrics.Gauge() {
+            public long getValue() {
+                return instanceStore.size();
+            }
+        });
+        metrics.registerGauge(PreferencesMetrics.REGISTERED_INJECTION_POINTS, new PreferencesMetrics.Gauge() {
+            public long getValue() {
+                return instanceStore.injectionPointCount();
+            }
+        });
+
+        if (METRICS_JMX.equalsIgnoreCase(metricsType) && metrics instanceof PreferencesMetricsMXBean) {
+            final ObjectName objectName;
+            try {
+                objectName = new ObjectName(METRICS_OBJECT_NAME);
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            } catch (Exception e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot register " + METRICS_OBJECT_NAME, sanitize(e));
+                }
+                return;
+            }
+            app.addApplicationEventListener(GriffonApplication.Event.SHUTDOWN_START.getName(), new RunnableWithArgs() {
+                @Override
+                public void run(Object[] args) {
+                    try {
+                        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                    } catch (Exception e) {
+                        if (LOG.isWarnEnabled()) {
+                            LOG.warn("Cannot unregister " + METRICS_OBJECT_NAME, sanitize(e));
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void initPendingInjections() {
+        if (null == pendingInjections) return;
+        app.addApplicationEventListener(GriffonApplication.Event.SHUTDOWN_START.getName(), new RunnableWithArgs() {
+            @Override
+            public void run(Object[] args) {
+                pendingInjections.shutdown();
+            }
+        });
+    }
+
     protected void init() {
+        initDispatcher();
+        initPendingInjections();
+        initJournal();
+        initMetrics();
         getPreferences().addNodeChangeListener(new NodeChangeListener() {
             public void nodeChanged(NodeChangeEvent event) {
+                if (null != evaluatedValues && event.getType() == NodeChangeEvent.Type.REMOVED) {
+                    forgetEvaluatedValues(event.getPath());
+                }
                 if (event.getType() == NodeChangeEvent.Type.ADDED) {
-                    for (InstanceContainer instanceContainer : instanceStore) {
-                        if (instanceContainer.containsPartialPath(event.getPath())) {
-                            injectPreferences(instanceContainer.instance());
-                        }
+                    for (Object instance : instanceStore.instancesBoundTo(event.getPath())) {
+                        injectPreferences(instance);
                     }
                 }
             }
@@ -88,67 +253,157 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
 
         getPreferences().addPreferencesChangeListener(new PreferenceChangeListener() {
             public void preferenceChanged(PreferenceChangeEvent event) {
-                for (InstanceContainer instanceContainer : instanceStore) {
-                    String path = event.getPath();
-                    if (PreferencesNode.PATH_SEPARATOR.equals(path)) {
-                        path = event.getKey();
-                    } else {
-                        path += "." + event.getKey();
-                    }
-                    if (instanceContainer.containsPath(path)) {
-                        InjectionPoint injectionPoint = instanceContainer.injectionPoints.get(path);
-                        Object value = event.getNewValue();
-
-                        if (null != value) {
-                            if (!injectionPoint.getType().isAssignableFrom(value.getClass())) {
-                                value = convertValue(injectionPoint.getType(), value, injectionPoint.format);
-                            }
-                        }
-                        injectionPoint.setValue(instanceContainer.instance(), value);
+                if (null != evaluatedValues) {
+                    evaluatedValues.remove(new PreferenceKey(event.getPath(), event.getKey()));
+                }
+                for (Subscription subscription : instanceStore.subscriptions(event.getPath(), event.getKey())) {
+                    if (null != pendingInjections) {
+                        pendingInjections.add(subscription, event.getNewValue());
+                        continue;
                     }
+                    Object instance = subscription.container.instance();
+                    if (null == instance) continue;
+                    applyValue(instance, subscription.injectionPoint, event.getNewValue());
                 }
             }
         });
     }
 
+    private void applyValue(Object instance, InjectionPoint injectionPoint, Object value) {
+        if (null != value) {
+            if (!injectionPoint.getType().isAssignableFrom(value.getClass())) {
+                value = convertValue(injectionPoint.getType(), value, injectionPoint.format);
+            }
+        }
+        injectionPoint.setValue(instance, value);
+    }
+
     public GriffonApplication getApp() {
         return app;
     }
 
+    /**
+     * Returns the cache that holds preference metadata per class. Its hit and
+     * miss counters reveal how often class hierarchies had to be inspected.
+     *
+     * @return the metadata cache used by this manager.
+     */
+    public ClassMetadataCache<?> getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Returns the number of {@code @PreferencesAware} instances that are
+     * currently registered for preference updates.
+     *
+     * @return the number of live registered instances.
+     */
+    public int getRegisteredInstanceCount() {
+        return instanceStore.size();
+    }
+
+    public int getRegisteredInjectionPointCount() {
+        return instanceStore.injectionPointCount();
+    }
+
+    public PreferencesMetrics getMetrics() {
+        return metrics;
+    }
+
     public void save(Object instance) {
         if (instance == null) return;
 
-        Map<String, PreferenceDescriptor> descriptors = new LinkedHashMap<String, PreferenceDescriptor>();
-        Class klass = instance.getClass();
-        do {
-            harvestDescriptors(klass, instance, descriptors);
-            klass = klass.getSuperclass();
-        } while (null != klass);
+        long start = metrics.startTimer();
+        try {
+            PreferencesMetadata metadata = metadataCache.get(instance.getClass());
+            doSavePreferences(instance, metadata.descriptors);
+        } finally {
+            metrics.stopTimer(PreferencesMetrics.SAVE, start);
+        }
+    }
 
-        doSavePreferences(instance, descriptors);
+    public void saveAll(Iterable<?> instances) {
+        if (instances == null) return;
+
+        Preferences preferences = getPreferences();
+        preferences.beginBatch();
+        try {
+            for (Object instance : instances) {
+                save(instance);
+            }
+        } finally {
+            preferences.endBatch();
+        }
     }
 
     protected void injectPreferences(Object instance) {
         if (null == instance) return;
 
+        long start = metrics.startTimer();
+        try {
+            PreferencesMetadata metadata = metadataCache.get(instance.getClass());
+            doPreferencesInjection(instance, metadata.descriptors);
+            if (metadata.preferencesAware && !instanceStore.contains(instance)) {
+                instanceStore.add(instance, metadata.injectionPoints);
+            }
+        } finally {
+            metrics.stopTimer(PreferencesMetrics.INJECT, start);
+        }
+    }
+
+    protected PreferencesMetadata harvestMetadata(Class<?> type) {
         Map<String, PreferenceDescriptor> descriptors = new LinkedHashMap<String, PreferenceDescriptor>();
-        Class klass = instance.getClass();
+        Class klass = type;
         do {
-            harvestDescriptors(klass, instance, descriptors);
+            PreferencesInjector injector = resolveInjector(klass);
+            if (null != injector) {
+                harvestDescriptors(klass, injector, descriptors);
+            } else {
+                harvestDescriptors(klass, descriptors);
+            }
             klass = klass.getSuperclass();
-        } while (null != klass);
+        } while (null != klass && Object.class != klass);
 
-        doPreferencesInjection(instance, descriptors);
-        if (instance.getClass().getAnnotation(PreferencesAware.class) != null && !instanceStore.contains(instance)) {
-            List<InjectionPoint> injectionPoints = new LinkedList<InjectionPoint>();
-            for (PreferenceDescriptor pd : descriptors.values()) {
-                injectionPoints.add(pd.asInjectionPoint());
+        return new PreferencesMetadata(type.getAnnotation(PreferencesAware.class) != null, descriptors);
+    }
+
+    protected PreferencesInjector resolveInjector(Class klass) {
+        ClassLoader classLoader = klass.getClassLoader();
+        if (null == classLoader) return null;
+        try {
+            Class<?> injectorClass = Class.forName(klass.getName() + PreferencesInjector.CLASS_NAME_SUFFIX, true, classLoader);
+            return (PreferencesInjector) injectorClass.newInstance();
+        } catch (ClassNotFoundException cnfe) {
+            // not compiled with the injector generators, reflection will be used instead
+            return null;
+        } catch (Exception e) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Cannot use " + PreferencesInjector.class.getSimpleName() + " of class " + klass.getName(), sanitize(e));
             }
-            instanceStore.add(instance, injectionPoints);
+            return null;
         }
     }
 
-    protected void harvestDescriptors(Class klass, Object instance, Map<String, PreferenceDescriptor> descriptors) {
+    protected void harvestDescriptors(Class klass, PreferencesInjector injector, Map<String, PreferenceDescriptor> descriptors) {
+        InjectedPreference[] preferences = injector.getPreferences();
+        for (int index = 0; index < preferences.length; index++) {
+            InjectedPreference preference = preferences[index];
+            if (descriptors.containsKey(preference.getName())) continue;
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Member " + preference.getFqName() +
+                    " of class " + klass.getName() +
+                    " [path='" + preference.getPath() +
+                    "', args='" + Arrays.toString(preference.getArgs()) +
+                    "', defaultValue='" + preference.getDefaultValue() +
+                    "', format='" + preference.getFormat() +
+                    "'] is marked for preference injection.");
+            }
+            descriptors.put(preference.getName(), new InjectorPreferenceDescriptor(injector, index, preference));
+        }
+    }
+
+    protected void harvestDescriptors(Class klass, Map<String, PreferenceDescriptor> descriptors) {
         PropertyDescriptor[] propertyDescriptors = GriffonClassUtils.getPropertyDescriptors(klass);
         for (PropertyDescriptor pd : propertyDescriptors) {
             Method readMethod = pd.getReadMethod();
@@ -175,14 +430,15 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Property " + propertyName +
-                    " of instance " + instance +
+                    " of class " + klass.getName() +
                     " [path='" + resolvedPath +
                     "', args='" + Arrays.toString(args) +
                     "', defaultValue='" + defaultValue +
                     "', format='" + format +
                     "'] is marked for preference injection.");
             }
-            descriptors.put(propertyName, new MethodPreferenceDescriptor(readMethod, writeMethod, fqName, resolvedPath, args, defaultValue, format));
+            PropertyAccessor accessor = PropertyAccessors.forMethods(readMethod, writeMethod, accessorMode);
+            descriptors.put(propertyName, new MethodPreferenceDescriptor(readMethod, writeMethod, accessor, fqName, resolvedPath, args, defaultValue, format));
         }
 
         for (Field field : klass.getDeclaredFields()) {
@@ -202,7 +458,7 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Field " + fqFieldName +
-                    " of instance " + instance +
+                    " of class " + klass.getName() +
                     " [path='" + resolvedPath +
                     "', args='" + Arrays.toString(args) +
                     "', defaultValue='" + defaultValue +
@@ -210,16 +466,19 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
                     "'] is marked for preference injection.");
             }
 
-            descriptors.put(field.getName(), new FieldPreferenceDescriptor(field, fqFieldName, resolvedPath, args, defaultValue, format));
+            PropertyAccessor accessor = PropertyAccessors.forField(field, accessorMode);
+            descriptors.put(field.getName(), new FieldPreferenceDescriptor(field, accessor, fqFieldName, resolvedPath, args, defaultValue, format));
         }
     }
 
     protected void doPreferencesInjection(Object instance, Map<String, PreferenceDescriptor> descriptors) {
         for (PreferenceDescriptor descriptor : descriptors.values()) {
-            Object value = resolvePreference(descriptor.path, descriptor.args, descriptor.defaultValue);
+            PreferencesNode node = getPreferences().node(descriptor.nodePath);
+            if (injectPrimitivePreference(instance, descriptor, node)) continue;
+            Object value = resolvePreference(node, descriptor.nodePath, descriptor.key, descriptor.args, descriptor.defaultValue);
 
             if (null != value) {
-                InjectionPoint injectionPoint = descriptor.asInjectionPoint();
+                InjectionPoint injectionPoint = descriptor.injectionPoint;
                 if (!injectionPoint.getType().isAssignableFrom(value.getClass())) {
                     value = convertValue(injectionPoint.getType(), value, descriptor.format);
                 }
@@ -230,19 +489,14 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
 
     protected void doSavePreferences(Object instance, Map<String, PreferenceDescriptor> descriptors) {
         for (PreferenceDescriptor descriptor : descriptors.values()) {
-            InjectionPoint injectionPoint = descriptor.asInjectionPoint();
-            Object value = injectionPoint.getValue(instance);
-            String[] parsedPath = parsePath(descriptor.path);
-            final PreferencesNode node = getPreferences().node(parsedPath[0]);
-            final String key = parsedPath[1];
+            final PreferencesNode node = getPreferences().node(descriptor.nodePath);
+            final String key = descriptor.key;
+            if (isBlank(descriptor.format) && descriptor.injectionPoint.savePrimitiveValue(instance, node, key)) continue;
+            Object value = descriptor.injectionPoint.getValue(instance);
             if (value != null) {
                 // Convert value only if descriptor.format is not null
                 if (!isBlank(descriptor.format)) {
-                    PropertyEditor propertyEditor = resolvePropertyEditor(value.getClass(), descriptor.format);
-                    if (propertyEditor != null) {
-                        propertyEditor.setValue(value);
-                        value = propertyEditor.getAsText();
-                    }
+                    value = ValueConverters.toLiteral(value, descriptor.format);
                 }
                 node.putAt(key, value);
             } else {
@@ -251,18 +505,72 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
         }
     }
 
+    /**
+     * Copies a value that the node keeps unboxed straight into a primitive field
+     * of the same type, skipping evaluation and conversion.
+     */
+    private boolean injectPrimitivePreference(Object instance, PreferenceDescriptor descriptor, PreferencesNode node) {
+        if (null != descriptor.args && descriptor.args.length > 0) return false;
+        if (!(node instanceof AbstractPreferencesNode)) return false;
+        Class<?> type = ((AbstractPreferencesNode) node).primitiveTypeOf(descriptor.key);
+        if (null == type || type != descriptor.injectionPoint.getType()) return false;
+        return descriptor.injectionPoint.injectPrimitiveValue(instance, node, descriptor.key);
+    }
+
     protected Object resolvePreference(String path, String[] args, String defaultValue) {
         String[] parsedPath = parsePath(path);
-        final PreferencesNode node = getPreferences().node(parsedPath[0]);
-        final String key = parsedPath[1];
+        return resolvePreference(parsedPath[0], parsedPath[1], args, defaultValue);
+    }
+
+    protected Object resolvePreference(String nodePath, String key, String[] args, String defaultValue) {
+        return resolvePreference(getPreferences().node(nodePath), nodePath, key, args, defaultValue);
+    }
+
+    private Object resolvePreference(PreferencesNode node, String nodePath, String key, String[] args, String defaultValue) {
         if (node.containsKey(key)) {
-            return evalPreferenceWithArguments(node.getAt(key), args);
+            Object value = node.getAt(key);
+            if (null != evaluatedValues && isEvaluable(value, args)) {
+                return evalMemoizedPreference(nodePath, key, value, args);
+            }
+            return evalPreferenceWithArguments(value, args);
         } else {
             node.putAt(key, defaultValue);
             return defaultValue;
         }
     }
 
+    private static boolean isEvaluable(Object value, Object[] args) {
+        return value instanceof Closure || value instanceof CallableWithArgs ||
+            (value instanceof CharSequence && null != args && args.length > 0);
+    }
+
+    private Object evalMemoizedPreference(String nodePath, String key, Object value, Object[] args) {
+        PreferenceKey preferenceKey = new PreferenceKey(nodePath, key);
+        ConcurrentMap<ArgumentsKey, EvaluatedValue> values = evaluatedValues.get(preferenceKey);
+        if (null == values) {
+            values = new ConcurrentHashMap<ArgumentsKey, EvaluatedValue>();
+            ConcurrentMap<ArgumentsKey, EvaluatedValue> existing = evaluatedValues.putIfAbsent(preferenceKey, values);
+            if (null != existing) values = existing;
+        }
+
+        ArgumentsKey argumentsKey = new ArgumentsKey(args);
+        EvaluatedValue evaluated = values.get(argumentsKey);
+        // a memoized result is only valid for the value it was computed from
+        if (null == evaluated || evaluated.source != value) {
+            evaluated = new EvaluatedValue(value, evalPreferenceWithArguments(value, args));
+            values.put(argumentsKey, evaluated);
+        }
+        return evaluated.result;
+    }
+
+    private void forgetEvaluatedValues(String nodePath) {
+        String prefix = nodePath.endsWith(PreferencesNode.PATH_SEPARATOR) ? nodePath : nodePath + PreferencesNode.PATH_SEPARATOR;
+        for (Iterator<PreferenceKey> keys = evaluatedValues.keySet().iterator(); keys.hasNext(); ) {
+            String path = keys.next().nodePath;
+            if (path.equals(nodePath) || path.startsWith(prefix)) keys.remove();
+        }
+    }
+
     protected Object evalPreferenceWithArguments(Object value, Object[] args) {
         if (value instanceof Closure) {
             Closure closure = (Closure) value;
@@ -281,29 +589,23 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
             LOG.debug("Formatting message={} args={}", message, Arrays.toString(args));
         }
         if (args == null || args.length == 0) return message;
-        return MessageFormat.format(message, args);
+        return messageFormatCache.format(message, args);
     }
 
     protected Object convertValue(Class<?> type, Object value, String format) {
-        PropertyEditor propertyEditor = resolvePropertyEditor(type, format);
-        if (null == propertyEditor) return value;
-        if (value instanceof CharSequence) {
-            propertyEditor.setAsText(String.valueOf(value));
-        } else {
-            propertyEditor.setValue(value);
+        long start = metrics.startTimer();
+        try {
+            return ValueConverters.convert(type, value, format);
+        } finally {
+            metrics.stopTimer(PreferencesMetrics.CONVERT, start);
         }
-        return propertyEditor.getValue();
     }
 
-    protected PropertyEditor resolvePropertyEditor(Class<?> type, String format) {
-        PropertyEditor propertyEditor = PropertyEditorResolver.findEditor(type);
-        if (propertyEditor instanceof ExtendedPropertyEditor) {
-            ((ExtendedPropertyEditor) propertyEditor).setFormat(format);
-        }
-        return propertyEditor;
+    protected String[] parsePath(String path) {
+        return parsePreferencePath(path);
     }
 
-    protected String[] parsePath(String path) {
+    private static String[] parsePreferencePath(String path) {
         int split = path.lastIndexOf(".");
         String head = split < 0 ? path : path.substring(0, split);
         String tail = split > 0 ? path.substring(split + 1) : null;
@@ -311,94 +613,374 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
         return new String[]{head, tail};
     }
 
-    private static class InstanceStore implements Iterable<InstanceContainer> {
-        private final List<InstanceContainer> instances = new CopyOnWriteArrayList<InstanceContainer>();
+    private static final class PreferencesMetadata {
+        private final boolean preferencesAware;
+        private final Map<String, PreferenceDescriptor> descriptors;
+        private final List<InjectionPoint> injectionPoints;
+
+        private PreferencesMetadata(boolean preferencesAware, Map<String, PreferenceDescriptor> descriptors) {
+            this.preferencesAware = preferencesAware;
+            this.descriptors = Collections.unmodifiableMap(descriptors);
+            List<InjectionPoint> ips = new ArrayList<InjectionPoint>();
+            for (PreferenceDescriptor pd : descriptors.values()) {
+                ips.add(pd.injectionPoint);
+            }
+            this.injectionPoints = Collections.unmodifiableList(ips);
+        }
+    }
+
+    /**
+     * Collects the latest value of every changed injection point, per instance,
+     * and applies them together in the UI thread once the burst of changes is over.
+     */
+    private final class PendingInjections implements Runnable {
+        private final int window;
+        private final Object lock = new Object[0];
+        private Map<InstanceContainer, Map<Subscription, Object>> pending = new IdentityHashMap<InstanceContainer, Map<Subscription, Object>>();
+        private boolean scheduled;
+        private boolean shutdown;
+        private ScheduledExecutorService scheduler;
+
+        private PendingInjections(int window) {
+            this.window = window;
+        }
+
+        private void add(Subscription subscription, Object value) {
+            boolean schedule;
+            synchronized (lock) {
+                Map<Subscription, Object> values = pending.get(subscription.container);
+                if (null == values) {
+                    values = new IdentityHashMap<Subscription, Object>();
+                    pending.put(subscription.container, values);
+                }
+                values.put(subscription, value);
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) schedule();
+        }
+
+        private void schedule() {
+            if (window <= 0) {
+                // runs after the UI thread is done with the current burst of events
+                getApp().execInsideUIAsync(this);
+                return;
+            }
+            synchronized (lock) {
+                if (!shutdown) {
+                    if (null == scheduler) {
+                        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread = new Thread(runnable, "preferences-injection-coalescer");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                    }
+                    scheduler.schedule(new Runnable() {
+                        public void run() {
+                            getApp().execInsideUIAsync(PendingInjections.this);
+                        }
+                    }, window, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+            // changes made while shutting down are no longer coalesced
+            getApp().execInsideUIAsync(this);
+        }
+
+        /**
+         * Applies the pending injections and releases the scheduler, if any.
+         */
+        private void shutdown() {
+            ScheduledExecutorService executor;
+            synchronized (lock) {
+                shutdown = true;
+                executor = scheduler;
+                scheduler = null;
+            }
+            if (null == executor) return;
+            try {
+                getApp().execInsideUISync(this);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        public void run() {
+            Map<InstanceContainer, Map<Subscription, Object>> changes;
+            synchronized (lock) {
+                changes = pending;
+                pending = new IdentityHashMap<InstanceContainer, Map<Subscription, Object>>();
+                scheduled = false;
+            }
+
+            for (Map.Entry<InstanceContainer, Map<Subscription, Object>> entry : changes.entrySet()) {
+                Object instance = entry.getKey().instance();
+                if (null == instance) continue;
+                Map<Subscription, Object> values = entry.getValue();
+                // subscriptions are kept in declaration order
+                for (Subscription subscription : entry.getKey().subscriptions) {
+                    if (values.containsKey(subscription)) {
+                        applyValue(instance, subscription.injectionPoint, values.get(subscription));
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class PreferenceKey {
+        private final String nodePath;
+        private final String key;
+
+        private PreferenceKey(String nodePath, String key) {
+            this.nodePath = nodePath;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PreferenceKey)) return false;
+            PreferenceKey that = (PreferenceKey) o;
+            return nodePath.equals(that.nodePath) && (key != null ? key.equals(that.key) : that.key == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * nodePath.hashCode() + (key != null ? key.hashCode() : 0);
+        }
+    }
+
+    private static final class ArgumentsKey {
+        private final Object[] args;
+        private final int hash;
+
+        private ArgumentsKey(Object[] args) {
+            this.args = null != args ? args.clone() : null;
+            this.hash = Arrays.hashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof ArgumentsKey && Arrays.equals(args, ((ArgumentsKey) o).args));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class EvaluatedValue {
+        private final Object source;
+        private final Object result;
+
+        private EvaluatedValue(Object source, Object result) {
+            this.source = source;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Keeps track of {@code @PreferencesAware} instances. Instances are weakly
+     * referenced and compared by identity; containers of reclaimed instances are
+     * purged as soon as the garbage collector enqueues them. Subscriptions are
+     * indexed by node path and key, which means a change only visits the
+     * instances bound to the changed preference.
+     */
+    private static class InstanceStore {
+        private static final String PATH_SEPARATOR_UPPER_BOUND = String.valueOf((char) (PreferencesNode.PATH_SEPARATOR.charAt(0) + 1));
+        private final ConcurrentMap<Object, InstanceContainer> instances = new ConcurrentHashMap<Object, InstanceContainer>();
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+        private final ConcurrentMap<String, ConcurrentMap<String, Set<Subscription>>> subscriptionsByNode = new ConcurrentHashMap<String, ConcurrentMap<String, Set<Subscription>>>();
+        private final NavigableSet<String> nodePaths = new ConcurrentSkipListSet<String>();
+        private final AtomicInteger injectionPointCount = new AtomicInteger();
 
         private void add(Object instance, List<InjectionPoint> injectionPoints) {
             if (null == instance) return;
-            instances.add(new InstanceContainer(instance, injectionPoints));
+            expungeStaleEntries();
+            InstanceContainer container = new InstanceContainer(instance, injectionPoints, queue);
+            if (null != instances.putIfAbsent(container, container)) return;
+            injectionPointCount.addAndGet(container.subscriptions.size());
+            for (Subscription subscription : container.subscriptions) {
+                if (null == subscription.injectionPoint.key) continue;
+                subscriptionsFor(subscription.injectionPoint.nodePath, subscription.injectionPoint.key).add(subscription);
+            }
         }
 
         private void remove(Object instance) {
             if (null == instance) return;
-            InstanceContainer subject = null;
-            for (InstanceContainer instance1 : instances) {
-                subject = instance1;
-                Object candidate = subject.instance();
-                if (instance.equals(candidate)) {
-                    break;
-                }
+            expungeStaleEntries();
+            InstanceContainer container = instances.remove(new IdentityKey(instance));
+            if (null != container) {
+                unindex(container);
+                container.clear();
             }
-            if (subject != null) instances.remove(subject);
         }
 
         private boolean contains(Object instance) {
-            if (null == instance) return false;
-            for (InstanceContainer instanceContainer : instances) {
-                Object candidate = instanceContainer.instance();
-                if (instance.equals(candidate)) {
-                    return true;
+            return null != instance && instances.containsKey(new IdentityKey(instance));
+        }
+
+        private int size() {
+            expungeStaleEntries();
+            return instances.size();
+        }
+
+        private int injectionPointCount() {
+            expungeStaleEntries();
+            return injectionPointCount.get();
+        }
+
+        private void expungeStaleEntries() {
+            Reference<?> reference;
+            while ((reference = queue.poll()) != null) {
+                InstanceContainer container = (InstanceContainer) reference;
+                if (null != instances.remove(container)) {
+                    unindex(container);
                 }
             }
-            return false;
         }
 
-        public Iterator<InstanceContainer> iterator() {
-            final Iterator<InstanceContainer> it = instances.iterator();
-            return new Iterator<InstanceContainer>() {
-                public boolean hasNext() {
-                    return it.hasNext();
-                }
+        private Collection<Subscription> subscriptions(String nodePath, String key) {
+            Map<String, Set<Subscription>> subscriptionsByKey = subscriptionsByNode.get(nodePath);
+            if (null == subscriptionsByKey) return Collections.emptySet();
+            Set<Subscription> subscriptions = subscriptionsByKey.get(key);
+            return null != subscriptions ? subscriptions : Collections.<Subscription>emptySet();
+        }
 
-                public InstanceContainer next() {
-                    return it.next();
+        /**
+         * Returns all live instances bound to a preference stored in the given node or in any of its descendants.
+         */
+        private Collection<Object> instancesBoundTo(String nodePath) {
+            Collection<String> paths;
+            if (PreferencesNode.PATH_SEPARATOR.equals(nodePath)) {
+                paths = nodePaths;
+            } else {
+                paths = new ArrayList<String>();
+                if (nodePaths.contains(nodePath)) paths.add(nodePath);
+                paths.addAll(nodePaths.subSet(nodePath + PreferencesNode.PATH_SEPARATOR, true, nodePath + PATH_SEPARATOR_UPPER_BOUND, false));
+            }
+
+            Map<InstanceContainer, Object> instances = new IdentityHashMap<InstanceContainer, Object>();
+            for (String path : paths) {
+                Map<String, Set<Subscription>> subscriptionsByKey = subscriptionsByNode.get(path);
+                if (null == subscriptionsByKey) continue;
+                for (Set<Subscription> subscriptions : subscriptionsByKey.values()) {
+                    for (Subscription subscription : subscriptions) {
+                        if (instances.containsKey(subscription.container)) continue;
+                        Object instance = subscription.container.instance();
+                        if (null != instance) instances.put(subscription.container, instance);
+                    }
                 }
+            }
+            return instances.values();
+        }
 
-                public void remove() {
-                    it.remove();
+        private Set<Subscription> subscriptionsFor(String nodePath, String key) {
+            ConcurrentMap<String, Set<Subscription>> subscriptionsByKey = subscriptionsByNode.get(nodePath);
+            if (null == subscriptionsByKey) {
+                ConcurrentMap<String, Set<Subscription>> newSubscriptionsByKey = new ConcurrentHashMap<String, Set<Subscription>>();
+                subscriptionsByKey = subscriptionsByNode.putIfAbsent(nodePath, newSubscriptionsByKey);
+                if (null == subscriptionsByKey) {
+                    subscriptionsByKey = newSubscriptionsByKey;
+                    nodePaths.add(nodePath);
                 }
-            };
+            }
+            Set<Subscription> subscriptions = subscriptionsByKey.get(key);
+            if (null == subscriptions) {
+                Set<Subscription> newSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<Subscription, Boolean>());
+                subscriptions = subscriptionsByKey.putIfAbsent(key, newSubscriptions);
+                if (null == subscriptions) subscriptions = newSubscriptions;
+            }
+            return subscriptions;
+        }
+
+        private void unindex(InstanceContainer container) {
+            injectionPointCount.addAndGet(-container.subscriptions.size());
+            for (Subscription subscription : container.subscriptions) {
+                if (null == subscription.injectionPoint.key) continue;
+                subscriptions(subscription.injectionPoint.nodePath, subscription.injectionPoint.key).remove(subscription);
+            }
         }
     }
 
-    private static class InstanceContainer {
-        private final WeakReference<Object> instance;
-        private final Map<String, InjectionPoint> injectionPoints = new LinkedHashMap<String, InjectionPoint>();
+    private static class InstanceContainer extends WeakReference<Object> {
+        private final int hash;
+        private final List<Subscription> subscriptions;
 
-        private InstanceContainer(Object instance, List<InjectionPoint> injectionPoints) {
-            this.instance = new WeakReference<Object>(instance);
-            for (InjectionPoint ip : injectionPoints) {
-                this.injectionPoints.put(ip.path, ip);
+        private InstanceContainer(Object instance, List<InjectionPoint> injectionPoints, ReferenceQueue<Object> queue) {
+            super(instance, queue);
+            this.hash = System.identityHashCode(instance);
+            List<Subscription> list = new ArrayList<Subscription>(injectionPoints.size());
+            for (InjectionPoint injectionPoint : injectionPoints) {
+                list.add(new Subscription(this, injectionPoint));
             }
+            this.subscriptions = list;
         }
 
         private Object instance() {
-            return instance.get();
+            return get();
         }
 
-        private boolean containsPath(String path) {
-            for (String p : injectionPoints.keySet()) {
-                if (p.equals(path)) return true;
-            }
-            return false;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            Object instance = get();
+            if (null == instance) return false;
+            if (o instanceof IdentityKey) return instance == ((IdentityKey) o).instance;
+            return o instanceof InstanceContainer && instance == ((InstanceContainer) o).get();
         }
 
-        public boolean containsPartialPath(String path) {
-            for (String p : injectionPoints.keySet()) {
-                if (p.startsWith(path + ".")) return true;
-            }
-            return false;
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class IdentityKey {
+        private final Object instance;
+
+        private IdentityKey(Object instance) {
+            this.instance = instance;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o instanceof InstanceContainer) return instance == ((InstanceContainer) o).get();
+            return o instanceof IdentityKey && instance == ((IdentityKey) o).instance;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(instance);
+        }
+    }
+
+    private static class Subscription {
+        private final InstanceContainer container;
+        private final InjectionPoint injectionPoint;
+
+        private Subscription(InstanceContainer container, InjectionPoint injectionPoint) {
+            this.container = container;
+            this.injectionPoint = injectionPoint;
         }
     }
 
     private static abstract class InjectionPoint {
         public final String fqName;
         public final String path;
+        public final String nodePath;
+        public final String key;
         public final String format;
 
-        private InjectionPoint(String fqName, String path, String format) {
+        private InjectionPoint(String fqName, String path, String nodePath, String key, String format) {
             this.fqName = fqName;
             this.path = path;
+            this.nodePath = nodePath;
+            this.key = key;
             this.format = format;
         }
 
@@ -407,52 +989,107 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
         public abstract Object getValue(Object instance);
 
         public abstract Class<?> getType();
+
+        public boolean injectPrimitiveValue(Object instance, PreferencesNode node, String key) {
+            return false;
+        }
+
+        public boolean savePrimitiveValue(Object instance, PreferencesNode node, String key) {
+            return false;
+        }
     }
 
     private static class FieldInjectionPoint extends InjectionPoint {
-        private static final Object[] NO_ARGS = new Object[0];
         public final Field field;
+        private final PropertyAccessor accessor;
 
-        private FieldInjectionPoint(Field field, String fqName, String path, String format) {
-            super(fqName, path, format);
+        private FieldInjectionPoint(Field field, PropertyAccessor accessor, String fqName, String path, String nodePath, String key, String format) {
+            super(fqName, path, nodePath, key, format);
             this.field = field;
+            this.accessor = accessor;
         }
 
         public void setValue(Object instance, Object value) {
-            String setter = getSetterName(field.getName());
             try {
-                InvokerHelper.invokeMethod(instance, setter, value);
-            } catch (MissingMethodException mme) {
-                try {
-                    field.setAccessible(true);
-                    field.set(instance, value);
-                } catch (IllegalAccessException e) {
-                    if (LOG.isWarnEnabled()) {
-                        LOG.warn("Cannot set value on field " + fqName + " of instance " + instance, sanitize(e));
-                    }
+                accessor.setValue(instance, value);
+            } catch (IllegalAccessException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot set value on field " + fqName + " of instance " + instance, sanitize(e));
+                }
+            } catch (InvocationTargetException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot set value on field " + fqName + " of instance " + instance, sanitize(e));
                 }
             }
         }
 
         public Object getValue(Object instance) {
-            String getter = getGetterName(field.getName());
             try {
-                return InvokerHelper.invokeMethod(instance, getter, NO_ARGS);
-            } catch (MissingMethodException mme) {
-                try {
-                    field.setAccessible(true);
-                    return field.get(instance);
-                } catch (IllegalAccessException e) {
-                    if (LOG.isWarnEnabled()) {
-                        LOG.warn("Cannot get value from field " + fqName + " of instance " + instance, sanitize(e));
-                    }
+                return accessor.getValue(instance);
+            } catch (IllegalAccessException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot get value from field " + fqName + " of instance " + instance, sanitize(e));
+                }
+            } catch (InvocationTargetException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot get value from field " + fqName + " of instance " + instance, sanitize(e));
                 }
             }
             return null;
         }
 
         public Class<?> getType() {
-            return field.getType();
+            return accessor.getType();
+        }
+
+        @Override
+        public boolean injectPrimitiveValue(Object instance, PreferencesNode node, String key) {
+            if (!(accessor instanceof PrimitivePropertyAccessor)) return false;
+            PrimitivePropertyAccessor primitive = (PrimitivePropertyAccessor) accessor;
+            Class<?> type = primitive.getType();
+            try {
+                if (type == Integer.TYPE) {
+                    primitive.setInt(instance, node.getInt(key, 0));
+                } else if (type == Long.TYPE) {
+                    primitive.setLong(instance, node.getLong(key, 0L));
+                } else if (type == Double.TYPE) {
+                    primitive.setDouble(instance, node.getDouble(key, 0d));
+                } else if (type == Boolean.TYPE) {
+                    primitive.setBoolean(instance, node.getBoolean(key, false));
+                } else {
+                    return false;
+                }
+            } catch (IllegalAccessException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot set value on field " + fqName + " of instance " + instance, sanitize(e));
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean savePrimitiveValue(Object instance, PreferencesNode node, String key) {
+            if (!(accessor instanceof PrimitivePropertyAccessor)) return false;
+            PrimitivePropertyAccessor primitive = (PrimitivePropertyAccessor) accessor;
+            Class<?> type = primitive.getType();
+            try {
+                if (type == Integer.TYPE) {
+                    node.putInt(key, primitive.getInt(instance));
+                } else if (type == Long.TYPE) {
+                    node.putLong(key, primitive.getLong(instance));
+                } else if (type == Double.TYPE) {
+                    node.putDouble(key, primitive.getDouble(instance));
+                } else if (type == Boolean.TYPE) {
+                    node.putBoolean(key, primitive.getBoolean(instance));
+                } else {
+                    return false;
+                }
+            } catch (IllegalAccessException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot get value from field " + fqName + " of instance " + instance, sanitize(e));
+                }
+            }
+            return true;
         }
 
         @Override
@@ -470,18 +1107,18 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
     private static class MethodInjectionPoint extends InjectionPoint {
         public final Method readMethod;
         public final Method writeMethod;
-        private final Class type;
+        private final PropertyAccessor accessor;
 
-        private MethodInjectionPoint(Method readMethod, Method writeMethod, String fqName, String path, String format) {
-            super(fqName, path, format);
+        private MethodInjectionPoint(Method readMethod, Method writeMethod, PropertyAccessor accessor, String fqName, String path, String nodePath, String key, String format) {
+            super(fqName, path, nodePath, key, format);
             this.readMethod = readMethod;
             this.writeMethod = writeMethod;
-            this.type = readMethod.getReturnType();
+            this.accessor = accessor;
         }
 
         public void setValue(Object instance, Object value) {
             try {
-                writeMethod.invoke(instance, value);
+                accessor.setValue(instance, value);
             } catch (IllegalAccessException e) {
                 if (LOG.isWarnEnabled()) {
                     LOG.warn("Cannot set value on method " + fqName + "() of instance " + instance, sanitize(e));
@@ -495,7 +1132,7 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
 
         public Object getValue(Object instance) {
             try {
-                return readMethod.invoke(instance);
+                return accessor.getValue(instance);
             } catch (IllegalAccessException e) {
                 if (LOG.isWarnEnabled()) {
                     LOG.warn("Cannot get value on method " + fqName + "() of instance " + instance, sanitize(e));
@@ -509,7 +1146,7 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
         }
 
         public Class<?> getType() {
-            return type;
+            return accessor.getType();
         }
 
         @Override
@@ -517,6 +1154,57 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
             final StringBuilder sb = new StringBuilder("MethodInjectionPoint{");
             sb.append("readMethod=").append(readMethod);
             sb.append(", writeMethod=").append(writeMethod);
+            sb.append(", type=").append(getType());
+            sb.append(", fqName='").append(fqName).append('\'');
+            sb.append(", path='").append(path).append('\'');
+            sb.append(", format='").append(format).append('\'');
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    private static class InjectorInjectionPoint extends InjectionPoint {
+        private final PreferencesInjector injector;
+        private final int index;
+        private final Class<?> type;
+
+        private InjectorInjectionPoint(PreferencesInjector injector, int index, Class<?> type, String fqName, String path, String nodePath, String key, String format) {
+            super(fqName, path, nodePath, key, format);
+            this.injector = injector;
+            this.index = index;
+            this.type = type;
+        }
+
+        public void setValue(Object instance, Object value) {
+            try {
+                injector.setValue(instance, index, value);
+            } catch (RuntimeException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot set value on " + fqName + " of instance " + instance, sanitize(e));
+                }
+            }
+        }
+
+        public Object getValue(Object instance) {
+            try {
+                return injector.getValue(instance, index);
+            } catch (RuntimeException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Cannot get value from " + fqName + " of instance " + instance, sanitize(e));
+                }
+            }
+            return null;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("InjectorInjectionPoint{");
+            sb.append("injector=").append(injector.getClass().getName());
+            sb.append(", index=").append(index);
             sb.append(", type=").append(type);
             sb.append(", fqName='").append(fqName).append('\'');
             sb.append(", path='").append(path).append('\'');
@@ -529,9 +1217,12 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
     private static abstract class PreferenceDescriptor {
         public final String fqName;
         public final String path;
+        public final String nodePath;
+        public final String key;
         public final String[] args;
         public final String defaultValue;
         public final String format;
+        protected InjectionPoint injectionPoint;
 
         private PreferenceDescriptor(String fqName, String path, String[] args, String defaultValue, String format) {
             this.fqName = fqName;
@@ -539,6 +1230,10 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
             this.args = args;
             this.defaultValue = defaultValue;
             this.format = format;
+            String[] parsedPath = parsePreferencePath(path);
+            // node paths are kept absolute so that they match the paths of change events
+            this.nodePath = parsedPath[0].startsWith(PreferencesNode.PATH_SEPARATOR) ? parsedPath[0] : PreferencesNode.PATH_SEPARATOR + parsedPath[0];
+            this.key = parsedPath[1];
         }
 
         public abstract InjectionPoint asInjectionPoint();
@@ -546,14 +1241,17 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
 
     private static class FieldPreferenceDescriptor extends PreferenceDescriptor {
         public final Field field;
+        private final PropertyAccessor accessor;
 
-        private FieldPreferenceDescriptor(Field field, String fqName, String path, String[] args, String defaultValue, String format) {
+        private FieldPreferenceDescriptor(Field field, PropertyAccessor accessor, String fqName, String path, String[] args, String defaultValue, String format) {
             super(fqName, path, args, defaultValue, format);
             this.field = field;
+            this.accessor = accessor;
+            this.injectionPoint = asInjectionPoint();
         }
 
         public InjectionPoint asInjectionPoint() {
-            return new FieldInjectionPoint(field, fqName, path, format);
+            return new FieldInjectionPoint(field, accessor, fqName, path, nodePath, key, format);
         }
 
         @Override
@@ -573,15 +1271,18 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
     private static class MethodPreferenceDescriptor extends PreferenceDescriptor {
         public final Method readMethod;
         public final Method writeMethod;
+        private final PropertyAccessor accessor;
 
-        private MethodPreferenceDescriptor(Method readMethod, Method writeMethod, String fqName, String path, String[] args, String defaultValue, String format) {
+        private MethodPreferenceDescriptor(Method readMethod, Method writeMethod, PropertyAccessor accessor, String fqName, String path, String[] args, String defaultValue, String format) {
             super(fqName, path, args, defaultValue, format);
             this.readMethod = readMethod;
             this.writeMethod = writeMethod;
+            this.accessor = accessor;
+            this.injectionPoint = asInjectionPoint();
         }
 
         public InjectionPoint asInjectionPoint() {
-            return new MethodInjectionPoint(readMethod, writeMethod, fqName, path, format);
+            return new MethodInjectionPoint(readMethod, writeMethod, accessor, fqName, path, nodePath, key, format);
         }
 
         @Override
@@ -598,4 +1299,36 @@ public abstract class AbstractPreferencesManager implements PreferencesManager {
             return sb.toString();
         }
     }
+
+    private static class InjectorPreferenceDescriptor extends PreferenceDescriptor {
+        private final PreferencesInjector injector;
+        private final int index;
+        private final Class<?> type;
+
+        private InjectorPreferenceDescriptor(PreferencesInjector injector, int index, InjectedPreference preference) {
+            super(preference.getFqName(), preference.getPath(), preference.getArgs(), preference.getDefaultValue(), preference.getFormat());
+            this.injector = injector;
+            this.index = index;
+            this.type = preference.getType();
+            this.injectionPoint = asInjectionPoint();
+        }
+
+        public InjectionPoint asInjectionPoint() {
+            return new InjectorInjectionPoint(injector, index, type, fqName, path, nodePath, key, format);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("InjectorPreferenceDescriptor{");
+            sb.append("injector=").append(injector.getClass().getName());
+            sb.append(", index=").append(index);
+            sb.append(", fqName='").append(fqName).append('\'');
+            sb.append(", path='").append(path).append('\'');
+            sb.append(", args=").append(Arrays.toString(args));
+            sb.append(", defaultValue='").append(defaultValue).append('\'');
+            sb.append(", format='").append(format).append('\'');
+            sb.append('}');
+            return sb.toString();
+        }
+    }
 }
@@ -18,11 +18,13 @@ package org.codehaus.griffon.runtime.prefs;
 
 import griffon.plugins.preferences.Preferences;
 import griffon.plugins.preferences.PreferencesNode;
+import griffon.plugins.preferences.util.ContentHashed;
 import org.codehaus.groovy.runtime.DefaultGroovyMethods;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import static griffon.util.GriffonNameUtils.isBlank;
 
@@ -34,6 +36,9 @@ public abstract class AbstractPreferencesNode implements PreferencesNode {
     protected PreferencesNode parent;
     protected final String name;
     private String path;
+    private volatile long stamp;
+    private volatile long subtreeStamp;
+    private static final AtomicLongFieldUpdater<AbstractPreferencesNode> SUBTREE_STAMP = AtomicLongFieldUpdater.newUpdater(AbstractPreferencesNode.class, "subtreeStamp");
 
     public AbstractPreferencesNode(Preferences preferences, PreferencesNode parent, String name) {
         this.preferences = preferences;
@@ -66,28 +71,139 @@ public abstract class AbstractPreferencesNode implements PreferencesNode {
         return path().equals(PATH_SEPARATOR);
     }
 
-    public PreferencesNode merge(PreferencesNode other) {
-        if (other != null) {
-            for (String key : other.keys()) {
-                putAt(key, other.getAt(key));
-            }
-            for (Map.Entry<String, PreferencesNode> child : other.children().entrySet()) {
-                final String childNodeName = child.getKey();
-                PreferencesNode newChild = children().get(childNodeName);
-                if (newChild == null) newChild = createChildNode(childNodeName);
-                newChild.merge(child.getValue());
-                storeChildNode(childNodeName, newChild);
-            }
+    public long modificationStamp() {
+        return stamp;
+    }
+
+    public long subtreeModificationStamp() {
+        return subtreeStamp;
+    }
+
+    /**
+     * Records a change to the keys or to the set of children of this node.
+     * Subclasses must call it whenever a key changes; changes to children are
+     * recorded by {@link #childNodeStored} and {@link #childNodeRemoved}.
+     */
+    protected void touch() {
+        touch(AbstractPreferences.nextStamp());
+    }
+
+    private void touch(long newStamp) {
+        stamp = newStamp;
+        for (PreferencesNode node = this; node instanceof AbstractPreferencesNode; node = node.parent()) {
+            if (!((AbstractPreferencesNode) node).raiseSubtreeStamp(newStamp)) break;
+        }
+    }
+
+    private boolean raiseSubtreeStamp(long newStamp) {
+        while (true) {
+            long current = subtreeStamp;
+            // ancestors already carry a newer stamp
+            if (current >= newStamp) return false;
+            if (SUBTREE_STAMP.compareAndSet(this, current, newStamp)) return true;
+        }
+    }
+
+    private static void restamp(PreferencesNode node, long newStamp) {
+        if (!(node instanceof AbstractPreferencesNode)) return;
+        AbstractPreferencesNode n = (AbstractPreferencesNode) node;
+        n.stamp = newStamp;
+        n.raiseSubtreeStamp(newStamp);
+        for (PreferencesNode child : n.children().values()) {
+            restamp(child, newStamp);
+        }
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = getAt(key);
+        if (value instanceof Number) return ((Number) value).intValue();
+        try {
+            return value instanceof CharSequence ? Integer.parseInt(value.toString().trim()) : defaultValue;
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    public void putInt(String key, int value) {
+        putAt(key, value);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object value = getAt(key);
+        if (value instanceof Number) return ((Number) value).longValue();
+        try {
+            return value instanceof CharSequence ? Long.parseLong(value.toString().trim()) : defaultValue;
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    public void putLong(String key, long value) {
+        putAt(key, value);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        Object value = getAt(key);
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        try {
+            return value instanceof CharSequence ? Double.parseDouble(value.toString().trim()) : defaultValue;
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    public void putDouble(String key, double value) {
+        putAt(key, value);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = getAt(key);
+        if (value instanceof Boolean) return (Boolean) value;
+        if (value instanceof CharSequence) {
+            String text = value.toString().trim();
+            if ("true".equalsIgnoreCase(text)) return true;
+            if ("false".equalsIgnoreCase(text)) return false;
         }
+        return defaultValue;
+    }
+
+    public void putBoolean(String key, boolean value) {
+        putAt(key, value);
+    }
+
+    /**
+     * Returns the primitive type of the value stored under the given key if
+     * this node keeps it unboxed, null otherwise. Values of such keys can be read
+     * without allocations through the typed accessor of said type.
+     */
+    public Class<?> primitiveTypeOf(String key) {
+        return null;
+    }
+
+    /**
+     * Copies the keys and child nodes of the given node into this one. Only
+     * keys whose value differs and nodes that do not exist yet are written,
+     * see {@link NodeMerger}.
+     */
+    public PreferencesNode merge(PreferencesNode other) {
+        if (other != null) NodeMerger.merge(this, other);
         return this;
     }
 
     protected boolean areEqual(Object oldValue, Object newValue) {
+        return valuesEqual(oldValue, newValue);
+    }
+
+    static boolean valuesEqual(Object oldValue, Object newValue) {
         if (oldValue == newValue) return true;
 
         if ((oldValue == null && newValue != null) ||
             (oldValue != null && newValue == null)) return false;
 
+        // values with different content hashes can not be equal, skip the deep comparison
+        if (oldValue instanceof ContentHashed && newValue instanceof ContentHashed &&
+            ((ContentHashed) oldValue).contentHash() != ((ContentHashed) newValue).contentHash()) return false;
+
         if (oldValue instanceof Map && newValue instanceof Map) {
             return DefaultGroovyMethods.equals((Map) oldValue, (Map) newValue);
         } else if (oldValue instanceof Set && newValue instanceof Set) {
@@ -108,15 +224,25 @@ public abstract class AbstractPreferencesNode implements PreferencesNode {
         if (parsedPath == null) return null;
         String nodeName = parsedPath[0];
 
+        PreferencesNode node = getOrCreateChildNode(nodeName);
+        if (!isBlank(parsedPath[1])) {
+            node = node.node(parsedPath[1]);
+        }
+
+        return node;
+    }
+
+    /**
+     * Returns the child node with the given name, creating and storing it if
+     * it does not exist yet. Subclasses that may be accessed concurrently
+     * should make this operation atomic.
+     */
+    protected PreferencesNode getOrCreateChildNode(String nodeName) {
         PreferencesNode node = getChildNode(nodeName);
         if (node == null) {
             node = createChildNode(nodeName);
             storeChildNode(nodeName, node);
         }
-        if (!isBlank(parsedPath[1])) {
-            node = node.node(parsedPath[1]);
-        }
-
         return node;
     }
 
@@ -141,6 +267,31 @@ public abstract class AbstractPreferencesNode implements PreferencesNode {
         return node;
     }
 
+    /**
+     * Stamps a child node and its descendants as changed and makes them reachable
+     * through the path index of the owning {@code Preferences}, if there is one.
+     * Subclasses must call it whenever a child node is stored.
+     */
+    protected void childNodeStored(PreferencesNode previous, PreferencesNode node) {
+        long newStamp = AbstractPreferences.nextStamp();
+        // a stored subtree counts as changed as a whole
+        restamp(node, newStamp);
+        touch(newStamp);
+        if (!(preferences instanceof AbstractPreferences)) return;
+        if (null != previous && previous != node) ((AbstractPreferences) preferences).unindexNode(previous);
+        ((AbstractPreferences) preferences).indexNode(node);
+    }
+
+    /**
+     * Stamps this node as changed and removes a child node and its descendants
+     * from the path index of the owning {@code Preferences}, if there is one.
+     * Subclasses must call it whenever a child node is removed.
+     */
+    protected void childNodeRemoved(PreferencesNode node) {
+        touch();
+        if (preferences instanceof AbstractPreferences) ((AbstractPreferences) preferences).unindexNode(node);
+    }
+
     private String[] parsePath(String path) {
         if (isBlank(path) ||
             (!isRoot() && (path.startsWith(PATH_SEPARATOR)) ||
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe cache of values computed once per {@code Class}.</p>
+ * Classes are weakly referenced and values are softly referenced. A value that
+ * holds on to {@code Field}s or {@code Method}s of its class keeps that class
+ * (and its class loader) softly reachable, delaying unloading until the value
+ * is reclaimed under memory pressure or the class is removed from this cache.
+ * Lookups never block.
+ *
+ * @author Andres Almiray
+ */
+public abstract class ClassMetadataCache<T> {
+    private final ConcurrentMap<Object, SoftReference<T>> cache = new ConcurrentHashMap<Object, SoftReference<T>>();
+    private final ReferenceQueue<Class<?>> queue = new ReferenceQueue<Class<?>>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Computes the value associated with the given class. Invoked once per
+     * class unless the value is reclaimed by the garbage collector or the
+     * class is explicitly removed from this cache.
+     *
+     * @param type the class whose value must be computed
+     * @return the computed value. Must not be null.
+     */
+    protected abstract T computeValue(Class<?> type);
+
+    public T get(Class<?> type) {
+        SoftReference<T> reference = cache.get(new LookupKey(type));
+        T value = reference != null ? reference.get() : null;
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+
+        misses.incrementAndGet();
+        expungeStaleEntries();
+        // concurrent misses may compute twice but only one value is kept
+        value = computeValue(type);
+        WeakKey key = new WeakKey(type, queue);
+        SoftReference<T> newReference = new SoftReference<T>(value);
+        while (true) {
+            SoftReference<T> existing = cache.putIfAbsent(key, newReference);
+            if (existing == null) return value;
+            T existingValue = existing.get();
+            if (existingValue != null) return existingValue;
+            if (cache.replace(key, existing, newReference)) return value;
+        }
+    }
+
+    public void remove(Class<?> type) {
+        cache.remove(new LookupKey(type));
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        expungeStaleEntries();
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private void expungeStaleEntries() {
+        Reference<? extends Class<?>> reference;
+        while ((reference = queue.poll()) != null) {
+            cache.remove(reference);
+        }
+    }
+
+    private static Class<?> referent(Object key) {
+        return key instanceof WeakKey ? ((WeakKey) key).get() : ((LookupKey) key).type;
+    }
+
+    private static final class WeakKey extends WeakReference<Class<?>> {
+        private final int hash;
+
+        private WeakKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+            super(type, queue);
+            this.hash = System.identityHashCode(type);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof WeakKey) && !(o instanceof LookupKey)) return false;
+            Class<?> type = get();
+            return type != null && type == referent(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class LookupKey {
+        private final Class<?> type;
+
+        private LookupKey(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof WeakKey) && !(o instanceof LookupKey)) return false;
+            return type == referent(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(type);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import griffon.plugins.preferences.NodeChangeEvent;
+import griffon.plugins.preferences.PreferenceChangeEvent;
+import griffon.plugins.preferences.Preferences;
+import griffon.plugins.preferences.PreferencesNode;
+
+import java.util.*;
+
+/**
+ * {@code PreferencesNode} tuned for memory footprint rather than for speed.</p>
+ * Keys and child nodes are kept in small arrays that are searched linearly and
+ * only turn into hashed maps once they grow past {@link #ARRAY_THRESHOLD} entries.
+ * Key names are interned and the path of the node is computed from its parent
+ * chain every time it is requested. All operations synchronize on the node.
+ * Storing a null value removes the key.
+ *
+ * @author Andres Almiray
+ */
+public class CompactPreferencesNode extends AbstractPreferencesNode {
+    private static final int ARRAY_THRESHOLD = 8;
+    private static final Object[] NO_PROPERTIES = new Object[0];
+    private static final PreferencesNode[] NO_NODES = new PreferencesNode[0];
+
+    // either key/value pairs in an Object[] or a HashMap
+    private Object properties = NO_PROPERTIES;
+    private int propertyCount;
+    // either a PreferencesNode[] or a LinkedHashMap
+    private Object nodes = NO_NODES;
+    private int nodeCount;
+
+    public CompactPreferencesNode(Preferences preferences, String name) {
+        this(preferences, null, name);
+    }
+
+    public CompactPreferencesNode(Preferences preferences, PreferencesNode parent, String name) {
+        super(preferences, parent, name);
+    }
+
+    @Override
+    public String path() {
+        if (null == parent) return PATH_SEPARATOR;
+        String parentPath = parent.path();
+        return parentPath.length() == 1 ? parentPath + name : parentPath + PATH_SEPARATOR + name;
+    }
+
+    @Override
+    public boolean isRoot() {
+        return null == parent;
+    }
+
+    public Object getAt(String key) {
+        synchronized (this) {
+            if (properties instanceof Map) return ((Map) properties).get(key);
+            int index = indexOfKey(key);
+            return index < 0 ? null : ((Object[]) properties)[index + 1];
+        }
+    }
+
+    public void putAt(String key, Object value) {
+        if (null == value) {
+            remove(key);
+            return;
+        }
+
+        Object oldValue;
+        synchronized (this) {
+            oldValue = doPut(key.intern(), value);
+        }
+        if (!areEqual(oldValue, value)) {
+            touch();
+            firePreferencesChanged(path(), key, oldValue, value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object doPut(String key, Object value) {
+        if (properties instanceof Map) {
+            // values are never null, so a null result means the key is new
+            Object oldValue = ((Map<String, Object>) properties).put(key, value);
+            if (null == oldValue) propertyCount++;
+            return oldValue;
+        }
+
+        Object[] entries = (Object[]) properties;
+        int index = indexOfKey(key);
+        if (index >= 0) {
+            Object oldValue = entries[index + 1];
+            entries[index + 1] = value;
+            return oldValue;
+        }
+
+        if (propertyCount == ARRAY_THRESHOLD) {
+            Map<String, Object> map = new HashMap<String, Object>(ARRAY_THRESHOLD * 4);
+            for (int i = 0; i < propertyCount * 2; i += 2) {
+                map.put((String) entries[i], entries[i + 1]);
+            }
+            map.put(key, value);
+            properties = map;
+        } else {
+            if (entries.length == propertyCount * 2) {
+                entries = Arrays.copyOf(entries, Math.max(2, propertyCount * 4));
+                properties = entries;
+            }
+            entries[propertyCount * 2] = key;
+            entries[propertyCount * 2 + 1] = value;
+        }
+        propertyCount++;
+        return null;
+    }
+
+    private int indexOfKey(String key) {
+        Object[] entries = (Object[]) properties;
+        for (int i = 0; i < propertyCount * 2; i += 2) {
+            // interned keys usually match by identity
+            if (entries[i] == key || entries[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    private void firePreferencesChanged(String path, String key, Object oldValue, Object newValue) {
+        preferences.preferenceChanged(new PreferenceChangeEvent(path, key, oldValue, newValue));
+    }
+
+    public void remove(String key) {
+        Object oldValue;
+        synchronized (this) {
+            oldValue = doRemove(key);
+        }
+        if (oldValue != null) {
+            touch();
+            firePreferencesChanged(path(), key, oldValue, null);
+        }
+    }
+
+    private Object doRemove(String key) {
+        if (properties instanceof Map) {
+            if (!((Map) properties).containsKey(key)) return null;
+            propertyCount--;
+            return ((Map) properties).remove(key);
+        }
+
+        int index = indexOfKey(key);
+        if (index < 0) return null;
+        Object[] entries = (Object[]) properties;
+        Object oldValue = entries[index + 1];
+        int last = (propertyCount - 1) * 2;
+        System.arraycopy(entries, index + 2, entries, index, last - index);
+        entries[last] = null;
+        entries[last + 1] = null;
+        propertyCount--;
+        return oldValue;
+    }
+
+    public void clear() {
+        synchronized (this) {
+            if (propertyCount == 0) return;
+            properties = NO_PROPERTIES;
+            propertyCount = 0;
+        }
+        touch();
+    }
+
+    public boolean containsKey(String key) {
+        synchronized (this) {
+            if (properties instanceof Map) return ((Map) properties).containsKey(key);
+            return indexOfKey(key) >= 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public String[] keys() {
+        synchronized (this) {
+            if (properties instanceof Map) {
+                Set<String> keys = ((Map<String, Object>) properties).keySet();
+                return keys.toArray(new String[keys.size()]);
+            }
+            String[] keys = new String[propertyCount];
+            Object[] entries = (Object[]) properties;
+            for (int i = 0; i < propertyCount; i++) {
+                keys[i] = (String) entries[i * 2];
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the child nodes, in insertion order.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, PreferencesNode> children() {
+        synchronized (this) {
+            if (nodeCount == 0) return Collections.emptyMap();
+            if (nodes instanceof Map) {
+                return Collections.unmodifiableMap(new LinkedHashMap<String, PreferencesNode>((Map<String, PreferencesNode>) nodes));
+            }
+            Map<String, PreferencesNode> children = new LinkedHashMap<String, PreferencesNode>(nodeCount * 2);
+            PreferencesNode[] array = (PreferencesNode[]) nodes;
+            for (int i = 0; i < nodeCount; i++) {
+                children.put(array[i].name(), array[i]);
+            }
+            return Collections.unmodifiableMap(children);
+        }
+    }
+
+    public CompactPreferencesNode createChildNode(String nodeName) {
+        return new CompactPreferencesNode(preferences, this, nodeName.intern());
+    }
+
+    public void storeChildNode(String nodeName, PreferencesNode node) {
+        PreferencesNode previous;
+        synchronized (this) {
+            previous = doStoreChildNode(nodeName, node);
+        }
+        childNodeStored(previous, node);
+        preferences.nodeChanged(new NodeChangeEvent(node.path(), NodeChangeEvent.Type.ADDED));
+    }
+
+    @Override
+    protected PreferencesNode getOrCreateChildNode(String nodeName) {
+        PreferencesNode node;
+        synchronized (this) {
+            node = doGetChildNode(nodeName);
+            if (node != null) return node;
+            node = createChildNode(nodeName);
+            doStoreChildNode(nodeName, node);
+        }
+        childNodeStored(null, node);
+        preferences.nodeChanged(new NodeChangeEvent(node.path(), NodeChangeEvent.Type.ADDED));
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private PreferencesNode doStoreChildNode(String nodeName, PreferencesNode node) {
+        if (nodes instanceof Map) {
+            PreferencesNode previous = ((Map<String, PreferencesNode>) nodes).put(nodeName, node);
+            if (null == previous) nodeCount++;
+            return previous;
+        }
+
+        PreferencesNode[] array = (PreferencesNode[]) nodes;
+        int index = indexOfNode(nodeName);
+        if (index >= 0) {
+            PreferencesNode previous = array[index];
+            array[index] = node;
+            return previous;
+        }
+
+        if (nodeCount == ARRAY_THRESHOLD) {
+            Map<String, PreferencesNode> map = new LinkedHashMap<String, PreferencesNode>(ARRAY_THRESHOLD * 4);
+            for (int i = 0; i < nodeCount; i++) {
+                map.put(array[i].name(), array[i]);
+            }
+            map.put(nodeName, node);
+            nodes = map;
+        } else {
+            if (array.length == nodeCount) {
+                array = Arrays.copyOf(array, Math.max(1, nodeCount * 2));
+                nodes = array;
+            }
+            array[nodeCount] = node;
+        }
+        nodeCount++;
+        return null;
+    }
+
+    public PreferencesNode removeChildNode(String nodeName) {
+        PreferencesNode node;
+        synchronized (this) {
+            node = doRemoveChildNode(nodeName);
+        }
+        if (node != null) {
+            childNodeRemoved(node);
+            preferences.nodeChanged(new NodeChangeEvent(node.path(), NodeChangeEvent.Type.REMOVED));
+        }
+        return node;
+    }
+
+    private PreferencesNode doRemoveChildNode(String nodeName) {
+        if (nodes instanceof Map) {
+            PreferencesNode node = (PreferencesNode) ((Map) nodes).remove(nodeName);
+            if (null != node) nodeCount--;
+            return node;
+        }
+
+        int index = indexOfNode(nodeName);
+        if (index < 0) return null;
+        PreferencesNode[] array = (PreferencesNode[]) nodes;
+        PreferencesNode node = array[index];
+        System.arraycopy(array, index + 1, array, index, nodeCount - index - 1);
+        array[--nodeCount] = null;
+        return node;
+    }
+
+    public PreferencesNode getChildNode(String nodeName) {
+        synchronized (this) {
+            return doGetChildNode(nodeName);
+        }
+    }
+
+    private PreferencesNode doGetChildNode(String nodeName) {
+        if (nodes instanceof Map) return (PreferencesNode) ((Map) nodes).get(nodeName);
+        int index = indexOfNode(nodeName);
+        return index < 0 ? null : ((PreferencesNode[]) nodes)[index];
+    }
+
+    private int indexOfNode(String nodeName) {
+        PreferencesNode[] array = (PreferencesNode[]) nodes;
+        for (int i = 0; i < nodeCount; i++) {
+            String name = array[i].name();
+            if (name == nodeName || name.equals(nodeName)) return i;
+        }
+        return -1;
+    }
+}
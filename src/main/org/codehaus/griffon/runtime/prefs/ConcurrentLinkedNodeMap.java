@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import griffon.plugins.preferences.PreferencesNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Thread-safe map of child nodes that iterates in insertion order.</p>
+ * Lookups never block; updates are serialized. Iterators are weakly consistent:
+ * they never throw {@code ConcurrentModificationException}, reflect every mapping
+ * that was present when iteration started and may reflect later ones. Replacing
+ * the node of an existing name keeps its position.
+ *
+ * @author Andres Almiray
+ */
+public class ConcurrentLinkedNodeMap extends AbstractMap<String, PreferencesNode> {
+    private final ConcurrentMap<String, Entry> entriesByName = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentNavigableMap<Long, Entry> entriesByOrder = new ConcurrentSkipListMap<Long, Entry>();
+    private final Object lock = new Object[0];
+    private long sequence;
+    private final Set<Map.Entry<String, PreferencesNode>> entrySet = new EntrySet();
+
+    @Override
+    public PreferencesNode get(Object name) {
+        Entry entry = entriesByName.get(name);
+        return null != entry ? entry.node : null;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return entriesByName.containsKey(name);
+    }
+
+    @Override
+    public int size() {
+        return entriesByName.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entriesByName.isEmpty();
+    }
+
+    /**
+     * Maps the given node unless a node with the same name is already present.
+     *
+     * @return the node already present, or null if the given node was added.
+     */
+    public PreferencesNode putIfAbsent(String name, PreferencesNode node) {
+        Entry existing = entriesByName.get(name);
+        if (null != existing) return existing.node;
+        synchronized (lock) {
+            existing = entriesByName.get(name);
+            if (null != existing) return existing.node;
+            Entry entry = new Entry(++sequence, name, node);
+            // publish the order first so that a visible name is always iterable
+            entriesByOrder.put(entry.order, entry);
+            entriesByName.put(name, entry);
+            return null;
+        }
+    }
+
+    @Override
+    public PreferencesNode put(String name, PreferencesNode node) {
+        synchronized (lock) {
+            Entry existing = entriesByName.get(name);
+            Entry entry = new Entry(null != existing ? existing.order : ++sequence, name, node);
+            entriesByOrder.put(entry.order, entry);
+            entriesByName.put(name, entry);
+            return null != existing ? existing.node : null;
+        }
+    }
+
+    @Override
+    public PreferencesNode remove(Object name) {
+        synchronized (lock) {
+            Entry entry = entriesByName.remove(name);
+            if (null == entry) return null;
+            entriesByOrder.remove(entry.order);
+            return entry.node;
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (String name : entriesByName.keySet()) {
+            remove(name);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, PreferencesNode>> entrySet() {
+        return entrySet;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, PreferencesNode>> {
+        @Override
+        public Iterator<Map.Entry<String, PreferencesNode>> iterator() {
+            final Iterator<Entry> entries = entriesByOrder.values().iterator();
+            return new Iterator<Map.Entry<String, PreferencesNode>>() {
+                private Entry current;
+
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                public Map.Entry<String, PreferencesNode> next() {
+                    current = entries.next();
+                    return new SimpleImmutableEntry<String, PreferencesNode>(current.name, current.node);
+                }
+
+                public void remove() {
+                    if (null == current) throw new IllegalStateException();
+                    synchronized (lock) {
+                        if (entriesByName.remove(current.name, current)) entriesByOrder.remove(current.order);
+                    }
+                    current = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return entriesByName.size();
+        }
+    }
+
+    private static final class Entry {
+        private final long order;
+        private final String name;
+        private final PreferencesNode node;
+
+        private Entry(long order, String name, PreferencesNode node) {
+            this.order = order;
+            this.name = name;
+            this.node = node;
+        }
+    }
+}
@@ -19,15 +19,25 @@ package org.codehaus.griffon.runtime.prefs;
 import griffon.core.GriffonApplication;
 import griffon.plugins.preferences.Preferences;
 
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+
 /**
  * @author Andres Almiray
  */
 public class DefaultPreferencesManager extends AbstractPreferencesManager {
+    private static final String KEY_PREFERENCES_NODES_COMPACT = "preferences.nodes.compact";
+    private static final String KEY_PREFERENCES_NODES_PERSISTENT = "preferences.nodes.persistent";
     private final Preferences preferences;
 
     public DefaultPreferencesManager(GriffonApplication app) {
         super(app);
-        preferences = new DefaultPreferences();
+        if (getConfigValueAsBoolean(app.getConfig(), KEY_PREFERENCES_NODES_PERSISTENT, false)) {
+            preferences = new PersistentPreferences();
+        } else if (getConfigValueAsBoolean(app.getConfig(), KEY_PREFERENCES_NODES_COMPACT, false)) {
+            preferences = new CompactPreferences();
+        } else {
+            preferences = new DefaultPreferences();
+        }
         init();
     }
 
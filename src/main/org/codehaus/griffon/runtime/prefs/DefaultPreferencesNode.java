@@ -22,16 +22,20 @@ import griffon.plugins.preferences.Preferences;
 import griffon.plugins.preferences.PreferencesNode;
 
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
+ * Values written through the typed accessors ({@code putInt}, {@code putLong},
+ * {@code putDouble}, {@code putBoolean}) are stored unboxed; rewriting them with
+ * the same accessor neither allocates nor compares through {@code equals}.
+ *
  * @author Andres Almiray
  */
 public class DefaultPreferencesNode extends AbstractPreferencesNode {
     private final Map<String, Object> properties = new ConcurrentHashMap<String, Object>();
-    private final Map<String, PreferencesNode> nodes = new LinkedHashMap<String, PreferencesNode>();
+    private final ConcurrentLinkedNodeMap nodes = new ConcurrentLinkedNodeMap();
 
     public DefaultPreferencesNode(Preferences preferences, String name) {
         this(preferences, null, name);
@@ -42,28 +46,110 @@ public class DefaultPreferencesNode extends AbstractPreferencesNode {
     }
 
     public Object getAt(String key) {
-        return properties.get(key);
+        return unwrap(properties.get(key));
     }
 
     public void putAt(String key, Object value) {
-        Object oldValue = properties.get(key);
-        properties.put(key, value);
+        Object oldValue = unwrap(properties.put(key, value));
         if (!areEqual(oldValue, value)) {
+            touch();
             firePreferencesChanged(path(), key, oldValue, value);
         }
     }
 
+    public int getInt(String key, int defaultValue) {
+        Object value = properties.get(key);
+        if (value instanceof PrimitiveSlot && ((PrimitiveSlot) value).type == Integer.TYPE) {
+            return (int) ((PrimitiveSlot) value).bits;
+        }
+        return super.getInt(key, defaultValue);
+    }
+
+    public void putInt(String key, int value) {
+        putPrimitive(key, Integer.TYPE, value);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object value = properties.get(key);
+        if (value instanceof PrimitiveSlot && ((PrimitiveSlot) value).type == Long.TYPE) {
+            return ((PrimitiveSlot) value).bits;
+        }
+        return super.getLong(key, defaultValue);
+    }
+
+    public void putLong(String key, long value) {
+        putPrimitive(key, Long.TYPE, value);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        Object value = properties.get(key);
+        if (value instanceof PrimitiveSlot && ((PrimitiveSlot) value).type == Double.TYPE) {
+            return Double.longBitsToDouble(((PrimitiveSlot) value).bits);
+        }
+        return super.getDouble(key, defaultValue);
+    }
+
+    public void putDouble(String key, double value) {
+        putPrimitive(key, Double.TYPE, Double.doubleToLongBits(value));
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = properties.get(key);
+        if (value instanceof PrimitiveSlot && ((PrimitiveSlot) value).type == Boolean.TYPE) {
+            return ((PrimitiveSlot) value).bits != 0L;
+        }
+        return super.getBoolean(key, defaultValue);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        putPrimitive(key, Boolean.TYPE, value ? 1L : 0L);
+    }
+
+    public Class<?> primitiveTypeOf(String key) {
+        Object value = properties.get(key);
+        return value instanceof PrimitiveSlot ? ((PrimitiveSlot) value).type : null;
+    }
+
+    private void putPrimitive(String key, Class<?> type, long bits) {
+        Object current = properties.get(key);
+        if (current instanceof PrimitiveSlot && ((PrimitiveSlot) current).type == type) {
+            long oldBits = ((PrimitiveSlot) current).getAndSet(bits);
+            if (oldBits != bits) {
+                touch();
+                // values are only boxed for the event
+                firePreferencesChanged(path(), key, PrimitiveSlot.box(type, oldBits), PrimitiveSlot.box(type, bits));
+            }
+            return;
+        }
+
+        Object oldValue = unwrap(properties.put(key, new PrimitiveSlot(type, bits)));
+        Object newValue = PrimitiveSlot.box(type, bits);
+        if (!areEqual(oldValue, newValue)) {
+            touch();
+            firePreferencesChanged(path(), key, oldValue, newValue);
+        }
+    }
+
+    private static Object unwrap(Object value) {
+        return value instanceof PrimitiveSlot ? ((PrimitiveSlot) value).box() : value;
+    }
+
     private void firePreferencesChanged(String path, String key, Object oldValue, Object newValue) {
         preferences.preferenceChanged(new PreferenceChangeEvent(path, key, oldValue, newValue));
     }
 
     public void remove(String key) {
-        Object oldValue = properties.remove(key);
-        if (oldValue != null) firePreferencesChanged(path(), key, oldValue, null);
+        Object oldValue = unwrap(properties.remove(key));
+        if (oldValue != null) {
+            touch();
+            firePreferencesChanged(path(), key, oldValue, null);
+        }
     }
 
     public void clear() {
+        if (properties.isEmpty()) return;
         properties.clear();
+        touch();
     }
 
     public boolean containsKey(String key) {
@@ -83,13 +169,28 @@ public class DefaultPreferencesNode extends AbstractPreferencesNode {
     }
 
     public void storeChildNode(String nodeName, PreferencesNode node) {
-        nodes.put(nodeName, node);
+        PreferencesNode previous = nodes.put(nodeName, node);
+        childNodeStored(previous, node);
         preferences.nodeChanged(new NodeChangeEvent(node.path(), NodeChangeEvent.Type.ADDED));
     }
 
+    @Override
+    protected PreferencesNode getOrCreateChildNode(String nodeName) {
+        PreferencesNode node = nodes.get(nodeName);
+        if (node != null) return node;
+
+        node = createChildNode(nodeName);
+        PreferencesNode existing = nodes.putIfAbsent(nodeName, node);
+        if (existing != null) return existing;
+        childNodeStored(null, node);
+        preferences.nodeChanged(new NodeChangeEvent(node.path(), NodeChangeEvent.Type.ADDED));
+        return node;
+    }
+
     public PreferencesNode removeChildNode(String nodeName) {
         PreferencesNode node = nodes.remove(nodeName);
         if (node != null) {
+            childNodeRemoved(node);
             preferences.nodeChanged(new NodeChangeEvent(node.path(), NodeChangeEvent.Type.REMOVED));
         }
         return node;
@@ -98,4 +199,30 @@ public class DefaultPreferencesNode extends AbstractPreferencesNode {
     public PreferencesNode getChildNode(String nodeName) {
         return nodes.get(nodeName);
     }
+
+    private static final class PrimitiveSlot {
+        private static final AtomicLongFieldUpdater<PrimitiveSlot> BITS = AtomicLongFieldUpdater.newUpdater(PrimitiveSlot.class, "bits");
+        private final Class<?> type;
+        private volatile long bits;
+
+        private PrimitiveSlot(Class<?> type, long bits) {
+            this.type = type;
+            this.bits = bits;
+        }
+
+        private long getAndSet(long newBits) {
+            return BITS.getAndSet(this, newBits);
+        }
+
+        private Object box() {
+            return box(type, bits);
+        }
+
+        private static Object box(Class<?> type, long bits) {
+            if (type == Integer.TYPE) return (int) bits;
+            if (type == Long.TYPE) return bits;
+            if (type == Double.TYPE) return Double.longBitsToDouble(bits);
+            return bits != 0L;
+        }
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import griffon.plugins.preferences.PreferencesNode;
+import griffon.plugins.preferences.PreferencesTransaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the changes of a transaction as a list of {@code Operation}s and
+ * hands them to the owning {@code AbstractPreferences} on commit.
+ *
+ * @author Andres Almiray
+ */
+public class DefaultPreferencesTransaction implements PreferencesTransaction {
+    private final AbstractPreferences preferences;
+    private final List<Operation> operations = new ArrayList<Operation>();
+    private boolean active = true;
+
+    public DefaultPreferencesTransaction(AbstractPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    public Object get(String path, String key) {
+        checkActive();
+        String nodePath = normalizePath(path);
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            Operation operation = operations.get(i);
+            switch (operation.type) {
+                case PUT:
+                    if (operation.path.equals(nodePath) && operation.key.equals(key)) return operation.value;
+                    break;
+                case REMOVE:
+                    if (operation.path.equals(nodePath) && operation.key.equals(key)) return null;
+                    break;
+                case REMOVE_NODE:
+                    if (isSameOrDescendant(nodePath, operation.path)) return null;
+                    break;
+                default:
+                    break;
+            }
+        }
+        PreferencesNode node = preferences.findNode(nodePath);
+        return null != node ? node.getAt(key) : null;
+    }
+
+    public PreferencesTransaction put(String path, String key, Object value) {
+        return add(new Operation(Operation.Type.PUT, normalizePath(path), key, value));
+    }
+
+    public PreferencesTransaction remove(String path, String key) {
+        return add(new Operation(Operation.Type.REMOVE, normalizePath(path), key, null));
+    }
+
+    public PreferencesTransaction createNode(String path) {
+        return add(new Operation(Operation.Type.CREATE_NODE, normalizePath(path), null, null));
+    }
+
+    public PreferencesTransaction removeNode(String path) {
+        return add(new Operation(Operation.Type.REMOVE_NODE, normalizePath(path), null, null));
+    }
+
+    public void commit() {
+        checkActive();
+        active = false;
+        preferences.commit(Collections.unmodifiableList(operations));
+    }
+
+    public void rollback() {
+        active = false;
+        operations.clear();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    private PreferencesTransaction add(Operation operation) {
+        checkActive();
+        operations.add(operation);
+        return this;
+    }
+
+    private void checkActive() {
+        if (!active) throw new IllegalStateException("Transaction is no longer active");
+    }
+
+    private static String normalizePath(String path) {
+        String[] segments = AbstractPreferences.pathSegments(path);
+        if (segments.length == 0) return PreferencesNode.PATH_SEPARATOR;
+        StringBuilder b = new StringBuilder();
+        for (String segment : segments) {
+            b.append(PreferencesNode.PATH_SEPARATOR).append(segment);
+        }
+        return b.toString();
+    }
+
+    private static boolean isSameOrDescendant(String path, String ancestor) {
+        return path.equals(ancestor) ||
+            (path.startsWith(ancestor) && path.charAt(ancestor.length()) == PreferencesNode.PATH_SEPARATOR.charAt(0));
+    }
+
+    /**
+     * A single change made by a transaction. Paths are absolute and use
+     * {@code PreferencesNode.PATH_SEPARATOR} only.
+     */
+    public static final class Operation {
+        public static enum Type {
+            PUT, REMOVE, CREATE_NODE, REMOVE_NODE
+        }
+
+        public final Type type;
+        public final String path;
+        public final String key;
+        public final Object value;
+
+        private Operation(Type type, String path, String key, Object value) {
+            this.type = type;
+            this.path = path;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + path + (null != key ? "#" + key : "");
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import griffon.plugins.preferences.PreferencesNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Listeners registered for a subtree, stored by path segment.</p>
+ * Looking up the listeners of an event visits one trie node per segment of its
+ * path, regardless of how many listeners watch other subtrees. Lookups do not
+ * lock; registrations are serialized and prune the branches they empty.
+ *
+ * @author Andres Almiray
+ */
+final class ListenerTrie<L> {
+    private final TrieNode<L> root = new TrieNode<L>();
+    private volatile int size;
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Registers a listener for the given subtree, optionally restricted to a set
+     * of keys. Registering the same listener twice for the same subtree does nothing.
+     */
+    synchronized void add(String[] segments, L listener, Set<String> keys) {
+        TrieNode<L> node = root;
+        for (String segment : segments) {
+            TrieNode<L> child = node.children.get(segment);
+            if (null == child) {
+                child = new TrieNode<L>();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        for (Registration<L> registration : node.registrations) {
+            if (registration.listener.equals(listener)) return;
+        }
+        node.registrations.add(new Registration<L>(listener, keys));
+        size++;
+    }
+
+    synchronized void remove(String[] segments, L listener) {
+        removeIn(root, segments, 0, listener);
+    }
+
+    private boolean removeIn(TrieNode<L> node, String[] segments, int index, L listener) {
+        if (index == segments.length) {
+            unregister(node, listener);
+        } else {
+            TrieNode<L> child = node.children.get(segments[index]);
+            if (null != child && removeIn(child, segments, index + 1, listener)) {
+                node.children.remove(segments[index]);
+            }
+        }
+        return node.isEmpty();
+    }
+
+    /**
+     * Removes the listener from every subtree it was registered for.
+     */
+    synchronized void removeAll(L listener) {
+        if (size > 0) removeAllIn(root, listener);
+    }
+
+    private boolean removeAllIn(TrieNode<L> node, L listener) {
+        unregister(node, listener);
+        for (Iterator<TrieNode<L>> children = node.children.values().iterator(); children.hasNext(); ) {
+            if (removeAllIn(children.next(), listener)) children.remove();
+        }
+        return node.isEmpty();
+    }
+
+    private void unregister(TrieNode<L> node, L listener) {
+        for (Registration<L> registration : node.registrations) {
+            if (registration.listener.equals(listener)) {
+                node.registrations.remove(registration);
+                size--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Whether the listener is registered for any subtree.
+     */
+    boolean contains(L listener) {
+        return size > 0 && contains(root, listener);
+    }
+
+    private boolean contains(TrieNode<L> node, L listener) {
+        for (Registration<L> registration : node.registrations) {
+            if (registration.listener.equals(listener)) return true;
+        }
+        for (TrieNode<L> child : node.children.values()) {
+            if (contains(child, listener)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether any registered listener is an instance of the given type.
+     */
+    boolean containsInstanceOf(Class<?> type) {
+        return size > 0 && containsInstanceOf(root, type);
+    }
+
+    private boolean containsInstanceOf(TrieNode<L> node, Class<?> type) {
+        for (Registration<L> registration : node.registrations) {
+            if (type.isInstance(registration.listener)) return true;
+        }
+        for (TrieNode<L> child : node.children.values()) {
+            if (containsInstanceOf(child, type)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the listeners registered for the given path or any of its
+     * ancestors that accept the given key, ancestors first. A null key only
+     * matches listeners that are not restricted to a set of keys. Listeners
+     * registered below the path are included too if {@code descendants} is true.
+     */
+    List<L> match(String path, String key, boolean descendants) {
+        List<L> listeners = null;
+        TrieNode<L> node = root;
+        int start = 0;
+        while (true) {
+            listeners = collect(node, key, listeners);
+            while (start < path.length() && path.charAt(start) == PreferencesNode.PATH_SEPARATOR.charAt(0)) start++;
+            if (start >= path.length()) break;
+            int end = path.indexOf(PreferencesNode.PATH_SEPARATOR.charAt(0), start);
+            if (end < 0) end = path.length();
+            node = node.children.get(path.substring(start, end));
+            if (null == node) break;
+            start = end;
+        }
+        if (descendants && null != node) {
+            for (TrieNode<L> child : node.children.values()) {
+                listeners = collectSubtree(child, key, listeners);
+            }
+        }
+        return null != listeners ? listeners : Collections.<L>emptyList();
+    }
+
+    private List<L> collectSubtree(TrieNode<L> node, String key, List<L> listeners) {
+        listeners = collect(node, key, listeners);
+        for (TrieNode<L> child : node.children.values()) {
+            listeners = collectSubtree(child, key, listeners);
+        }
+        return listeners;
+    }
+
+    private List<L> collect(TrieNode<L> node, String key, List<L> listeners) {
+        for (Registration<L> registration : node.registrations) {
+            if (!registration.accepts(key)) continue;
+            if (null == listeners) listeners = new ArrayList<L>(2);
+            listeners.add(registration.listener);
+        }
+        return listeners;
+    }
+
+    private static final class TrieNode<L> {
+        private final ConcurrentMap<String, TrieNode<L>> children = new ConcurrentHashMap<String, TrieNode<L>>(4);
+        private final List<Registration<L>> registrations = new CopyOnWriteArrayList<Registration<L>>();
+
+        private boolean isEmpty() {
+            return registrations.isEmpty() && children.isEmpty();
+        }
+    }
+
+    private static final class Registration<L> {
+        private final L listener;
+        private final Set<String> keys;
+
+        private Registration(L listener, Set<String> keys) {
+            this.listener = listener;
+            this.keys = keys;
+        }
+
+        private boolean accepts(String key) {
+            return null == keys || (null != key && keys.contains(key));
+        }
+    }
+}
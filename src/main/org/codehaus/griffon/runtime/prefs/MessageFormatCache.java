@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded cache of parsed {@code MessageFormat}s keyed by pattern and locale.</p>
+ * Least recently used formats are evicted once the cache is full. A cache with
+ * a maximum size of zero parses the pattern on every call.
+ *
+ * @author Andres Almiray
+ */
+public class MessageFormatCache {
+    private final int maxSize;
+    private final Map<FormatKey, MessageFormat> formats;
+
+    public MessageFormatCache(final int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        this.formats = new LinkedHashMap<FormatKey, MessageFormat>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FormatKey, MessageFormat> eldest) {
+                return size() > MessageFormatCache.this.maxSize;
+            }
+        };
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public String format(String pattern, Object[] args) {
+        return format(pattern, Locale.getDefault(), args);
+    }
+
+    public String format(String pattern, Locale locale, Object[] args) {
+        MessageFormat format = getFormat(pattern, locale);
+        // MessageFormat is not thread-safe
+        synchronized (format) {
+            return format.format(args);
+        }
+    }
+
+    public MessageFormat getFormat(String pattern, Locale locale) {
+        if (maxSize == 0) return new MessageFormat(pattern, locale);
+
+        FormatKey key = new FormatKey(pattern, locale);
+        MessageFormat format;
+        synchronized (formats) {
+            format = formats.get(key);
+        }
+        if (null == format) {
+            // parse outside of the lock, concurrent misses may parse the same pattern twice
+            format = new MessageFormat(pattern, locale);
+            synchronized (formats) {
+                MessageFormat existing = formats.get(key);
+                if (null != existing) return existing;
+                formats.put(key, format);
+            }
+        }
+        return format;
+    }
+
+    public int size() {
+        synchronized (formats) {
+            return formats.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (formats) {
+            formats.clear();
+        }
+    }
+
+    private static final class FormatKey {
+        private final String pattern;
+        private final Locale locale;
+
+        private FormatKey(String pattern, Locale locale) {
+            this.pattern = pattern;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FormatKey)) return false;
+            FormatKey that = (FormatKey) o;
+            return pattern.equals(that.pattern) && (locale != null ? locale.equals(that.locale) : that.locale == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * pattern.hashCode() + (locale != null ? locale.hashCode() : 0);
+        }
+    }
+}
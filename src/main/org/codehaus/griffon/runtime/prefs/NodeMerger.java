@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import griffon.plugins.preferences.Preferences;
+import griffon.plugins.preferences.PreferencesNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges a node into another one in two passes.</p>
+ * The first pass compares both trees without modifying them and records the
+ * keys whose value differs as well as the child nodes that are missing in the
+ * target. The second pass applies those changes inside a single batch of the
+ * target's {@code Preferences}. Merging identical trees does not write
+ * anything nor publish any event; existing nodes are never stored again,
+ * which means there are no spurious {@code ADDED} events.
+ *
+ * @author Andres Almiray
+ */
+final class NodeMerger {
+    private NodeMerger() {
+    }
+
+    static void merge(AbstractPreferencesNode target, PreferencesNode source) {
+        List<Change> changes = new ArrayList<Change>();
+        diff(target, source, changes);
+        if (changes.isEmpty()) return;
+
+        Preferences preferences = target.preferences;
+        if (null != preferences) preferences.beginBatch();
+        try {
+            for (Change change : changes) {
+                change.apply();
+            }
+        } finally {
+            if (null != preferences) preferences.endBatch();
+        }
+    }
+
+    private static void diff(PreferencesNode target, PreferencesNode source, List<Change> changes) {
+        if (target == source) return;
+        for (String key : source.keys()) {
+            Object value = source.getAt(key);
+            if (null == value) continue;
+            if (!AbstractPreferencesNode.valuesEqual(target.getAt(key), value)) {
+                changes.add(new PutValue(target, key, value));
+            }
+        }
+        for (Map.Entry<String, PreferencesNode> child : source.children().entrySet()) {
+            PreferencesNode existing = target.getChildNode(child.getKey());
+            if (null != existing) {
+                diff(existing, child.getValue(), changes);
+            } else {
+                changes.add(new AddNode(target, child.getKey(), child.getValue()));
+            }
+        }
+    }
+
+    private static void copy(PreferencesNode target, PreferencesNode source) {
+        for (String key : source.keys()) {
+            Object value = source.getAt(key);
+            if (null != value) target.putAt(key, value);
+        }
+        for (Map.Entry<String, PreferencesNode> child : source.children().entrySet()) {
+            copy(getOrCreateChildNode(target, child.getKey()), child.getValue());
+        }
+    }
+
+    private static PreferencesNode getOrCreateChildNode(PreferencesNode parent, String nodeName) {
+        if (parent instanceof AbstractPreferencesNode) {
+            return ((AbstractPreferencesNode) parent).getOrCreateChildNode(nodeName);
+        }
+        PreferencesNode node = parent.getChildNode(nodeName);
+        if (null == node) {
+            node = parent.createChildNode(nodeName);
+            parent.storeChildNode(nodeName, node);
+        }
+        return node;
+    }
+
+    private static abstract class Change {
+        abstract void apply();
+    }
+
+    private static final class PutValue extends Change {
+        private final PreferencesNode node;
+        private final String key;
+        private final Object value;
+
+        private PutValue(PreferencesNode node, String key, Object value) {
+            this.node = node;
+            this.key = key;
+            this.value = value;
+        }
+
+        void apply() {
+            node.putAt(key, value);
+        }
+    }
+
+    private static final class AddNode extends Change {
+        private final PreferencesNode parent;
+        private final String nodeName;
+        private final PreferencesNode source;
+
+        private AddNode(PreferencesNode parent, String nodeName, PreferencesNode source) {
+            this.parent = parent;
+            this.nodeName = nodeName;
+            this.source = source;
+        }
+
+        void apply() {
+            copy(getOrCreateChildNode(parent, nodeName), source);
+        }
+    }
+}
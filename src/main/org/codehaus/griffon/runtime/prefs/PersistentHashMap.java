@@ -0,0 +1,297 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import java.util.*;
+
+/**
+ * Immutable hash array mapped trie.</p>
+ * {@link #plus(Object, Object)} and {@link #minus(Object)} return a new map that
+ * shares every untouched branch with the original one, copying only the
+ * O(log<sub>32</sub> n) nodes along the path to the changed entry. Both return
+ * the very same map when nothing changes, values are compared by identity.
+ * Iteration order is unspecified. Null keys are not supported.
+ *
+ * @author Andres Almiray
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+    private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<Object, Object>(null, 0);
+
+    private final TrieNode root;
+    private final int size;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    private PersistentHashMap(TrieNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (null == root || null == key) return null;
+        return (V) root.find(0, hash(key), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        // values are never null, see plus()
+        return null != get(key);
+    }
+
+    /**
+     * Returns a map with the given mapping added or replaced. A null value removes the key.
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        if (null == value) return minus(key);
+        boolean[] added = new boolean[1];
+        TrieNode newRoot = (null == root ? BitmapNode.EMPTY : root).assoc(0, hash(key), key, value, added);
+        if (newRoot == root) return this;
+        return new PersistentHashMap<K, V>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (null == root || null == key) return this;
+        TrieNode newRoot = root.without(0, hash(key), key);
+        if (newRoot == root) return this;
+        return null == newRoot ? PersistentHashMap.<K, V>empty() : new PersistentHashMap<K, V>(newRoot, size - 1);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (null == entrySet) {
+            entrySet = new AbstractSet<Map.Entry<K, V>>() {
+                @SuppressWarnings("unchecked")
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    List<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>(size);
+                    if (null != root) root.collect(entries);
+                    return Collections.unmodifiableList((List) entries).iterator();
+                }
+
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    private static Object[] cloneAndSet(Object[] array, int i, Object a) {
+        Object[] clone = array.clone();
+        clone[i] = a;
+        return clone;
+    }
+
+    private static Object[] cloneAndSet(Object[] array, int i, Object a, int j, Object b) {
+        Object[] clone = array.clone();
+        clone[i] = a;
+        clone[j] = b;
+        return clone;
+    }
+
+    private static Object[] removePair(Object[] array, int i) {
+        Object[] copy = new Object[array.length - 2];
+        System.arraycopy(array, 0, copy, 0, 2 * i);
+        System.arraycopy(array, 2 * (i + 1), copy, 2 * i, copy.length - 2 * i);
+        return copy;
+    }
+
+    private static TrieNode createNode(int shift, Object key1, Object value1, int key2hash, Object key2, Object value2) {
+        int key1hash = hash(key1);
+        if (key1hash == key2hash) {
+            return new CollisionNode(key1hash, new Object[]{key1, value1, key2, value2});
+        }
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY
+            .assoc(shift, key1hash, key1, value1, added)
+            .assoc(shift, key2hash, key2, value2, added);
+    }
+
+    private interface TrieNode {
+        Object find(int shift, int hash, Object key);
+
+        TrieNode assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        TrieNode without(int shift, int hash, Object key);
+
+        void collect(List<Map.Entry<Object, Object>> entries);
+    }
+
+    /**
+     * Slots hold either a key and its value, or null and a sub node.
+     */
+    private static final class BitmapNode implements TrieNode {
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        private BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        public Object find(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            int idx = index(bit);
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (null == k) return ((TrieNode) v).find(shift + 5, hash, key);
+            return key.equals(k) ? v : null;
+        }
+
+        public TrieNode assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bitpos(hash, shift);
+            int idx = index(bit);
+            if ((bitmap & bit) != 0) {
+                Object k = array[2 * idx];
+                Object v = array[2 * idx + 1];
+                if (null == k) {
+                    TrieNode node = ((TrieNode) v).assoc(shift + 5, hash, key, value, added);
+                    return node == v ? this : new BitmapNode(bitmap, cloneAndSet(array, 2 * idx + 1, node));
+                }
+                if (key.equals(k)) {
+                    return value == v ? this : new BitmapNode(bitmap, cloneAndSet(array, 2 * idx + 1, value));
+                }
+                added[0] = true;
+                return new BitmapNode(bitmap, cloneAndSet(array,
+                    2 * idx, null,
+                    2 * idx + 1, createNode(shift + 5, k, v, hash, key, value)));
+            }
+
+            Object[] copy = new Object[array.length + 2];
+            System.arraycopy(array, 0, copy, 0, 2 * idx);
+            copy[2 * idx] = key;
+            copy[2 * idx + 1] = value;
+            System.arraycopy(array, 2 * idx, copy, 2 * (idx + 1), array.length - 2 * idx);
+            added[0] = true;
+            return new BitmapNode(bitmap | bit, copy);
+        }
+
+        public TrieNode without(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int idx = index(bit);
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (null == k) {
+                TrieNode node = ((TrieNode) v).without(shift + 5, hash, key);
+                if (node == v) return this;
+                if (null != node) return new BitmapNode(bitmap, cloneAndSet(array, 2 * idx + 1, node));
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) return null;
+            return new BitmapNode(bitmap ^ bit, removePair(array, idx));
+        }
+
+        public void collect(List<Map.Entry<Object, Object>> entries) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (null == array[i]) {
+                    ((TrieNode) array[i + 1]).collect(entries);
+                } else {
+                    entries.add(new SimpleImmutableEntry<Object, Object>(array[i], array[i + 1]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Keys whose hashes are fully equal, searched linearly.
+     */
+    private static final class CollisionNode implements TrieNode {
+        private final int hash;
+        private final Object[] array;
+
+        private CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return i;
+            }
+            return -1;
+        }
+
+        public Object find(int shift, int hash, Object key) {
+            if (hash != this.hash) return null;
+            int idx = indexOf(key);
+            return idx < 0 ? null : array[idx + 1];
+        }
+
+        public TrieNode assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash == this.hash) {
+                int idx = indexOf(key);
+                if (idx >= 0) {
+                    return array[idx + 1] == value ? this : new CollisionNode(hash, cloneAndSet(array, idx + 1, value));
+                }
+                Object[] copy = Arrays.copyOf(array, array.length + 2);
+                copy[array.length] = key;
+                copy[array.length + 1] = value;
+                added[0] = true;
+                return new CollisionNode(hash, copy);
+            }
+            // nest this node one level down and retry
+            return new BitmapNode(bitpos(this.hash, shift), new Object[]{null, this})
+                .assoc(shift, hash, key, value, added);
+        }
+
+        public TrieNode without(int shift, int hash, Object key) {
+            int idx = hash == this.hash ? indexOf(key) : -1;
+            if (idx < 0) return this;
+            if (array.length == 2) return null;
+            return new CollisionNode(hash, removePair(array, idx / 2));
+        }
+
+        public void collect(List<Map.Entry<Object, Object>> entries) {
+            for (int i = 0; i < array.length; i += 2) {
+                entries.add(new SimpleImmutableEntry<Object, Object>(array[i], array[i + 1]));
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import griffon.plugins.preferences.NodeChangeEvent;
+import griffon.plugins.preferences.PreferenceChangeEvent;
+import griffon.plugins.preferences.Preferences;
+import griffon.plugins.preferences.PreferencesNode;
+import org.codehaus.griffon.runtime.prefs.DefaultPreferencesTransaction.Operation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@code Preferences} backed by a persistent tree of immutable nodes.</p>
+ * Keys and children of every node live in {@link PersistentHashMap}s and the
+ * whole tree is referenced by a single atomic root. Writes copy the nodes on the
+ * path from the root to the changed node and swap the root with compare-and-set,
+ * which means {@link #copy()} takes constant time and a copy shares all of its
+ * structure with the original until either one is modified.</p>
+ * {@code PersistentPreferencesNode}s are views over a path of this tree; two
+ * views of the same path are equal. A view whose path is removed behaves as an
+ * empty node and ignores writes. Transactions publish all their changes with a
+ * single swap of the root.
+ *
+ * @author Andres Almiray
+ */
+public class PersistentPreferences extends AbstractPreferences {
+    private static final String[] ROOT_SEGMENTS = new String[0];
+
+    private final AtomicReference<NodeData> root;
+    private final PersistentPreferencesNode rootNode;
+
+    public PersistentPreferences() {
+        this(NodeData.EMPTY);
+    }
+
+    PersistentPreferences(NodeData data) {
+        this(data, null, PreferencesNode.PATH_SEPARATOR);
+    }
+
+    PersistentPreferences(NodeData data, PreferencesNode parent, String name) {
+        root = new AtomicReference<NodeData>(data);
+        rootNode = new PersistentPreferencesNode(this, parent, name, ROOT_SEGMENTS);
+    }
+
+    public PreferencesNode getRoot() {
+        return rootNode;
+    }
+
+    @Override
+    protected boolean isNodeIndexEnabled() {
+        return false;
+    }
+
+    /**
+     * Returns an independent copy of this tree in constant time. Listeners are not copied.
+     */
+    public Preferences copy() {
+        return new PersistentPreferences(root.get());
+    }
+
+    /**
+     * Applies all operations to the current root and swaps it in one go, so
+     * that readers see either none or all of the changes.
+     */
+    @Override
+    protected void applyOperations(List<Operation> operations) {
+        List<Object> events = new ArrayList<Object>();
+        while (true) {
+            events.clear();
+            long stamp = nextStamp();
+            NodeData current = root.get();
+            NodeData next = current;
+            for (Operation operation : operations) {
+                String[] segments = pathSegments(operation.path);
+                if (operation.type == Operation.Type.REMOVE_NODE) {
+                    if (segments.length == 0) continue;
+                    String[] parentSegments = new String[segments.length - 1];
+                    System.arraycopy(segments, 0, parentSegments, 0, parentSegments.length);
+                    next = applyIn(next, parentSegments, 0, PreferencesNode.PATH_SEPARATOR, operation, segments[segments.length - 1], stamp, events);
+                } else {
+                    next = applyIn(next, segments, 0, PreferencesNode.PATH_SEPARATOR, operation, null, stamp, events);
+                }
+            }
+            if (next == current || root.compareAndSet(current, next)) break;
+        }
+
+        for (Object event : events) {
+            if (event instanceof NodeChangeEvent) {
+                nodeChanged((NodeChangeEvent) event);
+            } else {
+                preferenceChanged((PreferenceChangeEvent) event);
+            }
+        }
+    }
+
+    private static NodeData applyIn(NodeData node, String[] segments, int depth, String path, Operation operation, String childName, long stamp, List<Object> events) {
+        if (depth == segments.length) {
+            NodeData updated = applyTo(node, path, operation, childName, events);
+            return updated == node ? node : updated.stamped(stamp);
+        }
+
+        String childPath = depth == 0 ? path + segments[depth] : path + PreferencesNode.PATH_SEPARATOR + segments[depth];
+        NodeData child = node.children.get(segments[depth]);
+        if (null == child) {
+            // only writes and node creations make missing nodes
+            if (operation.type == Operation.Type.REMOVE || operation.type == Operation.Type.REMOVE_NODE ||
+                (operation.type == Operation.Type.PUT && null == operation.value)) return node;
+            child = NodeData.EMPTY.stamped(stamp);
+            events.add(new NodeChangeEvent(childPath, NodeChangeEvent.Type.ADDED));
+        }
+        NodeData updated = applyIn(child, segments, depth + 1, childPath, operation, childName, stamp, events);
+        if (updated == node.children.get(segments[depth])) return node;
+        // a new child also changes the set of children of this node
+        NodeData parent = node.withChild(segments[depth], updated, stamp);
+        return node.children.containsKey(segments[depth]) ? parent : parent.stamped(stamp);
+    }
+
+    private static NodeData applyTo(NodeData node, String path, Operation operation, String childName, List<Object> events) {
+        switch (operation.type) {
+            case PUT:
+            case REMOVE:
+                Object oldValue = node.values.get(operation.key);
+                Object newValue = operation.type == Operation.Type.PUT ? operation.value : null;
+                if (AbstractPreferencesNode.valuesEqual(oldValue, newValue)) return node;
+                events.add(new PreferenceChangeEvent(path, operation.key, oldValue, newValue));
+                return node.withValues(node.values.plus(operation.key, newValue));
+            case REMOVE_NODE:
+                if (!node.children.containsKey(childName)) return node;
+                String childPath = PreferencesNode.PATH_SEPARATOR.equals(path) ? path + childName : path + PreferencesNode.PATH_SEPARATOR + childName;
+                events.add(new NodeChangeEvent(childPath, NodeChangeEvent.Type.REMOVED));
+                return node.withChildren(node.children.minus(childName));
+            default:
+                return node;
+        }
+    }
+
+    NodeData rootData() {
+        return root.get();
+    }
+
+    NodeData resolve(NodeData data, String[] segments) {
+        for (int i = 0; i < segments.length && null != data; i++) {
+            data = data.children.get(segments[i]);
+        }
+        return data;
+    }
+
+    /**
+     * Applies the update to the node at the given path, retrying on contention.
+     * A stamp is only allocated by attempts that change the tree, so reads that
+     * go through here do not contend on the shared stamp counter.
+     *
+     * @return false if there is no node at the given path.
+     */
+    boolean update(String[] segments, Update update) {
+        while (true) {
+            LazyStamp stamp = new LazyStamp();
+            NodeData current = root.get();
+            NodeData next = updateIn(current, segments, 0, update, stamp);
+            if (null == next) return false;
+            if (next == current || root.compareAndSet(current, next)) return true;
+        }
+    }
+
+    private static NodeData updateIn(NodeData node, String[] segments, int depth, Update update, LazyStamp stamp) {
+        if (depth == segments.length) {
+            NodeData updated = update.apply(node);
+            return updated == node ? node : updated.stamped(stamp.get());
+        }
+        NodeData child = node.children.get(segments[depth]);
+        if (null == child) return null;
+        NodeData updated = updateIn(child, segments, depth + 1, update, stamp);
+        if (null == updated) return null;
+        if (updated == child) return node;
+        return node.withChild(segments[depth], updated, stamp.get());
+    }
+
+    private static final class LazyStamp {
+        private long value;
+
+        private long get() {
+            if (0L == value) value = nextStamp();
+            return value;
+        }
+    }
+
+    /**
+     * Computes the new state of a node. It may be invoked more than once per
+     * write and must record its outcome afresh on every invocation.
+     */
+    static abstract class Update {
+        abstract NodeData apply(NodeData node);
+    }
+
+    static final class NodeData {
+        static final NodeData EMPTY = new NodeData(PersistentHashMap.<String, Object>empty(), PersistentHashMap.<String, NodeData>empty());
+
+        final PersistentHashMap<String, Object> values;
+        final PersistentHashMap<String, NodeData> children;
+        final long stamp;
+        final long subtreeStamp;
+
+        NodeData(PersistentHashMap<String, Object> values, PersistentHashMap<String, NodeData> children) {
+            this(values, children, 0L, 0L);
+        }
+
+        private NodeData(PersistentHashMap<String, Object> values, PersistentHashMap<String, NodeData> children, long stamp, long subtreeStamp) {
+            this.values = values;
+            this.children = children;
+            this.stamp = stamp;
+            this.subtreeStamp = subtreeStamp;
+        }
+
+        NodeData withValues(PersistentHashMap<String, Object> values) {
+            return values == this.values ? this : new NodeData(values, children, stamp, subtreeStamp);
+        }
+
+        NodeData withChildren(PersistentHashMap<String, NodeData> children) {
+            return children == this.children ? this : new NodeData(values, children, stamp, subtreeStamp);
+        }
+
+        /**
+         * Replaces a child that changed at the given stamp.
+         */
+        NodeData withChild(String name, NodeData child, long newSubtreeStamp) {
+            return new NodeData(values, children.plus(name, child), stamp, Math.max(subtreeStamp, newSubtreeStamp));
+        }
+
+        NodeData stamped(long newStamp) {
+            return new NodeData(values, children, newStamp, Math.max(subtreeStamp, newStamp));
+        }
+
+        /**
+         * Stamps this node and all of its descendants.
+         */
+        NodeData restamped(long newStamp) {
+            PersistentHashMap<String, NodeData> restampedChildren = children;
+            for (Map.Entry<String, NodeData> child : children.entrySet()) {
+                restampedChildren = restampedChildren.plus(child.getKey(), child.getValue().restamped(newStamp));
+            }
+            return new NodeData(values, restampedChildren, newStamp, newStamp);
+        }
+    }
+}
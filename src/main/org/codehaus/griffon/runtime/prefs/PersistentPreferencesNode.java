@@ -0,0 +1,314 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import griffon.plugins.preferences.NodeChangeEvent;
+import griffon.plugins.preferences.PreferenceChangeEvent;
+import griffon.plugins.preferences.PreferencesNode;
+import org.codehaus.griffon.runtime.prefs.PersistentPreferences.NodeData;
+import org.codehaus.griffon.runtime.prefs.PersistentPreferences.Update;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * View over the node found at a given path of a {@code PersistentPreferences}
+ * tree. Views hold no state of their own, equal views may be created at will.</p>
+ * Nodes returned by {@link #createChildNode(String)} belong to a private tree
+ * until they are stored; storing one grafts its contents in constant time and
+ * binds the node to the tree it was stored into. Storing any other persistent
+ * node grafts a snapshot of it. Storing a null value removes the key.
+ *
+ * @author Andres Almiray
+ */
+public class PersistentPreferencesNode extends AbstractPreferencesNode {
+    private volatile Binding binding;
+    private volatile Resolved resolved;
+
+    PersistentPreferencesNode(PersistentPreferences owner, PreferencesNode parent, String name, String[] segments) {
+        super(owner, parent, name);
+        this.binding = new Binding(owner, segments);
+    }
+
+    private NodeData data() {
+        Binding b = binding;
+        NodeData root = b.owner.rootData();
+        Resolved r = resolved;
+        if (null != r && r.root == root && r.binding == b) return r.node;
+        NodeData node = b.owner.resolve(root, b.segments);
+        resolved = new Resolved(root, b, node);
+        return node;
+    }
+
+    private boolean update(Update update) {
+        Binding b = binding;
+        return b.owner.update(b.segments, update);
+    }
+
+    private PersistentPreferences owner() {
+        return binding.owner;
+    }
+
+    private NodeData dataOrEmpty() {
+        NodeData data = data();
+        return null != data ? data : NodeData.EMPTY;
+    }
+
+    private PersistentPreferencesNode childView(String nodeName) {
+        Binding b = binding;
+        String[] childSegments = Arrays.copyOf(b.segments, b.segments.length + 1);
+        childSegments[b.segments.length] = nodeName;
+        return new PersistentPreferencesNode(b.owner, this, nodeName, childSegments);
+    }
+
+    @Override
+    public long modificationStamp() {
+        return dataOrEmpty().stamp;
+    }
+
+    @Override
+    public long subtreeModificationStamp() {
+        return dataOrEmpty().subtreeStamp;
+    }
+
+    public Object getAt(String key) {
+        return dataOrEmpty().values.get(key);
+    }
+
+    public void putAt(String key, Object value) {
+        if (null == value) {
+            remove(key);
+            return;
+        }
+
+        PutValue put = new PutValue(key, value);
+        if (update(put) && !areEqual(put.oldValue, value)) {
+            firePreferencesChanged(key, put.oldValue, value);
+        }
+    }
+
+    private void firePreferencesChanged(String key, Object oldValue, Object newValue) {
+        owner().preferenceChanged(new PreferenceChangeEvent(path(), key, oldValue, newValue));
+    }
+
+    public void remove(String key) {
+        RemoveValue remove = new RemoveValue(key);
+        if (update(remove) && null != remove.oldValue) {
+            firePreferencesChanged(key, remove.oldValue, null);
+        }
+    }
+
+    public void clear() {
+        update(CLEAR_VALUES);
+    }
+
+    public boolean containsKey(String key) {
+        return dataOrEmpty().values.containsKey(key);
+    }
+
+    public String[] keys() {
+        PersistentHashMap<String, Object> values = dataOrEmpty().values;
+        return values.keySet().toArray(new String[values.size()]);
+    }
+
+    public Map<String, PreferencesNode> children() {
+        PersistentHashMap<String, NodeData> children = dataOrEmpty().children;
+        if (children.isEmpty()) return Collections.emptyMap();
+        Map<String, PreferencesNode> views = new LinkedHashMap<String, PreferencesNode>(children.size() * 2);
+        for (String nodeName : children.keySet()) {
+            views.put(nodeName, childView(nodeName));
+        }
+        return Collections.unmodifiableMap(views);
+    }
+
+    public PreferencesNode getChildNode(String nodeName) {
+        return dataOrEmpty().children.containsKey(nodeName) ? childView(nodeName) : null;
+    }
+
+    public PersistentPreferencesNode createChildNode(String nodeName) {
+        return (PersistentPreferencesNode) new PersistentPreferences(NodeData.EMPTY, this, nodeName).getRoot();
+    }
+
+    @Override
+    protected PreferencesNode getOrCreateChildNode(String nodeName) {
+        AddChild add = new AddChild(nodeName);
+        PersistentPreferencesNode node = childView(nodeName);
+        if (update(add) && add.added) {
+            owner().nodeChanged(new NodeChangeEvent(node.path(), NodeChangeEvent.Type.ADDED));
+        }
+        return node;
+    }
+
+    public void storeChildNode(String nodeName, PreferencesNode node) {
+        NodeData data = node instanceof PersistentPreferencesNode ? ((PersistentPreferencesNode) node).dataOrEmpty() : toData(node);
+        // a stored subtree counts as changed as a whole
+        data = data.restamped(AbstractPreferences.nextStamp());
+        if (!update(new StoreChild(nodeName, data))) return;
+
+        PersistentPreferencesNode child = childView(nodeName);
+        if (node instanceof PersistentPreferencesNode) {
+            PersistentPreferencesNode stored = (PersistentPreferencesNode) node;
+            // a node made by createChildNode() now lives in this tree
+            if (stored.binding.segments.length == 0 && stored.owner() != owner() && equals(stored.parent) && nodeName.equals(stored.name)) {
+                stored.binding = child.binding;
+            }
+        }
+        owner().nodeChanged(new NodeChangeEvent(child.path(), NodeChangeEvent.Type.ADDED));
+    }
+
+    public PreferencesNode removeChildNode(String nodeName) {
+        RemoveChild remove = new RemoveChild(nodeName);
+        if (!update(remove) || null == remove.removed) return null;
+        PreferencesNode node = new PersistentPreferences(remove.removed, this, nodeName).getRoot();
+        owner().nodeChanged(new NodeChangeEvent(node.path(), NodeChangeEvent.Type.REMOVED));
+        return node;
+    }
+
+    private static NodeData toData(PreferencesNode node) {
+        PersistentHashMap<String, Object> values = PersistentHashMap.empty();
+        for (String key : node.keys()) {
+            values = values.plus(key, node.getAt(key));
+        }
+        PersistentHashMap<String, NodeData> children = PersistentHashMap.empty();
+        for (Map.Entry<String, PreferencesNode> child : node.children().entrySet()) {
+            children = children.plus(child.getKey(), toData(child.getValue()));
+        }
+        return new NodeData(values, children);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PersistentPreferencesNode)) return false;
+        PersistentPreferencesNode that = (PersistentPreferencesNode) o;
+        return owner() == that.owner() && path().equals(that.path());
+    }
+
+    @Override
+    public int hashCode() {
+        return path().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path();
+    }
+
+    private static final class Binding {
+        private final PersistentPreferences owner;
+        private final String[] segments;
+
+        private Binding(PersistentPreferences owner, String[] segments) {
+            this.owner = owner;
+            this.segments = segments;
+        }
+    }
+
+    private static final class Resolved {
+        private final NodeData root;
+        private final Binding binding;
+        private final NodeData node;
+
+        private Resolved(NodeData root, Binding binding, NodeData node) {
+            this.root = root;
+            this.binding = binding;
+            this.node = node;
+        }
+    }
+
+    private static final Update CLEAR_VALUES = new Update() {
+        NodeData apply(NodeData node) {
+            return node.withValues(PersistentHashMap.<String, Object>empty());
+        }
+    };
+
+    private static final class PutValue extends Update {
+        private final String key;
+        private final Object value;
+        private Object oldValue;
+
+        private PutValue(String key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        NodeData apply(NodeData node) {
+            oldValue = node.values.get(key);
+            // writing an equal value is not a change, the node keeps its stamp
+            if (valuesEqual(oldValue, value)) return node;
+            return node.withValues(node.values.plus(key, value));
+        }
+    }
+
+    private static final class RemoveValue extends Update {
+        private final String key;
+        private Object oldValue;
+
+        private RemoveValue(String key) {
+            this.key = key;
+        }
+
+        NodeData apply(NodeData node) {
+            oldValue = node.values.get(key);
+            return node.withValues(node.values.minus(key));
+        }
+    }
+
+    private static final class AddChild extends Update {
+        private final String nodeName;
+        private boolean added;
+
+        private AddChild(String nodeName) {
+            this.nodeName = nodeName;
+        }
+
+        NodeData apply(NodeData node) {
+            added = !node.children.containsKey(nodeName);
+            return added ? node.withChildren(node.children.plus(nodeName, NodeData.EMPTY.stamped(AbstractPreferences.nextStamp()))) : node;
+        }
+    }
+
+    private static final class StoreChild extends Update {
+        private final String nodeName;
+        private final NodeData data;
+
+        private StoreChild(String nodeName, NodeData data) {
+            this.nodeName = nodeName;
+            this.data = data;
+        }
+
+        NodeData apply(NodeData node) {
+            return node.withChildren(node.children.plus(nodeName, data));
+        }
+    }
+
+    private static final class RemoveChild extends Update {
+        private final String nodeName;
+        private NodeData removed;
+
+        private RemoveChild(String nodeName) {
+            this.nodeName = nodeName;
+        }
+
+        NodeData apply(NodeData node) {
+            removed = node.children.get(nodeName);
+            return node.withChildren(node.children.minus(nodeName));
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import griffon.plugins.preferences.PreferenceEntry;
+import griffon.plugins.preferences.PreferencesNode;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Glob pattern over node paths, compiled once and evaluated lazily.</p>
+ * Matching walks the tree depth first while tracking which segments of the
+ * pattern may match next. The leading literal segments are resolved with a
+ * single lookup, literal segments are looked up by name instead of visiting
+ * every child, and subtrees that no segment can match are never entered.
+ *
+ * @author Andres Almiray
+ */
+public final class PreferencesQuery {
+    private static final String ANY_DEPTH = "**";
+    private static final int MAX_SEGMENTS = 63;
+
+    private final String[] literals;
+    private final Pattern[] globs;
+    private final int length;
+    private final int prefixLength;
+    private final String prefix;
+
+    public PreferencesQuery(String pathPattern) {
+        String[] segments = AbstractPreferences.pathSegments(pathPattern);
+        if (segments.length > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("Pattern " + pathPattern + " has more than " + MAX_SEGMENTS + " segments");
+        }
+        length = segments.length;
+        literals = new String[length];
+        globs = new Pattern[length];
+        int literalPrefix = -1;
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            String segment = segments[i];
+            if (ANY_DEPTH.equals(segment)) {
+                // neither a literal nor a glob
+            } else if (isGlob(segment)) {
+                globs[i] = compile(segment);
+            } else {
+                literals[i] = segment;
+            }
+            if (literalPrefix < 0 && null == literals[i]) literalPrefix = i;
+            if (literalPrefix < 0) b.append(PreferencesNode.PATH_SEPARATOR).append(segment);
+        }
+        prefixLength = literalPrefix < 0 ? length : literalPrefix;
+        prefix = b.length() > 0 ? b.toString() : PreferencesNode.PATH_SEPARATOR;
+    }
+
+    public Iterable<PreferencesNode> nodes(final AbstractPreferences preferences) {
+        return new Iterable<PreferencesNode>() {
+            public Iterator<PreferencesNode> iterator() {
+                PreferencesNode start = preferences.findNode(prefix);
+                return null == start ? Collections.<PreferencesNode>emptyList().iterator() : new NodeIterator(start, closure(1L << prefixLength));
+            }
+        };
+    }
+
+    public Iterable<PreferenceEntry> entries(final AbstractPreferences preferences, String keyPattern) {
+        final String literalKey = isGlob(keyPattern) ? null : keyPattern;
+        final Pattern keyGlob = isGlob(keyPattern) ? compile(keyPattern) : null;
+        return new Iterable<PreferenceEntry>() {
+            public Iterator<PreferenceEntry> iterator() {
+                return new EntryIterator(nodes(preferences).iterator(), literalKey, keyGlob);
+            }
+        };
+    }
+
+    private static boolean isGlob(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0;
+    }
+
+    private static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private boolean isAnyDepth(int i) {
+        return i < length && null == literals[i] && null == globs[i];
+    }
+
+    /**
+     * Adds the positions reachable by letting '**' match no segment at all.
+     */
+    private long closure(long states) {
+        for (int i = 0; i < length; i++) {
+            if ((states & (1L << i)) != 0 && isAnyDepth(i)) states |= 1L << (i + 1);
+        }
+        return states;
+    }
+
+    private boolean isMatch(long states) {
+        return (states & (1L << length)) != 0;
+    }
+
+    private long step(long states, String name) {
+        long next = 0L;
+        for (int i = 0; i < length; i++) {
+            if ((states & (1L << i)) == 0) continue;
+            if (isAnyDepth(i)) {
+                next |= 1L << i;
+            } else if (null != literals[i] ? literals[i].equals(name) : globs[i].matcher(name).matches()) {
+                next |= 1L << (i + 1);
+            }
+        }
+        return closure(next);
+    }
+
+    /**
+     * Returns the names of the children that may match, or null if any child may.
+     */
+    private List<String> candidateNames(long states) {
+        List<String> names = null;
+        for (int i = 0; i < length; i++) {
+            if ((states & (1L << i)) == 0) continue;
+            if (null == literals[i]) return null;
+            if (null == names) names = new ArrayList<String>(1);
+            names.add(literals[i]);
+        }
+        return null != names ? names : Collections.<String>emptyList();
+    }
+
+    private final class NodeIterator implements Iterator<PreferencesNode> {
+        private final Deque<Frame> stack = new ArrayDeque<Frame>();
+        private PreferencesNode next;
+
+        private NodeIterator(PreferencesNode start, long states) {
+            stack.push(new Frame(start, states));
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (null == frame.children) {
+                    frame.expand();
+                    if (isMatch(frame.states)) {
+                        next = frame.node;
+                        return;
+                    }
+                }
+                PreferencesNode child = frame.nextChild();
+                if (null == child) {
+                    stack.pop();
+                    continue;
+                }
+                long states = step(frame.states, child.name());
+                if (states != 0L) stack.push(new Frame(child, states));
+            }
+        }
+
+        public boolean hasNext() {
+            return null != next;
+        }
+
+        public PreferencesNode next() {
+            if (null == next) throw new NoSuchElementException();
+            PreferencesNode node = next;
+            advance();
+            return node;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final class Frame {
+        private final PreferencesNode node;
+        private final long states;
+        private Iterator<?> children;
+
+        private Frame(PreferencesNode node, long states) {
+            this.node = node;
+            this.states = states;
+        }
+
+        private void expand() {
+            List<String> names = candidateNames(states);
+            children = null == names ? node.children().values().iterator() : names.iterator();
+        }
+
+        private PreferencesNode nextChild() {
+            while (children.hasNext()) {
+                Object candidate = children.next();
+                if (candidate instanceof PreferencesNode) return (PreferencesNode) candidate;
+                PreferencesNode child = node.getChildNode((String) candidate);
+                if (null != child) return child;
+            }
+            return null;
+        }
+    }
+
+    private static final class EntryIterator implements Iterator<PreferenceEntry> {
+        private final Iterator<PreferencesNode> nodes;
+        private final String literalKey;
+        private final Pattern keyGlob;
+        private PreferencesNode node;
+        private String[] keys;
+        private int index;
+        private PreferenceEntry next;
+
+        private EntryIterator(Iterator<PreferencesNode> nodes, String literalKey, Pattern keyGlob) {
+            this.nodes = nodes;
+            this.literalKey = literalKey;
+            this.keyGlob = keyGlob;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (true) {
+                if (null != keys) {
+                    while (index < keys.length) {
+                        String key = keys[index++];
+                        if (keyGlob.matcher(key).matches()) {
+                            Object value = node.getAt(key);
+                            if (null != value) {
+                                next = new PreferenceEntry(node, key, value);
+                                return;
+                            }
+                        }
+                    }
+                    keys = null;
+                }
+                if (!nodes.hasNext()) return;
+                node = nodes.next();
+                if (null != literalKey) {
+                    Object value = node.getAt(literalKey);
+                    if (null != value) {
+                        next = new PreferenceEntry(node, literalKey, value);
+                        return;
+                    }
+                } else {
+                    keys = node.keys();
+                    index = 0;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return null != next;
+        }
+
+        public PreferenceEntry next() {
+            if (null == next) throw new NoSuchElementException();
+            PreferenceEntry entry = next;
+            advance();
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
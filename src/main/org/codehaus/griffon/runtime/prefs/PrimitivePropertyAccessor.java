@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+/**
+ * {@code PropertyAccessor} of a primitive property that can be read and
+ * written without boxing. Only the methods that match {@link #getType()} are
+ * expected to be called.
+ *
+ * @author Andres Almiray
+ */
+public interface PrimitivePropertyAccessor extends PropertyAccessor {
+    int getInt(Object instance) throws IllegalAccessException;
+
+    void setInt(Object instance, int value) throws IllegalAccessException;
+
+    long getLong(Object instance) throws IllegalAccessException;
+
+    void setLong(Object instance, long value) throws IllegalAccessException;
+
+    double getDouble(Object instance) throws IllegalAccessException;
+
+    void setDouble(Object instance, double value) throws IllegalAccessException;
+
+    boolean getBoolean(Object instance) throws IllegalAccessException;
+
+    void setBoolean(Object instance, boolean value) throws IllegalAccessException;
+}
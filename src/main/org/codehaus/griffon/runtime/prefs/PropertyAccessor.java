@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Reads and writes a single property of an object.</p>
+ * Implementations resolve the underlying accessor once, when they are created,
+ * so that reading and writing the property does not require further lookups.
+ *
+ * @author Andres Almiray
+ */
+public interface PropertyAccessor {
+    Class<?> getType();
+
+    Object getValue(Object instance) throws IllegalAccessException, InvocationTargetException;
+
+    void setValue(Object instance, Object value) throws IllegalAccessException, InvocationTargetException;
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs;
+
+import groovy.lang.MissingMethodException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import static griffon.util.GriffonNameUtils.getGetterName;
+import static griffon.util.GriffonNameUtils.getSetterName;
+import static java.lang.reflect.Modifier.isStatic;
+
+/**
+ * Creates {@code PropertyAccessor}s for fields and property methods.
+ *
+ * @author Andres Almiray
+ */
+public final class PropertyAccessors {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    public static enum Mode {
+        /**
+         * Resolves accessor methods or fields once and invokes them directly.
+         */
+        DIRECT,
+        /**
+         * Dispatches through the Groovy runtime on every access, falling back
+         * to the field when no accessor method can be found.
+         */
+        DYNAMIC;
+
+        public static Mode of(String name) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) return mode;
+            }
+            return DIRECT;
+        }
+    }
+
+    private PropertyAccessors() {
+    }
+
+    public static PropertyAccessor forField(Field field, Mode mode) {
+        if (mode == Mode.DYNAMIC) return new DynamicFieldAccessor(field);
+
+        Class<?> owner = field.getDeclaringClass();
+        Method readMethod = findMethod(owner, getGetterName(field.getName()), field.getType(), null);
+        if (null == readMethod && (field.getType() == Boolean.TYPE || field.getType() == Boolean.class)) {
+            readMethod = findMethod(owner, "is" + getGetterName(field.getName()).substring(3), field.getType(), null);
+        }
+        Method writeMethod = findMethod(owner, getSetterName(field.getName()), Void.TYPE, field.getType());
+        if (null != readMethod && null != writeMethod) {
+            return new MethodAccessor(readMethod, writeMethod, field.getType());
+        }
+
+        try {
+            field.setAccessible(true);
+        } catch (SecurityException se) {
+            return new DynamicFieldAccessor(field);
+        }
+        if (field.getType().isPrimitive() && null == readMethod && null == writeMethod) {
+            return new PrimitiveFieldAccessor(field);
+        }
+        return new FieldAccessor(field, readMethod, writeMethod);
+    }
+
+    public static PropertyAccessor forMethods(Method readMethod, Method writeMethod, Mode mode) {
+        if (mode == Mode.DIRECT) {
+            makeAccessible(readMethod);
+            makeAccessible(writeMethod);
+        }
+        return new MethodAccessor(readMethod, writeMethod, readMethod.getReturnType());
+    }
+
+    private static Method findMethod(Class<?> owner, String name, Class<?> returnType, Class<?> parameterType) {
+        Method candidate = null;
+        for (Method method : owner.getMethods()) {
+            if (!method.getName().equals(name) || isStatic(method.getModifiers())) continue;
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (null == parameterType) {
+                if (parameterTypes.length == 0 && returnType.isAssignableFrom(method.getReturnType())) {
+                    return makeAccessible(method);
+                }
+            } else if (parameterTypes.length == 1 && parameterTypes[0].isAssignableFrom(parameterType)) {
+                // an exact match wins over a setter that takes a supertype
+                if (parameterTypes[0] == parameterType) return makeAccessible(method);
+                if (null == candidate) candidate = method;
+            }
+        }
+        return null != candidate ? makeAccessible(candidate) : null;
+    }
+
+    private static Method makeAccessible(Method method) {
+        // skips access checks on every invocation, if the security manager allows it
+        if (!method.isAccessible()) {
+            try {
+                method.setAccessible(true);
+            } catch (SecurityException se) {
+                // invocation still works for public methods of public classes
+            }
+        }
+        return method;
+    }
+
+    private static class MethodAccessor implements PropertyAccessor {
+        private final Method readMethod;
+        private final Method writeMethod;
+        private final Class<?> type;
+
+        private MethodAccessor(Method readMethod, Method writeMethod, Class<?> type) {
+            this.readMethod = readMethod;
+            this.writeMethod = writeMethod;
+            this.type = type;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Object getValue(Object instance) throws IllegalAccessException, InvocationTargetException {
+            return readMethod.invoke(instance, NO_ARGS);
+        }
+
+        public void setValue(Object instance, Object value) throws IllegalAccessException, InvocationTargetException {
+            writeMethod.invoke(instance, value);
+        }
+    }
+
+    private static class FieldAccessor implements PropertyAccessor {
+        private final Field field;
+        private final Method readMethod;
+        private final Method writeMethod;
+
+        private FieldAccessor(Field field, Method readMethod, Method writeMethod) {
+            this.field = field;
+            this.readMethod = readMethod;
+            this.writeMethod = writeMethod;
+        }
+
+        public Class<?> getType() {
+            return field.getType();
+        }
+
+        public Object getValue(Object instance) throws IllegalAccessException, InvocationTargetException {
+            if (null != readMethod) return readMethod.invoke(instance, NO_ARGS);
+            return field.get(instance);
+        }
+
+        public void setValue(Object instance, Object value) throws IllegalAccessException, InvocationTargetException {
+            if (null != writeMethod) {
+                writeMethod.invoke(instance, value);
+            } else {
+                field.set(instance, value);
+            }
+        }
+    }
+
+    private static class PrimitiveFieldAccessor extends FieldAccessor implements PrimitivePropertyAccessor {
+        private final Field field;
+
+        private PrimitiveFieldAccessor(Field field) {
+            super(field, null, null);
+            this.field = field;
+        }
+
+        public int getInt(Object instance) throws IllegalAccessException {
+            return field.getInt(instance);
+        }
+
+        public void setInt(Object instance, int value) throws IllegalAccessException {
+            field.setInt(instance, value);
+        }
+
+        public long getLong(Object instance) throws IllegalAccessException {
+            return field.getLong(instance);
+        }
+
+        public void setLong(Object instance, long value) throws IllegalAccessException {
+            field.setLong(instance, value);
+        }
+
+        public double getDouble(Object instance) throws IllegalAccessException {
+            return field.getDouble(instance);
+        }
+
+        public void setDouble(Object instance, double value) throws IllegalAccessException {
+            field.setDouble(instance, value);
+        }
+
+        public boolean getBoolean(Object instance) throws IllegalAccessException {
+            return field.getBoolean(instance);
+        }
+
+        public void setBoolean(Object instance, boolean value) throws IllegalAccessException {
+            field.setBoolean(instance, value);
+        }
+    }
+
+    private static class DynamicFieldAccessor implements PropertyAccessor {
+        private final Field field;
+        private final String getter;
+        private final String setter;
+
+        private DynamicFieldAccessor(Field field) {
+            this.field = field;
+            this.getter = getGetterName(field.getName());
+            this.setter = getSetterName(field.getName());
+        }
+
+        public Class<?> getType() {
+            return field.getType();
+        }
+
+        public Object getValue(Object instance) throws IllegalAccessException, InvocationTargetException {
+            try {
+                return InvokerHelper.invokeMethod(instance, getter, NO_ARGS);
+            } catch (MissingMethodException mme) {
+                field.setAccessible(true);
+                return field.get(instance);
+            }
+        }
+
+        public void setValue(Object instance, Object value) throws IllegalAccessException, InvocationTargetException {
+            try {
+                InvokerHelper.invokeMethod(instance, setter, value);
+            } catch (MissingMethodException mme) {
+                field.setAccessible(true);
+                field.set(instance, value);
+            }
+        }
+    }
+}
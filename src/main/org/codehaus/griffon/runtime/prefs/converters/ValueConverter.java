@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.converters;
+
+/**
+ * Converts preference values to and from a target type.</p>
+ * Implementations are immutable and safe to share between threads.
+ *
+ * @author Andres Almiray
+ */
+public interface ValueConverter {
+    /**
+     * Converts a value (usually its literal representation) into the target type.
+     *
+     * @param value the value to convert
+     * @return the converted value, or the value itself if it cannot be converted.
+     * @throws IllegalArgumentException if the value has an invalid format
+     */
+    Object toValue(Object value);
+
+    /**
+     * Converts a value of the target type into its literal representation.
+     *
+     * @param value the value to convert
+     * @return the literal representation of the value, or the value itself if it has none.
+     */
+    Object toLiteral(Object value);
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.converters;
+
+import griffon.core.resources.editors.ExtendedPropertyEditor;
+import griffon.core.resources.editors.PropertyEditorResolver;
+import org.codehaus.griffon.runtime.prefs.ClassMetadataCache;
+
+import java.beans.PropertyEditor;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static griffon.util.GriffonNameUtils.isBlank;
+
+/**
+ * Registry of {@code ValueConverter}s keyed by target type and format.</p>
+ * Converters are created once per (type, format) pair. Strings, primitives and
+ * their wrappers, big numbers, enums and formatted dates are handled by built-in
+ * converters; any other type is handled by its {@code PropertyEditor}, if one
+ * can be found. Types without an editor are remembered as such, so that their
+ * values are not looked up again; call {@link #clear()} after registering an
+ * editor for a type that has already been converted.
+ *
+ * @author Andres Almiray
+ */
+public final class ValueConverters {
+    private static final String NO_FORMAT = "";
+
+    private static final ClassMetadataCache<ConcurrentMap<String, ValueConverter>> CONVERTERS = new ClassMetadataCache<ConcurrentMap<String, ValueConverter>>() {
+        @Override
+        protected ConcurrentMap<String, ValueConverter> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<String, ValueConverter>();
+        }
+    };
+
+    public static final ValueConverter IDENTITY = new ValueConverter() {
+        public Object toValue(Object value) {
+            return value;
+        }
+
+        public Object toLiteral(Object value) {
+            return value;
+        }
+    };
+
+    private ValueConverters() {
+    }
+
+    public static ValueConverter getConverter(Class<?> type, String format) {
+        String key = isBlank(format) ? NO_FORMAT : format;
+        ConcurrentMap<String, ValueConverter> converters = CONVERTERS.get(type);
+        ValueConverter converter = converters.get(key);
+        if (null == converter) {
+            converter = createConverter(type, key);
+            ValueConverter existing = converters.putIfAbsent(key, converter);
+            if (null != existing) converter = existing;
+        }
+        return converter;
+    }
+
+    /**
+     * Forgets every converter created so far, for instance after a
+     * {@code PropertyEditor} has been registered or replaced.
+     */
+    public static void clear() {
+        CONVERTERS.clear();
+    }
+
+    public static Object convert(Class<?> type, Object value, String format) {
+        return getConverter(type, format).toValue(value);
+    }
+
+    public static Object toLiteral(Object value, String format) {
+        if (null == value) return null;
+        return getConverter(value.getClass(), format).toLiteral(value);
+    }
+
+    private static ValueConverter createConverter(Class<?> type, String format) {
+        if (type == String.class || type == CharSequence.class) return STRING;
+
+        if (NO_FORMAT.equals(format)) {
+            if (type == Integer.TYPE || type == Integer.class) return INTEGER;
+            if (type == Long.TYPE || type == Long.class) return LONG;
+            if (type == Double.TYPE || type == Double.class) return DOUBLE;
+            if (type == Float.TYPE || type == Float.class) return FLOAT;
+            if (type == Short.TYPE || type == Short.class) return SHORT;
+            if (type == Byte.TYPE || type == Byte.class) return BYTE;
+            if (type == Boolean.TYPE || type == Boolean.class) return BOOLEAN;
+            if (type == Character.TYPE || type == Character.class) return CHARACTER;
+            if (type == BigInteger.class) return BIG_INTEGER;
+            if (type == BigDecimal.class) return BIG_DECIMAL;
+            if (type.isEnum()) return new EnumConverter(type);
+        } else if (type == Date.class) {
+            try {
+                new SimpleDateFormat(format);
+                return new DateConverter(format);
+            } catch (IllegalArgumentException iae) {
+                // not a date pattern, let the PropertyEditor interpret it
+            }
+        }
+
+        PropertyEditor propertyEditor = PropertyEditorResolver.findEditor(type);
+        if (null == propertyEditor) return IDENTITY;
+        if (propertyEditor instanceof ExtendedPropertyEditor) {
+            ((ExtendedPropertyEditor) propertyEditor).setFormat(NO_FORMAT.equals(format) ? null : format);
+        }
+        return new PropertyEditorConverter(propertyEditor);
+    }
+
+    private static abstract class TextConverter implements ValueConverter {
+        public Object toValue(Object value) {
+            if (value instanceof CharSequence) {
+                String text = String.valueOf(value).trim();
+                return text.length() == 0 ? null : fromText(text);
+            }
+            return null == value ? null : fromObject(value);
+        }
+
+        public Object toLiteral(Object value) {
+            return null == value ? null : String.valueOf(value);
+        }
+
+        protected abstract Object fromText(String text);
+
+        protected Object fromObject(Object value) {
+            return value;
+        }
+    }
+
+    private static abstract class NumberConverter extends TextConverter {
+        protected Object fromObject(Object value) {
+            return value instanceof Number ? fromNumber((Number) value) : value;
+        }
+
+        protected abstract Object fromNumber(Number number);
+    }
+
+    private static final ValueConverter STRING = new ValueConverter() {
+        public Object toValue(Object value) {
+            return null == value ? null : String.valueOf(value);
+        }
+
+        public Object toLiteral(Object value) {
+            return null == value ? null : String.valueOf(value);
+        }
+    };
+
+    private static final ValueConverter INTEGER = new NumberConverter() {
+        protected Object fromText(String text) {
+            return Integer.valueOf(text);
+        }
+
+        protected Object fromNumber(Number number) {
+            return number.intValue();
+        }
+    };
+
+    private static final ValueConverter LONG = new NumberConverter() {
+        protected Object fromText(String text) {
+            return Long.valueOf(text);
+        }
+
+        protected Object fromNumber(Number number) {
+            return number.longValue();
+        }
+    };
+
+    private static final ValueConverter DOUBLE = new NumberConverter() {
+        protected Object fromText(String text) {
+            return Double.valueOf(text);
+        }
+
+        protected Object fromNumber(Number number) {
+            return number.doubleValue();
+        }
+    };
+
+    private static final ValueConverter FLOAT = new NumberConverter() {
+        protected Object fromText(String text) {
+            return Float.valueOf(text);
+        }
+
+        protected Object fromNumber(Number number) {
+            return number.floatValue();
+        }
+    };
+
+    private static final ValueConverter SHORT = new NumberConverter() {
+        protected Object fromText(String text) {
+            return Short.valueOf(text);
+        }
+
+        protected Object fromNumber(Number number) {
+            return number.shortValue();
+        }
+    };
+
+    private static final ValueConverter BYTE = new NumberConverter() {
+        protected Object fromText(String text) {
+            return Byte.valueOf(text);
+        }
+
+        protected Object fromNumber(Number number) {
+            return number.byteValue();
+        }
+    };
+
+    private static final ValueConverter BIG_INTEGER = new NumberConverter() {
+        protected Object fromText(String text) {
+            return new BigInteger(text);
+        }
+
+        protected Object fromNumber(Number number) {
+            if (number instanceof BigDecimal) return ((BigDecimal) number).toBigInteger();
+            return BigInteger.valueOf(number.longValue());
+        }
+    };
+
+    private static final ValueConverter BIG_DECIMAL = new NumberConverter() {
+        protected Object fromText(String text) {
+            return new BigDecimal(text);
+        }
+
+        protected Object fromNumber(Number number) {
+            if (number instanceof BigInteger) return new BigDecimal((BigInteger) number);
+            if (number instanceof Double || number instanceof Float) return new BigDecimal(number.toString());
+            return BigDecimal.valueOf(number.longValue());
+        }
+    };
+
+    private static final ValueConverter BOOLEAN = new TextConverter() {
+        protected Object fromText(String text) {
+            if ("true".equalsIgnoreCase(text) || "yes".equalsIgnoreCase(text) || "on".equalsIgnoreCase(text) || "1".equals(text)) {
+                return Boolean.TRUE;
+            } else if ("false".equalsIgnoreCase(text) || "no".equalsIgnoreCase(text) || "off".equalsIgnoreCase(text) || "0".equals(text)) {
+                return Boolean.FALSE;
+            }
+            throw new IllegalArgumentException("Cannot convert '" + text + "' into a boolean value");
+        }
+
+        protected Object fromObject(Object value) {
+            return value instanceof Number ? ((Number) value).intValue() != 0 : value;
+        }
+    };
+
+    private static final ValueConverter CHARACTER = new TextConverter() {
+        protected Object fromText(String text) {
+            if (text.length() != 1) {
+                throw new IllegalArgumentException("Cannot convert '" + text + "' into a char value");
+            }
+            return text.charAt(0);
+        }
+    };
+
+    private static class EnumConverter extends TextConverter {
+        private final Class enumType;
+
+        private EnumConverter(Class enumType) {
+            this.enumType = enumType;
+        }
+
+        @SuppressWarnings("unchecked")
+        protected Object fromText(String text) {
+            return Enum.valueOf(enumType, text);
+        }
+
+        public Object toLiteral(Object value) {
+            return null == value ? null : ((Enum) value).name();
+        }
+    }
+
+    private static class DateConverter extends TextConverter {
+        private final String format;
+        // SimpleDateFormat is not thread-safe
+        private final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                return new SimpleDateFormat(format);
+            }
+        };
+
+        private DateConverter(String format) {
+            this.format = format;
+        }
+
+        protected Object fromText(String text) {
+            try {
+                return dateFormat.get().parse(text);
+            } catch (ParseException e) {
+                throw new IllegalArgumentException("Cannot parse '" + text + "' with format '" + format + "'", e);
+            }
+        }
+
+        protected Object fromObject(Object value) {
+            if (value instanceof Number) return new Date(((Number) value).longValue());
+            if (value instanceof Calendar) return ((Calendar) value).getTime();
+            return value;
+        }
+
+        public Object toLiteral(Object value) {
+            return value instanceof Date ? dateFormat.get().format((Date) value) : value;
+        }
+    }
+
+    private static class PropertyEditorConverter implements ValueConverter {
+        // PropertyEditors hold state, access must be serialized
+        private final PropertyEditor propertyEditor;
+
+        private PropertyEditorConverter(PropertyEditor propertyEditor) {
+            this.propertyEditor = propertyEditor;
+        }
+
+        public Object toValue(Object value) {
+            synchronized (propertyEditor) {
+                if (value instanceof CharSequence) {
+                    propertyEditor.setAsText(String.valueOf(value));
+                } else {
+                    propertyEditor.setValue(value);
+                }
+                return propertyEditor.getValue();
+            }
+        }
+
+        public Object toLiteral(Object value) {
+            synchronized (propertyEditor) {
+                propertyEditor.setValue(value);
+                return propertyEditor.getAsText();
+            }
+        }
+    }
+}
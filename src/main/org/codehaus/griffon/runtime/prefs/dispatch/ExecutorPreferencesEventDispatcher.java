@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.dispatch;
+
+import griffon.plugins.preferences.dispatch.PreferencesEventDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static griffon.util.GriffonExceptionHandler.sanitize;
+
+/**
+ * {@code PreferencesEventDispatcher} that delivers events on an {@code Executor}.</p>
+ * Paths are spread over a fixed number of lanes; the tasks of a lane run one
+ * at a time, in the order they were dispatched, which keeps the events of a
+ * path in order while different lanes are delivered concurrently. A lane
+ * yields its thread after a few tasks so that a busy path does not starve the
+ * others. Events that the executor rejects are delivered on the dispatching
+ * thread. A listener that throws an exception does not prevent the next
+ * events from being delivered.
+ *
+ * @author Andres Almiray
+ */
+public class ExecutorPreferencesEventDispatcher implements PreferencesEventDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutorPreferencesEventDispatcher.class);
+    private static final int DEFAULT_LANES = 64;
+    private static final int TASKS_PER_TURN = 32;
+
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final Lane[] lanes;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object drainLock = new Object[0];
+
+    public ExecutorPreferencesEventDispatcher(Executor executor) {
+        this(executor, DEFAULT_LANES, false);
+    }
+
+    public ExecutorPreferencesEventDispatcher(Executor executor, int lanes) {
+        this(executor, lanes, false);
+    }
+
+    private ExecutorPreferencesEventDispatcher(Executor executor, int lanes, boolean ownsExecutor) {
+        if (null == executor) throw new IllegalArgumentException("Executor must not be null");
+        if (lanes < 1) throw new IllegalArgumentException("Lanes must be greater than zero, got " + lanes);
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Creates a dispatcher backed by a pool of the given number of daemon
+     * threads, which is shut down along with the dispatcher.
+     */
+    public static ExecutorPreferencesEventDispatcher withThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Threads must be greater than zero, got " + threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "preferences-dispatcher-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        return new ExecutorPreferencesEventDispatcher(executor, Math.max(DEFAULT_LANES, threads), true);
+    }
+
+    public boolean isSynchronous() {
+        return false;
+    }
+
+    public void dispatch(String path, Runnable task) {
+        pending.incrementAndGet();
+        laneFor(path).add(task);
+    }
+
+    public int getQueueDepth() {
+        return pending.get();
+    }
+
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (drainLock) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(drainLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    public void shutdown() {
+        if (ownsExecutor) ((ExecutorService) executor).shutdown();
+    }
+
+    private Lane laneFor(String path) {
+        int h = null != path ? path.hashCode() : 0;
+        h ^= (h >>> 16);
+        return lanes[(h & 0x7fffffff) % lanes.length];
+    }
+
+    private void completed() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (drainLock) {
+                drainLock.notifyAll();
+            }
+        }
+    }
+
+    private final class Lane implements Runnable {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private void add(Runnable task) {
+            tasks.offer(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // the lane is still marked as scheduled, no other thread runs it meanwhile
+                run();
+            }
+        }
+
+        public void run() {
+            try {
+                for (int i = 0; i < TASKS_PER_TURN; i++) {
+                    Runnable task = tasks.poll();
+                    if (null == task) break;
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        if (LOG.isWarnEnabled()) {
+                            LOG.warn("Error while delivering preferences event", sanitize(e));
+                        }
+                    } finally {
+                        completed();
+                    }
+                }
+            } finally {
+                // an Error thrown by a listener must not leave the lane marked as scheduled
+                scheduled.set(false);
+                if (!tasks.isEmpty()) schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.dispatch;
+
+import griffon.plugins.preferences.PreferenceChangeEvent;
+import griffon.plugins.preferences.PreferenceChangeListener;
+import griffon.plugins.preferences.metrics.PreferencesMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.GriffonExceptionHandler.sanitize;
+
+/**
+ * Wraps a listener so that it receives events from its own bounded queue, on
+ * its own thread, instead of on the thread that publishes them.</p>
+ * Publishing an event only enqueues it, so a slow listener neither holds up
+ * writers nor the other listeners. What happens when the queue is full is
+ * decided by an {@link OverflowPolicy}. Events of a listener are delivered one
+ * at a time, in the order they were enqueued.</p>
+ * A listener misbehaves when it throws an exception or when a delivery takes
+ * longer than the timeout, if one is set. Once the number of consecutive
+ * failures reaches the threshold of the circuit breaker, or as soon as a
+ * delivery is found to be still running past the timeout, the circuit opens:
+ * pending events are discarded and new ones are dropped until the open period
+ * elapses. The next event is then delivered as a trial, which closes the
+ * circuit if it succeeds or opens it again otherwise.
+ *
+ * @author Andres Almiray
+ */
+public class IsolatedPreferenceChangeListener implements PreferenceChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(IsolatedPreferenceChangeListener.class);
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    public static enum OverflowPolicy {
+        /**
+         * Publishers wait until there is room in the queue, or until the timeout
+         * elapses, in which case the event is dropped and counted as a failure.
+         */
+        BLOCK,
+        /**
+         * The oldest pending event is dropped to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * Pending events of the same key are merged into one that carries the
+         * oldest previous value and the latest value. If the queue is full of
+         * distinct keys the oldest one is dropped.
+         */
+        COALESCE_LATEST_PER_KEY
+    }
+
+    public static enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final PreferenceChangeListener delegate;
+    private final OverflowPolicy policy;
+    private final int capacity;
+    private final Object lock = new Object[0];
+    private final Map<Object, Pending> pending = new LinkedHashMap<Object, Pending>();
+    private final Runnable drainer = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile String name;
+    private volatile Executor executor;
+    private volatile long timeoutNanos;
+    private volatile int failureThreshold;
+    private volatile long openNanos;
+    private volatile long deliveryStart;
+    private long sequence;
+    private boolean scheduled;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int consecutiveFailures;
+
+    public IsolatedPreferenceChangeListener(PreferenceChangeListener delegate, OverflowPolicy policy, int capacity) {
+        if (null == delegate) throw new IllegalArgumentException("Listener must not be null");
+        if (null == policy) throw new IllegalArgumentException("Overflow policy must not be null");
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be greater than zero, got " + capacity);
+        this.delegate = delegate;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.name = delegate.getClass().getName() + '#' + INSTANCES.incrementAndGet();
+        this.executor = DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Sets the name used in log messages and metrics; defaults to the class name
+     * of the listener followed by a number unique to this instance. Gauges are
+     * registered by name, so listeners that share a name share their gauges.
+     */
+    public IsolatedPreferenceChangeListener withName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Sets the executor that delivers events. Defaults to a shared pool that
+     * creates threads as needed, so that a listener that never returns does
+     * not take the thread of any other listener.
+     */
+    public IsolatedPreferenceChangeListener withExecutor(Executor executor) {
+        if (null == executor) throw new IllegalArgumentException("Executor must not be null");
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets how long a delivery may take, and how long publishers wait for room
+     * with {@link OverflowPolicy#BLOCK}. Zero, the default, means no limit.
+     */
+    public IsolatedPreferenceChangeListener withTimeout(long timeout, TimeUnit unit) {
+        this.timeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Opens the circuit after the given number of consecutive failures, for the
+     * given period. Disabled by default.
+     */
+    public IsolatedPreferenceChangeListener withCircuitBreaker(int failureThreshold, long openPeriod, TimeUnit unit) {
+        if (failureThreshold < 1) throw new IllegalArgumentException("Failure threshold must be greater than zero, got " + failureThreshold);
+        this.openNanos = unit.toNanos(openPeriod);
+        this.failureThreshold = failureThreshold;
+        return this;
+    }
+
+    public PreferenceChangeListener getDelegate() {
+        return delegate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public State getState() {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Returns how long the oldest pending event has been waiting, in milliseconds.
+     */
+    public long getLagMillis() {
+        synchronized (lock) {
+            if (pending.isEmpty()) return 0L;
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pending.values().iterator().next().enqueuedAt);
+        }
+    }
+
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Publishes the lag, pending count and dropped count of this listener as gauges.
+     */
+    public void registerGauges(PreferencesMetrics metrics) {
+        metrics.registerGauge(PreferencesMetrics.LISTENER_LAG + name, new PreferencesMetrics.Gauge() {
+            public long getValue() {
+                return getLagMillis();
+            }
+        });
+        metrics.registerGauge(PreferencesMetrics.LISTENER_PENDING + name, new PreferencesMetrics.Gauge() {
+            public long getValue() {
+                return getPendingCount();
+            }
+        });
+        metrics.registerGauge(PreferencesMetrics.LISTENER_DROPPED + name, new PreferencesMetrics.Gauge() {
+            public long getValue() {
+                return getDroppedCount();
+            }
+        });
+    }
+
+    public void unregisterGauges(PreferencesMetrics metrics) {
+        metrics.unregisterGauge(PreferencesMetrics.LISTENER_LAG + name);
+        metrics.unregisterGauge(PreferencesMetrics.LISTENER_PENDING + name);
+        metrics.unregisterGauge(PreferencesMetrics.LISTENER_DROPPED + name);
+    }
+
+    public void preferenceChanged(PreferenceChangeEvent event) {
+        long now = System.nanoTime();
+        boolean schedule;
+        synchronized (lock) {
+            checkStalled(now);
+            if (state == State.OPEN) {
+                if (now - openedAt < openNanos) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                state = State.HALF_OPEN;
+            }
+            if (!enqueue(event, now)) return;
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            try {
+                executor.execute(drainer);
+            } catch (RejectedExecutionException e) {
+                drain();
+            }
+        }
+    }
+
+    private boolean enqueue(PreferenceChangeEvent event, long now) {
+        if (policy == OverflowPolicy.COALESCE_LATEST_PER_KEY) {
+            String key = event.getPath() + '#' + event.getKey();
+            Pending previous = pending.get(key);
+            if (null != previous) {
+                // replacing the value of an existing key keeps its place in the queue
+                event = new PreferenceChangeEvent(event.getPath(), event.getKey(), previous.event.getOldValue(), event.getNewValue());
+                pending.put(key, new Pending(event, previous.enqueuedAt));
+                return true;
+            }
+            if (pending.size() >= capacity) dropOldest();
+            pending.put(key, new Pending(event, now));
+            return true;
+        }
+
+        if (pending.size() >= capacity) {
+            if (policy == OverflowPolicy.DROP_OLDEST) {
+                dropOldest();
+            } else if (!awaitRoom()) {
+                long timedOut = System.nanoTime();
+                dropped.incrementAndGet();
+                recordOutcome(false, timedOut);
+                checkStalled(timedOut);
+                return false;
+            }
+        }
+        pending.put(sequence++, new Pending(event, now));
+        return true;
+    }
+
+    private boolean awaitRoom() {
+        long timeout = timeoutNanos;
+        long deadline = System.nanoTime() + timeout;
+        try {
+            while (pending.size() >= capacity) {
+                if (state == State.OPEN) return false;
+                if (timeout <= 0) {
+                    lock.wait();
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void dropOldest() {
+        Iterator<Pending> oldest = pending.values().iterator();
+        oldest.next();
+        oldest.remove();
+        dropped.incrementAndGet();
+    }
+
+    private void checkStalled(long now) {
+        long started = deliveryStart;
+        long timeout = timeoutNanos;
+        if (timeout > 0 && started != 0 && now - started > timeout && state != State.OPEN && failureThreshold > 0) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Listener " + name + " has been busy for more than " + TimeUnit.NANOSECONDS.toMillis(timeout) + " ms, suspending it");
+            }
+            open(now);
+        }
+    }
+
+    private void drain() {
+        boolean drained = false;
+        try {
+            drained = drainPending();
+        } finally {
+            // an Error thrown by the listener must not leave it without a drainer
+            if (!drained) {
+                synchronized (lock) {
+                    scheduled = false;
+                }
+            }
+        }
+    }
+
+    private boolean drainPending() {
+        while (true) {
+            Pending next;
+            synchronized (lock) {
+                Iterator<Pending> oldest = pending.values().iterator();
+                if (!oldest.hasNext()) {
+                    scheduled = false;
+                    return true;
+                }
+                next = oldest.next();
+                oldest.remove();
+                lock.notifyAll();
+            }
+
+            long start = System.nanoTime();
+            deliveryStart = start;
+            boolean success = true;
+            try {
+                delegate.preferenceChanged(next.event);
+            } catch (RuntimeException e) {
+                success = false;
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Listener " + name + " failed to handle " + next.event, sanitize(e));
+                }
+            } finally {
+                deliveryStart = 0L;
+            }
+            long end = System.nanoTime();
+            if (success && timeoutNanos > 0 && end - start > timeoutNanos) success = false;
+            synchronized (lock) {
+                recordOutcome(success, end);
+            }
+        }
+    }
+
+    private void recordOutcome(boolean success, long now) {
+        if (success) {
+            delivered.incrementAndGet();
+            consecutiveFailures = 0;
+            if (state == State.HALF_OPEN) state = State.CLOSED;
+            return;
+        }
+        failed.incrementAndGet();
+        consecutiveFailures++;
+        if (failureThreshold > 0 && (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold)) {
+            open(now);
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+        consecutiveFailures = 0;
+        dropped.addAndGet(pending.size());
+        pending.clear();
+        lock.notifyAll();
+    }
+
+    @Override
+    public String toString() {
+        return "IsolatedPreferenceChangeListener{" +
+            "name='" + name + '\'' +
+            ", policy=" + policy +
+            ", capacity=" + capacity +
+            '}';
+    }
+
+    private static final class Pending {
+        private final PreferenceChangeEvent event;
+        private final long enqueuedAt;
+
+        private Pending(PreferenceChangeEvent event, long enqueuedAt) {
+            this.event = event;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private static final class DefaultExecutorHolder {
+        private static final Executor EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "preferences-listener-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
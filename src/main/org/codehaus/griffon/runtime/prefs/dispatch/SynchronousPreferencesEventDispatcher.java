@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.dispatch;
+
+import griffon.plugins.preferences.dispatch.PreferencesEventDispatcher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code PreferencesEventDispatcher} that delivers events on the thread that
+ * dispatches them.
+ *
+ * @author Andres Almiray
+ */
+public final class SynchronousPreferencesEventDispatcher implements PreferencesEventDispatcher {
+    public static final PreferencesEventDispatcher INSTANCE = new SynchronousPreferencesEventDispatcher();
+
+    private SynchronousPreferencesEventDispatcher() {
+    }
+
+    public boolean isSynchronous() {
+        return true;
+    }
+
+    public void dispatch(String path, Runnable task) {
+        task.run();
+    }
+
+    public int getQueueDepth() {
+        return 0;
+    }
+
+    public boolean awaitDrained(long timeout, TimeUnit unit) {
+        return true;
+    }
+
+    public void shutdown() {
+    }
+}
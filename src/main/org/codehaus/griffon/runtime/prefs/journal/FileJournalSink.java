@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.journal;
+
+import griffon.plugins.preferences.NodeChangeEvent;
+import griffon.plugins.preferences.PreferenceChangeEvent;
+import griffon.plugins.preferences.journal.JournalEntry;
+import griffon.plugins.preferences.journal.JournalSink;
+import groovy.json.JsonOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.GriffonExceptionHandler.sanitize;
+
+/**
+ * {@code JournalSink} that appends entries to a file, one JSON object per line.</p>
+ * Entries are written by a background thread so that recording a change never
+ * waits for the disk; the file is flushed whenever there is nothing left to
+ * write. Values other than numbers, booleans and strings are written as text.</p>
+ * At most {@code capacity} entries wait to be written; entries that arrive while
+ * the queue is full are dropped and counted. The sink closes itself if the file
+ * can no longer be written.
+ *
+ * @author Andres Almiray
+ */
+public class FileJournalSink implements JournalSink {
+    private static final Logger LOG = LoggerFactory.getLogger(FileJournalSink.class);
+    private static final JournalEntry CLOSE = new JournalEntry(0L, 0L, (NodeChangeEvent) null);
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final File file;
+    private final BlockingQueue<JournalEntry> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    public FileJournalSink(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    public FileJournalSink(File file, int capacity) throws IOException {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be greater than zero, got " + capacity);
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<JournalEntry>(capacity);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (null != parent && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        writerThread = new Thread(new Runnable() {
+            public void run() {
+                drain(writer);
+            }
+        }, "preferences-journal-" + file.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the number of entries dropped because the writer fell behind.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void append(JournalEntry entry) {
+        if (closed || queue.offer(entry)) return;
+        if (dropped.getAndIncrement() == 0 && LOG.isWarnEnabled()) {
+            LOG.warn("Preferences journal " + file + " is falling behind, entries are being dropped");
+        }
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            // pending entries are written first, unless the writer is gone
+            while (writerThread.isAlive()) {
+                if (queue.offer(CLOSE, 100L, TimeUnit.MILLISECONDS)) break;
+            }
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(Writer writer) {
+        try {
+            while (true) {
+                JournalEntry entry = queue.take();
+                if (entry == CLOSE) break;
+                write(writer, entry);
+                if (queue.isEmpty()) writer.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Cannot write to preferences journal " + file, sanitize(e));
+            }
+        } catch (RuntimeException e) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Cannot write to preferences journal " + file, sanitize(e));
+            }
+        } finally {
+            closed = true;
+            queue.clear();
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+
+    private static void write(Writer writer, JournalEntry entry) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<String, Object>();
+        line.put("sequence", entry.getSequence());
+        line.put("timestamp", entry.getTimestamp());
+        line.put("path", entry.getPath());
+        if (null != entry.getNodeEvent()) {
+            line.put("node", entry.getNodeEvent().getType().name());
+        } else {
+            PreferenceChangeEvent event = entry.getPreferenceEvent();
+            line.put("key", event.getKey());
+            line.put("oldValue", toJsonValue(event.getOldValue()));
+            line.put("newValue", toJsonValue(event.getNewValue()));
+        }
+        writer.write(JsonOutput.toJson(line));
+        writer.write('\n');
+    }
+
+    private static Object toJsonValue(Object value) {
+        if (null == value || value instanceof Number || value instanceof Boolean) return value;
+        return String.valueOf(value);
+    }
+}
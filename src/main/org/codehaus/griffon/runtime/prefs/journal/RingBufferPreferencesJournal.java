@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.journal;
+
+import griffon.plugins.preferences.NodeChangeEvent;
+import griffon.plugins.preferences.NodeChangeListener;
+import griffon.plugins.preferences.PreferenceChangeEvent;
+import griffon.plugins.preferences.PreferenceChangeListener;
+import griffon.plugins.preferences.journal.JournalEntry;
+import griffon.plugins.preferences.journal.JournalSink;
+import griffon.plugins.preferences.journal.PreferencesJournal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code PreferencesJournal} that keeps a fixed number of entries in a ring
+ * buffer, overwriting the oldest ones. Memory usage is bounded by the capacity
+ * plus whatever the recorded values retain. Entries are also handed to an
+ * optional {@code JournalSink} as they are recorded.
+ *
+ * @author Andres Almiray
+ */
+public class RingBufferPreferencesJournal implements PreferencesJournal {
+    private final JournalEntry[] entries;
+    private final JournalSink sink;
+    private long lastSequence;
+
+    public RingBufferPreferencesJournal(int capacity) {
+        this(capacity, null);
+    }
+
+    public RingBufferPreferencesJournal(int capacity, JournalSink sink) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be greater than zero, got " + capacity);
+        this.entries = new JournalEntry[capacity];
+        this.sink = sink;
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    public JournalSink getSink() {
+        return sink;
+    }
+
+    public void preferenceChanged(PreferenceChangeEvent event) {
+        synchronized (entries) {
+            record(new JournalEntry(lastSequence + 1, System.currentTimeMillis(), event));
+        }
+    }
+
+    public void nodeChanged(NodeChangeEvent event) {
+        synchronized (entries) {
+            record(new JournalEntry(lastSequence + 1, System.currentTimeMillis(), event));
+        }
+    }
+
+    private void record(JournalEntry entry) {
+        lastSequence = entry.getSequence();
+        entries[slot(lastSequence)] = entry;
+        if (null != sink) sink.append(entry);
+    }
+
+    private int slot(long sequence) {
+        return (int) ((sequence - 1) % entries.length);
+    }
+
+    public long getFirstSequence() {
+        synchronized (entries) {
+            return firstSequence();
+        }
+    }
+
+    private long firstSequence() {
+        return Math.max(1L, lastSequence - entries.length + 1);
+    }
+
+    public long getLastSequence() {
+        synchronized (entries) {
+            return lastSequence;
+        }
+    }
+
+    public List<JournalEntry> entriesFrom(long sequence) {
+        synchronized (entries) {
+            long first = Math.max(sequence, firstSequence());
+            if (first > lastSequence) return Collections.emptyList();
+            List<JournalEntry> result = new ArrayList<JournalEntry>((int) (lastSequence - first + 1));
+            for (long s = first; s <= lastSequence; s++) {
+                result.add(entries[slot(s)]);
+            }
+            return result;
+        }
+    }
+
+    public long replay(long sequence, PreferenceChangeListener preferenceChangeListener, NodeChangeListener nodeChangeListener) {
+        // listeners run outside of the lock, they may cause new entries to be recorded
+        long last = sequence - 1;
+        for (JournalEntry entry : entriesFrom(sequence)) {
+            entry.deliver(preferenceChangeListener, nodeChangeListener);
+            last = entry.getSequence();
+        }
+        return last;
+    }
+}
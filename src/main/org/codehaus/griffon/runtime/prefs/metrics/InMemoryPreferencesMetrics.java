@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.metrics;
+
+import griffon.plugins.preferences.metrics.PreferencesMetrics;
+import griffon.plugins.preferences.metrics.PreferencesMetricsMXBean;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code PreferencesMetrics} that keeps counts, total and maximum times, and a
+ * power-of-two latency histogram per timer. Recording never blocks.
+ *
+ * @author Andres Almiray
+ */
+public class InMemoryPreferencesMetrics implements PreferencesMetrics, PreferencesMetricsMXBean {
+    private static final int BUCKETS = 64;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+    public boolean isEnabled() {
+        return true;
+    }
+
+    public long startTimer() {
+        return System.nanoTime();
+    }
+
+    public void stopTimer(String name, long startTime) {
+        timer(name).record(System.nanoTime() - startTime);
+    }
+
+    public void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void unregisterGauge(String name) {
+        gauges.remove(name);
+    }
+
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().count.get());
+        }
+        return counts;
+    }
+
+    public Map<String, Long> getTotalTimes() {
+        Map<String, Long> totals = new TreeMap<String, Long>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            totals.put(entry.getKey(), entry.getValue().total.get());
+        }
+        return totals;
+    }
+
+    public Map<String, Long> getMaxTimes() {
+        Map<String, Long> max = new TreeMap<String, Long>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            max.put(entry.getKey(), entry.getValue().max.get());
+        }
+        return max;
+    }
+
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getValue());
+        }
+        return values;
+    }
+
+    public long[] getHistogram(String name) {
+        Timer timer = timers.get(name);
+        long[] histogram = new long[BUCKETS];
+        if (null != timer) {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = timer.buckets.get(i);
+            }
+        }
+        return histogram;
+    }
+
+    public void reset() {
+        timers.clear();
+    }
+
+    private Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (null == timer) {
+            timer = new Timer();
+            Timer existing = timers.putIfAbsent(name, timer);
+            if (null != existing) timer = existing;
+        }
+        return timer;
+    }
+
+    private static final class Timer {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long current = max.get();
+            while (nanos > current && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+            buckets.incrementAndGet(nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos));
+        }
+    }
+}
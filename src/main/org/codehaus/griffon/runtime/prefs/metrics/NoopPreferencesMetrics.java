@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.metrics;
+
+import griffon.plugins.preferences.metrics.PreferencesMetrics;
+
+/**
+ * {@code PreferencesMetrics} that records nothing.
+ *
+ * @author Andres Almiray
+ */
+public final class NoopPreferencesMetrics implements PreferencesMetrics {
+    public static final PreferencesMetrics INSTANCE = new NoopPreferencesMetrics();
+
+    private NoopPreferencesMetrics() {
+    }
+
+    public boolean isEnabled() {
+        return false;
+    }
+
+    public long startTimer() {
+        return 0L;
+    }
+
+    public void stopTimer(String name, long startTime) {
+    }
+
+    public void registerGauge(String name, Gauge gauge) {
+    }
+
+    public void unregisterGauge(String name) {
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.prefs.processor;
+
+import griffon.plugins.preferences.Preference;
+import griffon.plugins.preferences.PreferencesInjector;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Generates a {@code PreferencesInjector} for every Java class that declares
+ * members annotated with {@code @Preference}.</p>
+ * Classes whose preferences cannot be reached from a class in the same package
+ * (private classes, private fields without accessors) are skipped; those are
+ * handled by reflection at runtime.
+ *
+ * @author Andres Almiray
+ */
+@SupportedAnnotationTypes("griffon.plugins.preferences.Preference")
+public class PreferencesInjectorProcessor extends AbstractProcessor {
+    private final Set<String> processed = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> owners = new LinkedHashSet<TypeElement>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(Preference.class)) {
+            Element owner = element.getEnclosingElement();
+            if (owner instanceof TypeElement) owners.add((TypeElement) owner);
+        }
+
+        for (TypeElement owner : owners) {
+            String binaryName = processingEnv.getElementUtils().getBinaryName(owner).toString();
+            if (!processed.add(binaryName)) continue;
+            try {
+                List<Member> members = collectMembers(owner);
+                if (null != members) generateInjector(owner, binaryName, members);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot generate " + binaryName + PreferencesInjector.CLASS_NAME_SUFFIX + ": " + e.getMessage(), owner);
+            }
+        }
+        return false;
+    }
+
+    private List<Member> collectMembers(TypeElement owner) {
+        // stubs of Groovy classes get their injector from PreferencesInjectorASTTransformation
+        if (isGroovyObject(owner)) return null;
+        if (!isReachable(owner)) return skip(owner, "it is not visible to classes in its package");
+
+        List<ExecutableElement> methods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(owner));
+        Map<String, Member> members = new LinkedHashMap<String, Member>();
+
+        for (ExecutableElement method : ElementFilter.methodsIn(owner.getEnclosedElements())) {
+            Preference annotation = method.getAnnotation(Preference.class);
+            if (null == annotation || method.getModifiers().contains(Modifier.STATIC)) continue;
+            String propertyName = propertyName(method);
+            if (null == propertyName) {
+                return skip(owner, method.getSimpleName() + "() is not a property accessor");
+            }
+            ExecutableElement setter = findSetter(methods, propertyName);
+            ExecutableElement getter = findGetter(methods, propertyName);
+            if (null == setter || null == getter) {
+                return skip(owner, "property " + propertyName + " does not have both read and write methods");
+            }
+            // the setter has precedence if both accessors are annotated
+            if (null != setter.getAnnotation(Preference.class)) annotation = setter.getAnnotation(Preference.class);
+            TypeElement declaringType = (TypeElement) setter.getEnclosingElement();
+            String fqName = qualifiedName(declaringType) + "." + setter.getSimpleName();
+            members.put(propertyName, new Member(propertyName, fqName, path(declaringType, propertyName, annotation), annotation,
+                getter.getReturnType(), getter.getSimpleName().toString(), setter.getSimpleName().toString()));
+        }
+
+        for (VariableElement field : ElementFilter.fieldsIn(owner.getEnclosedElements())) {
+            Preference annotation = field.getAnnotation(Preference.class);
+            String fieldName = field.getSimpleName().toString();
+            if (null == annotation || field.getModifiers().contains(Modifier.STATIC) || members.containsKey(fieldName)) {
+                continue;
+            }
+            ExecutableElement setter = findSetter(methods, fieldName);
+            ExecutableElement getter = findGetter(methods, fieldName);
+            boolean fieldReachable = !field.getModifiers().contains(Modifier.PRIVATE);
+            if ((null == setter || null == getter) && !fieldReachable) {
+                return skip(owner, "field " + fieldName + " is private and has no accessors");
+            }
+            String fqName = qualifiedName(owner) + "." + fieldName;
+            members.put(fieldName, new Member(fieldName, fqName, path(owner, fieldName, annotation), annotation, field.asType(),
+                null != getter ? getter.getSimpleName().toString() : null,
+                null != setter ? setter.getSimpleName().toString() : null));
+        }
+
+        return new ArrayList<Member>(members.values());
+    }
+
+    private List<Member> skip(TypeElement owner, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+            "Preferences of " + owner.getQualifiedName() + " will be resolved at runtime because " + reason, owner);
+        return null;
+    }
+
+    private boolean isGroovyObject(TypeElement type) {
+        TypeElement groovyObject = processingEnv.getElementUtils().getTypeElement("groovy.lang.GroovyObject");
+        return null != groovyObject && processingEnv.getTypeUtils().isAssignable(type.asType(), groovyObject.asType());
+    }
+
+    private boolean isReachable(TypeElement type) {
+        Element element = type;
+        while (element instanceof TypeElement) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) return false;
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private ExecutableElement findGetter(List<ExecutableElement> methods, String propertyName) {
+        String suffix = capitalize(propertyName);
+        for (ExecutableElement method : methods) {
+            String name = method.getSimpleName().toString();
+            if (!isAccessor(method) || !method.getParameters().isEmpty()) continue;
+            TypeKind kind = method.getReturnType().getKind();
+            if (name.equals("get" + suffix) && kind != TypeKind.VOID) return method;
+            if (name.equals("is" + suffix) && kind == TypeKind.BOOLEAN) return method;
+        }
+        return null;
+    }
+
+    private ExecutableElement findSetter(List<ExecutableElement> methods, String propertyName) {
+        String name = "set" + capitalize(propertyName);
+        for (ExecutableElement method : methods) {
+            if (isAccessor(method) && method.getParameters().size() == 1 && method.getSimpleName().contentEquals(name)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private boolean isAccessor(ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        return !modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.PRIVATE);
+    }
+
+    private String propertyName(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        if (name.startsWith("set") && name.length() > 3 && method.getParameters().size() == 1) {
+            return Introspector.decapitalize(name.substring(3));
+        } else if (name.startsWith("get") && name.length() > 3 && method.getParameters().isEmpty()) {
+            return Introspector.decapitalize(name.substring(3));
+        } else if (name.startsWith("is") && name.length() > 2 && method.getParameters().isEmpty()) {
+            return Introspector.decapitalize(name.substring(2));
+        }
+        return null;
+    }
+
+    private String path(TypeElement declaringType, String name, Preference annotation) {
+        if (annotation.key().trim().length() > 0) return annotation.key();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(declaringType).toString();
+        return "/" + binaryName.replace('$', '/').replace('.', '/') + "." + name;
+    }
+
+    private String qualifiedName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString().replace('$', '.');
+    }
+
+    private void generateInjector(TypeElement owner, String binaryName, List<Member> members) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(owner).getQualifiedName().toString();
+        String simpleName = packageName.length() > 0 ? binaryName.substring(packageName.length() + 1) : binaryName;
+        String injectorName = simpleName + PreferencesInjector.CLASS_NAME_SUFFIX;
+        String ownerType = owner.getQualifiedName().toString();
+
+        JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(
+            (packageName.length() > 0 ? packageName + "." : "") + injectorName, owner);
+        PrintWriter out = new PrintWriter(sourceFile.openWriter());
+        try {
+            if (packageName.length() > 0) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("public final class " + injectorName + " implements griffon.plugins.preferences.PreferencesInjector {");
+            out.println("    public griffon.plugins.preferences.InjectedPreference[] getPreferences() {");
+            out.println("        return new griffon.plugins.preferences.InjectedPreference[]{");
+            for (Member member : members) {
+                out.println("            new griffon.plugins.preferences.InjectedPreference(" +
+                    literal(member.name) + ", " +
+                    literal(member.fqName) + ", " +
+                    literal(member.path) + ", " +
+                    literal(member.annotation.args()) + ", " +
+                    literal(member.annotation.defaultValue()) + ", " +
+                    literal(member.annotation.format()) + ", " +
+                    typeName(member.type) + ".class),");
+            }
+            out.println("        };");
+            out.println("    }");
+            out.println();
+            out.println("    public Object getValue(Object instance, int index) {");
+            out.println("        " + ownerType + " target = (" + ownerType + ") instance;");
+            out.println("        switch (index) {");
+            for (int i = 0; i < members.size(); i++) {
+                Member member = members.get(i);
+                String read = null != member.getter ? member.getter + "()" : member.name;
+                out.println("            case " + i + ": return target." + read + ";");
+            }
+            out.println("            default: throw new IndexOutOfBoundsException(String.valueOf(index));");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+            out.println("    public void setValue(Object instance, int index, Object value) {");
+            out.println("        " + ownerType + " target = (" + ownerType + ") instance;");
+            out.println("        switch (index) {");
+            for (int i = 0; i < members.size(); i++) {
+                Member member = members.get(i);
+                String cast = "(" + boxedTypeName(member.type) + ") value";
+                if (null != member.setter) {
+                    out.println("            case " + i + ": target." + member.setter + "(" + cast + "); break;");
+                } else {
+                    out.println("            case " + i + ": target." + member.name + " = " + cast + "; break;");
+                }
+            }
+            out.println("            default: throw new IndexOutOfBoundsException(String.valueOf(index));");
+            out.println("        }");
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private String typeName(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private String boxedTypeName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString();
+        }
+        return typeName(type);
+    }
+
+    private static String capitalize(String name) {
+        return name.substring(0, 1).toUpperCase(Locale.ENGLISH) + name.substring(1);
+    }
+
+    private static String literal(String[] values) {
+        StringBuilder sb = new StringBuilder("new String[]{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(literal(values[i]));
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String literal(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static class Member {
+        private final String name;
+        private final String fqName;
+        private final String path;
+        private final Preference annotation;
+        private final TypeMirror type;
+        private final String getter;
+        private final String setter;
+
+        private Member(String name, String fqName, String path, Preference annotation, TypeMirror type, String getter, String setter) {
+            this.name = name;
+            this.fqName = fqName;
+            this.path = path;
+            this.annotation = annotation;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+}
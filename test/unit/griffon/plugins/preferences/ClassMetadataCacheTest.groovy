@@ -0,0 +1,38 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.ClassMetadataCache
+import org.codehaus.griffon.runtime.prefs.DefaultPreferencesManager
+
+class ClassMetadataCacheTest extends GroovyTestCase {
+    void testValuesAreComputedOncePerClass() {
+        List<Class> computed = []
+        ClassMetadataCache<String> cache = new ClassMetadataCache<String>() {
+            protected String computeValue(Class<?> type) {
+                computed << type
+                type.simpleName
+            }
+        }
+
+        assert cache.get(String) == 'String'
+        assert cache.get(String) == 'String'
+        assert cache.get(Integer) == 'Integer'
+        assert cache.get(String) == 'String'
+        assert computed == [String, Integer]
+        assert cache.hitCount == 2
+        assert cache.missCount == 2
+        assert cache.size() == 2
+
+        cache.remove(String)
+        assert cache.get(String) == 'String'
+        assert cache.missCount == 3
+        cache.clear()
+        assert cache.size() == 0
+    }
+
+    void testManagerInspectsEachClassOnce() {
+        DefaultPreferencesManager manager = new DefaultPreferencesManager(PreferencesManagerTest.createApplication())
+        10.times { manager.injectPreferences(new ChurnModel()) }
+        assert manager.metadataCache.missCount == 1
+        assert manager.metadataCache.hitCount == 9
+    }
+}
@@ -0,0 +1,161 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.DefaultPreferences
+import org.codehaus.griffon.runtime.prefs.dispatch.IsolatedPreferenceChangeListener
+import org.codehaus.griffon.runtime.prefs.metrics.InMemoryPreferencesMetrics
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+
+import static org.codehaus.griffon.runtime.prefs.dispatch.IsolatedPreferenceChangeListener.OverflowPolicy.*
+import static org.codehaus.griffon.runtime.prefs.dispatch.IsolatedPreferenceChangeListener.State
+
+class IsolatedListenerTest extends GroovyTestCase {
+    void testSlowListenerDoesNotHoldUpWritersNorFastListeners() {
+        DefaultPreferences prefs = new DefaultPreferences()
+        CountDownLatch release = new CountDownLatch(1)
+        List<Object> slow = new CopyOnWriteArrayList<Object>()
+        List<Object> fast = []
+        IsolatedPreferenceChangeListener isolated = new IsolatedPreferenceChangeListener({
+            release.await()
+            slow << it.newValue
+        } as PreferenceChangeListener, COALESCE_LATEST_PER_KEY, 10).withName('slow')
+        prefs.addPreferencesChangeListener(isolated)
+        prefs.addPreferencesChangeListener({ fast << it.newValue } as PreferenceChangeListener)
+
+        (1..1000).each { prefs.node('/window')['width'] = it }
+        prefs.node('/window')['height'] = 1
+        assert fast.size() == 1001
+        assert isolated.pendingCount <= 2
+        waitFor { isolated.lagMillis > 0 }
+
+        release.countDown()
+        waitFor { isolated.pendingCount == 0 && slow.size() >= 2 && slow[-2..-1] as Set == [1000, 1] as Set }
+        assert isolated.droppedCount == 0
+        assert isolated.deliveredCount < 1001
+    }
+
+    void testDropOldestKeepsTheLatestEvents() {
+        CountDownLatch release = new CountDownLatch(1)
+        CountDownLatch started = new CountDownLatch(1)
+        List<Object> received = new CopyOnWriteArrayList<Object>()
+        IsolatedPreferenceChangeListener isolated = new IsolatedPreferenceChangeListener({
+            started.countDown()
+            release.await()
+            received << it.newValue
+        } as PreferenceChangeListener, DROP_OLDEST, 3)
+
+        isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', null, 0))
+        assert started.await(5, TimeUnit.SECONDS)
+        (1..10).each { isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', it - 1, it)) }
+        assert isolated.droppedCount == 7
+        release.countDown()
+        waitFor { received.size() == 4 }
+        assert received == [0, 8, 9, 10]
+    }
+
+    void testBlockTimesOutAndTheCircuitOpens() {
+        CountDownLatch release = new CountDownLatch(1)
+        IsolatedPreferenceChangeListener isolated = new IsolatedPreferenceChangeListener({
+            release.await()
+        } as PreferenceChangeListener, BLOCK, 1)
+            .withTimeout(50, TimeUnit.MILLISECONDS)
+            .withCircuitBreaker(2, 1, TimeUnit.HOURS)
+
+        isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', null, 1))
+        waitFor { isolated.pendingCount == 0 }
+        isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', 1, 2))
+        long start = System.nanoTime()
+        isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', 2, 3))
+        assert isolated.state == State.OPEN
+        assert TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000
+        isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', 3, 4))
+        assert isolated.droppedCount == 3
+        assert isolated.pendingCount == 0
+        release.countDown()
+    }
+
+    void testFailingListenerTripsTheBreakerAndRecovers() {
+        boolean failing = true
+        List<Object> received = new CopyOnWriteArrayList<Object>()
+        IsolatedPreferenceChangeListener isolated = new IsolatedPreferenceChangeListener({
+            if (failing) throw new IllegalStateException('boom')
+            received << it.newValue
+        } as PreferenceChangeListener, DROP_OLDEST, 100)
+            .withExecutor({ it.run() } as java.util.concurrent.Executor)
+            .withCircuitBreaker(3, 50, TimeUnit.MILLISECONDS)
+
+        (1..3).each { isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', null, it)) }
+        assert isolated.state == State.OPEN
+        assert isolated.failedCount == 3
+        isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', null, 4))
+        assert isolated.droppedCount == 1
+
+        failing = false
+        Thread.sleep(100)
+        isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', null, 5))
+        assert isolated.state == State.CLOSED
+        assert received == [5]
+    }
+
+    void testLagIsReportedAsMetrics() {
+        DefaultPreferences prefs = new DefaultPreferences()
+        InMemoryPreferencesMetrics metrics = new InMemoryPreferencesMetrics()
+        IsolatedPreferenceChangeListener isolated = new IsolatedPreferenceChangeListener({} as PreferenceChangeListener, BLOCK, 10).withName('sync')
+        prefs.addPreferencesChangeListener('/remote', isolated)
+        prefs.metrics = metrics
+        prefs.addPreferencesChangeListener(isolated)
+        assert metrics.gauges.keySet().containsAll(['listener.lag.sync', 'listener.pending.sync', 'listener.dropped.sync'])
+    }
+
+    void testGaugesAreUniquePerListenerAndUnregisteredOnRemoval() {
+        DefaultPreferences prefs = new DefaultPreferences()
+        InMemoryPreferencesMetrics metrics = new InMemoryPreferencesMetrics()
+        prefs.metrics = metrics
+        IsolatedPreferenceChangeListener first = new IsolatedPreferenceChangeListener(new RecordingListener(), BLOCK, 10)
+        IsolatedPreferenceChangeListener second = new IsolatedPreferenceChangeListener(new RecordingListener(), BLOCK, 10)
+        assert first.name != second.name
+        prefs.addPreferencesChangeListener(first)
+        prefs.addPreferencesChangeListener('/a', second)
+        prefs.addPreferencesChangeListener('/b', second)
+        assert metrics.gauges.keySet().findAll { it.startsWith('listener.') }.size() == 6
+
+        prefs.removePreferencesChangeListener(first)
+        assert !metrics.gauges.keySet().any { it.endsWith(first.name) }
+        prefs.removePreferencesChangeListener('/a', second)
+        assert metrics.gauges.containsKey('listener.lag.' + second.name)
+        prefs.removePreferencesChangeListener('/b', second)
+        assert !metrics.gauges.keySet().any { it.startsWith('listener.') }
+    }
+
+    void testListenerSurvivesAnError() {
+        List<Object> received = []
+        IsolatedPreferenceChangeListener isolated = new IsolatedPreferenceChangeListener({
+            if (it.newValue == 'error') throw new Error('boom')
+            received << it.newValue
+        } as PreferenceChangeListener, BLOCK, 10).withExecutor({ it.run() } as Executor)
+
+        shouldFail(Error) { isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', null, 'error')) }
+        isolated.preferenceChanged(new PreferenceChangeEvent('/', 'key', 'error', 'next'))
+        assert received == ['next']
+        assert isolated.pendingCount == 0
+    }
+
+    private static void waitFor(Closure<Boolean> condition) {
+        long deadline = System.currentTimeMillis() + 10000
+        while (!condition()) {
+            assert System.currentTimeMillis() < deadline
+            Thread.sleep(5)
+        }
+    }
+}
+
+class RecordingListener implements PreferenceChangeListener {
+    final List<PreferenceChangeEvent> events = []
+
+    void preferenceChanged(PreferenceChangeEvent event) {
+        events << event
+    }
+}
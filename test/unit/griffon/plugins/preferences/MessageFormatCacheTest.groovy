@@ -0,0 +1,39 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.MessageFormatCache
+
+import java.text.MessageFormat
+
+class MessageFormatCacheTest extends GroovyTestCase {
+    void testFormatsAreParsedOncePerPatternAndLocale() {
+        MessageFormatCache cache = new MessageFormatCache(4)
+        assert cache.format('{0} of {1}', ['one', 'two'] as Object[]) == 'one of two'
+
+        MessageFormat format = cache.getFormat('{0} of {1}', Locale.getDefault())
+        assert cache.getFormat('{0} of {1}', Locale.getDefault()).is(format)
+        assert !cache.getFormat('{0} of {1}', Locale.GERMAN).is(cache.getFormat('{0} of {1}', Locale.FRENCH))
+        assert cache.size() == 3
+    }
+
+    void testLeastRecentlyUsedFormatsAreEvicted() {
+        MessageFormatCache cache = new MessageFormatCache(2)
+        MessageFormat first = cache.getFormat('first {0}', Locale.ENGLISH)
+        MessageFormat second = cache.getFormat('second {0}', Locale.ENGLISH)
+        assert cache.getFormat('first {0}', Locale.ENGLISH).is(first)
+
+        cache.getFormat('third {0}', Locale.ENGLISH)
+        assert cache.size() == 2
+        assert cache.getFormat('first {0}', Locale.ENGLISH).is(first)
+        assert !cache.getFormat('second {0}', Locale.ENGLISH).is(second)
+
+        cache.clear()
+        assert cache.size() == 0
+    }
+
+    void testZeroSizeDisablesCaching() {
+        MessageFormatCache cache = new MessageFormatCache(0)
+        assert !cache.getFormat('{0}', Locale.ENGLISH).is(cache.getFormat('{0}', Locale.ENGLISH))
+        assert cache.format('{0}!', ['hi'] as Object[]) == 'hi!'
+        assert cache.size() == 0
+    }
+}
@@ -0,0 +1,81 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.PersistentPreferences
+
+class PersistentPreferencesTest extends GroovyTestCase {
+    void testNodesAndEvents() {
+        Preferences prefs = new PersistentPreferences()
+        PrefsChangeListener changeListener = new PrefsChangeListener()
+        PrefsStructureListener nodeListener = new PrefsStructureListener()
+        prefs.addPreferencesChangeListener(changeListener)
+        prefs.addNodeChangeListener(nodeListener)
+
+        PreferencesNode barNode = prefs.node('/foo/bar')
+        assert nodeListener.event.path == '/foo/bar'
+        assert nodeListener.event.type == NodeChangeEvent.Type.ADDED
+        assert barNode == prefs.node('/foo/bar')
+        assert prefs.node('/foo').children() == [bar: barNode]
+        assert barNode.parent() == prefs.node('/foo')
+
+        barNode['key'] = 'value'
+        assert changeListener.event.path == '/foo/bar'
+        assert changeListener.event.newValue == 'value'
+        changeListener.event = null
+        barNode['key'] = 'value'
+        assert !changeListener.event
+        assert prefs.node('foo.bar')['key'] == 'value'
+
+        PreferencesNode removed = prefs.removeNode('/foo/bar')
+        assert nodeListener.event.type == NodeChangeEvent.Type.REMOVED
+        assert removed['key'] == 'value'
+        assert !prefs.node('/foo').children()
+        // views of removed nodes ignore writes
+        barNode['key'] = 'other'
+        assert !barNode.containsKey('key')
+    }
+
+    void testLookupsDoNotAllocateStamps() {
+        Preferences prefs = new PersistentPreferences()
+        prefs.node('/a/b')['key'] = 'value'
+        long saved = prefs.currentStamp()
+        100.times {
+            assert prefs.node('/a/b')['key'] == 'value'
+            prefs.node('/a').node('b')
+        }
+        assert prefs.currentStamp() == saved
+    }
+
+    void testCopiesShareStructureUntilWritten() {
+        Preferences prefs = new PersistentPreferences()
+        (0..<100).each { i -> (0..<10).each { j -> prefs.node("/doc${i}/section${j}")['title'] = "section${j}".toString() } }
+
+        Preferences copy = prefs.copy()
+        copy.node('/doc1/section1')['title'] = 'changed'
+        copy.removeNode('/doc2')
+        prefs.node('/doc3')['added'] = true
+
+        assert prefs.node('/doc1/section1')['title'] == 'section1'
+        assert copy.node('/doc1/section1')['title'] == 'changed'
+        assert prefs.root.getChildNode('doc2')
+        assert !copy.root.getChildNode('doc2')
+        assert !copy.node('/doc3').containsKey('added')
+        assert copy.root.children().size() == 99
+    }
+
+    void testMergeAndTypedAccessors() {
+        Preferences source = new PersistentPreferences()
+        source.node('/a/b')['key'] = 'value'
+        source.node('/a').putInt('count', 3)
+
+        Preferences target = new PersistentPreferences()
+        target.root.merge(source.root)
+        assert target.node('/a/b')['key'] == 'value'
+        assert target.node('/a').getInt('count', 0) == 3
+
+        PreferencesNode created = target.node('/a').createChildNode('c')
+        created['key'] = 'detached'
+        target.node('/a').storeChildNode('c', created)
+        created['key'] = 'attached'
+        assert target.node('/a/c')['key'] == 'attached'
+    }
+}
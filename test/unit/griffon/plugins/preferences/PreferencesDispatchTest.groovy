@@ -0,0 +1,93 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.DefaultPreferences
+import org.codehaus.griffon.runtime.prefs.PersistentPreferences
+import org.codehaus.griffon.runtime.prefs.dispatch.ExecutorPreferencesEventDispatcher
+import org.codehaus.griffon.runtime.prefs.dispatch.SynchronousPreferencesEventDispatcher
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+
+class PreferencesDispatchTest extends GroovyTestCase {
+    void testEventsOfAPathAreDeliveredInOrder() {
+        [new DefaultPreferences(), new PersistentPreferences()].each { prefs ->
+            ExecutorPreferencesEventDispatcher dispatcher = ExecutorPreferencesEventDispatcher.withThreads(4)
+            prefs.dispatcher = dispatcher
+            Map<String, List<Integer>> received = new ConcurrentHashMap<String, List<Integer>>()
+            prefs.addPreferencesChangeListener({ PreferenceChangeEvent e ->
+                received.get(e.path).add(e.newValue)
+            } as PreferenceChangeListener)
+
+            List<String> paths = (0..<8).collect { "/node${it}".toString() }
+            paths.each { received[it] = new CopyOnWriteArrayList<Integer>(); prefs.node(it) }
+            List<Thread> writers = paths.collect { path ->
+                Thread.start { (1..500).each { prefs.node(path)['count'] = it } }
+            }
+            writers*.join()
+
+            assert dispatcher.awaitDrained(10, TimeUnit.SECONDS)
+            assert dispatcher.queueDepth == 0
+            paths.each { assert received[it] == (1..500).toList() }
+            dispatcher.shutdown()
+        }
+    }
+
+    void testLaneKeepsDeliveringAfterAnError() {
+        DefaultPreferences prefs = new DefaultPreferences()
+        ExecutorService executor = Executors.newSingleThreadExecutor({ Runnable r ->
+            Thread thread = new Thread(r)
+            thread.uncaughtExceptionHandler = { t, e -> } as Thread.UncaughtExceptionHandler
+            thread
+        } as ThreadFactory)
+        ExecutorPreferencesEventDispatcher dispatcher = new ExecutorPreferencesEventDispatcher(executor, 1)
+        prefs.dispatcher = dispatcher
+        List<Object> received = new CopyOnWriteArrayList<Object>()
+        prefs.addPreferencesChangeListener({ PreferenceChangeEvent e ->
+            if (e.newValue == 'error') throw new Error('boom')
+            received << e.newValue
+        } as PreferenceChangeListener)
+
+        prefs.node('/foo')['key'] = 'error'
+        prefs.node('/foo')['key'] = 'next'
+        assert dispatcher.awaitDrained(10, TimeUnit.SECONDS)
+        prefs.node('/foo')['key'] = 'last'
+        assert dispatcher.awaitDrained(10, TimeUnit.SECONDS)
+        assert received == ['next', 'last']
+
+        dispatcher.shutdown()
+        executor.shutdown()
+    }
+
+    void testSlowListenerDoesNotBlockWriters() {
+        DefaultPreferences prefs = new DefaultPreferences()
+        ExecutorPreferencesEventDispatcher dispatcher = ExecutorPreferencesEventDispatcher.withThreads(1)
+        prefs.dispatcher = dispatcher
+        CountDownLatch release = new CountDownLatch(1)
+        List<ChangeBatchEvent> batches = new CopyOnWriteArrayList<ChangeBatchEvent>()
+        prefs.addPreferencesChangeListener({ release.await() } as PreferenceChangeListener)
+        prefs.addChangeBatchListener({ batches << it } as ChangeBatchListener)
+
+        prefs.node('/foo')['key'] = 'value1'
+        prefs.node('/foo')['key'] = 'value2'
+        prefs.beginTransaction().put('/bar', 'key', 'value').commit()
+        assert dispatcher.queueDepth > 0
+        assert !dispatcher.awaitDrained(50, TimeUnit.MILLISECONDS)
+        assert prefs.node('/foo')['key'] == 'value2'
+
+        release.countDown()
+        assert dispatcher.awaitDrained(10, TimeUnit.SECONDS)
+        assert batches.size() == 1
+
+        dispatcher.shutdown()
+        prefs.node('/foo')['key'] = 'value3'
+        assert dispatcher.queueDepth == 0
+
+        prefs.dispatcher = null
+        assert prefs.dispatcher.is(SynchronousPreferencesEventDispatcher.INSTANCE)
+    }
+}
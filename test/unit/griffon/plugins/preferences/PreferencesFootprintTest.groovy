@@ -0,0 +1,80 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.AbstractPreferencesNode
+import org.codehaus.griffon.runtime.prefs.CompactPreferences
+import org.codehaus.griffon.runtime.prefs.CompactPreferencesNode
+import org.codehaus.griffon.runtime.prefs.DefaultPreferences
+
+import java.lang.reflect.Field
+
+class PreferencesFootprintTest extends GroovyTestCase {
+    private static final int NODES_PER_DOCUMENT = 100
+
+    void testCompactNodesKeepNoPerNodeStructuresUntilNeeded() {
+        Preferences prefs = new CompactPreferences()
+        populate(prefs, 1)
+        CompactPreferencesNode first = (CompactPreferencesNode) prefs.node('/doc0/section0/item0')
+        CompactPreferencesNode second = (CompactPreferencesNode) prefs.node('/doc0/section0/item1')
+
+        // leaves share the same empty child array
+        assert first.@nodes.is(second.@nodes)
+        // paths are computed from the parent chain rather than stored
+        first.path()
+        Field path = AbstractPreferencesNode.getDeclaredField('path')
+        path.accessible = true
+        assert null == path.get(first)
+        // keys are interned and kept in a flat array until the threshold
+        assert first.@properties instanceof Object[]
+        assert first.@properties[0].is('title'.intern())
+        (0..<6).each { first["key${it}"] = it }
+        assert first.@properties instanceof Object[]
+        first['key6'] = 6
+        assert first.@properties instanceof Map
+        first.clear()
+        assert first.@properties instanceof Object[]
+        assert first.@properties.length == 0
+    }
+
+    void testCompactNodesBehaveLikeDefaultNodes() {
+        [new DefaultPreferences(), new CompactPreferences()].each { Preferences prefs ->
+            populate(prefs, 3)
+            PreferencesNode node = prefs.node('/doc1/section2/item3')
+            assert node.path() == '/doc1/section2/item3'
+            assert node['width'] == 3
+            assert node.keys().toList().sort() == ['title', 'width']
+            assert prefs.node('/doc1').children().keySet().toList() == (0..<10).collect { "section${it}".toString() }
+
+            (0..<20).each { node["key${it}"] = it }
+            assert node['key19'] == 19
+            node.remove('key19')
+            assert !node.containsKey('key19')
+
+            Preferences copy = prefs.copy()
+            assert copy.node('/doc2/section9/item9')['title'] == 'item9'
+        }
+    }
+
+    void testClearAfterGrowingPastTheArrayThreshold() {
+        [new DefaultPreferences(), new CompactPreferences()].each { Preferences prefs ->
+            PreferencesNode node = prefs.node('/wide')
+            (0..13).each { node["k${it}"] = it }
+            (0..8).each { node.remove("k${it}") }
+            assert node.keys().size() == 5
+            node.clear()
+            assert !node.keys()
+            assert !node.containsKey('k13')
+        }
+    }
+
+    private static void populate(Preferences prefs, int documents) {
+        for (int d = 0; d < documents; d++) {
+            for (int s = 0; s < 10; s++) {
+                for (int i = 0; i < NODES_PER_DOCUMENT / 10; i++) {
+                    PreferencesNode node = prefs.node("/doc${d}/section${s}/item${i}")
+                    node['title'] = 'item' + i
+                    node['width'] = i
+                }
+            }
+        }
+    }
+}
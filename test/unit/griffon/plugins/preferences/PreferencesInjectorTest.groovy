@@ -0,0 +1,158 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.DefaultPreferencesManager
+import org.codehaus.griffon.runtime.prefs.processor.PreferencesInjectorProcessor
+
+import javax.tools.JavaCompiler
+import javax.tools.ToolProvider
+
+class PreferencesInjectorTest extends GroovyTestCase {
+    private static final List<String> MEMBERS = ['plain', 'count', 'title', 'enabled', 'both', 'broken', 'last']
+
+    private static final String JAVA_SOURCE = '''
+package sample;
+
+import griffon.plugins.preferences.Preference;
+import griffon.plugins.preferences.PreferencesAware;
+
+@PreferencesAware
+public class JavaModel {
+    @Preference(defaultValue = "plain")
+    public String plain;
+    @Preference(key = "/custom/java.count", defaultValue = "1")
+    public int count;
+    private String title;
+    private boolean enabled;
+    private String both;
+    private String broken;
+    @Preference(defaultValue = "last")
+    public String last;
+
+    @Preference(defaultValue = "title")
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    @Preference(defaultValue = "false")
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    @Preference(key = "/from/getter.both")
+    public String getBoth() { return both; }
+    @Preference(key = "/from/setter.both")
+    public void setBoth(String both) { this.both = both; }
+
+    public String getBroken() { return broken; }
+    @Preference(defaultValue = "broken")
+    public void setBroken(String broken) { throw new IllegalStateException("broken"); }
+}
+'''
+
+    private static final String GROOVY_SOURCE = '''
+package sample
+
+import griffon.plugins.preferences.Preference
+import griffon.plugins.preferences.PreferencesAware
+
+@PreferencesAware
+class GroovyModel {
+    @Preference(defaultValue = 'plain')
+    String plain
+    @Preference(key = '/custom/groovy.count', defaultValue = '1')
+    int count
+    private String title
+    private boolean enabled
+    private String both
+    private String broken
+    @Preference(defaultValue = 'last')
+    String last
+
+    @Preference(defaultValue = 'title')
+    String getTitle() { title }
+    void setTitle(String title) { this.title = title }
+
+    @Preference(defaultValue = 'false')
+    boolean isEnabled() { enabled }
+    void setEnabled(boolean enabled) { this.enabled = enabled }
+
+    @Preference(key = '/from/getter.both')
+    String getBoth() { both }
+    @Preference(key = '/from/setter.both')
+    void setBoth(String both) { this.both = both }
+
+    String getBroken() { broken }
+    @Preference(defaultValue = 'broken')
+    void setBroken(String broken) { throw new IllegalStateException('broken') }
+}
+'''
+
+    void testJavaInjectorMatchesReflection() {
+        Class<?> type = compileJava()
+        assertInjectorMatchesReflection(type, '/custom/java')
+    }
+
+    void testGroovyInjectorMatchesReflection() {
+        Class<?> type = new GroovyClassLoader(getClass().classLoader).parseClass(GROOVY_SOURCE)
+        assertInjectorMatchesReflection(type, '/custom/groovy')
+    }
+
+    private void assertInjectorMatchesReflection(Class<?> type, String countNodePath) {
+        Class<?> injectorType = Class.forName(type.name + PreferencesInjector.CLASS_NAME_SUFFIX, false, type.classLoader)
+        assert (injectorType.newInstance() as PreferencesInjector).preferences*.name as Set == MEMBERS as Set
+
+        RecordingPreferencesManager generated = new RecordingPreferencesManager(false)
+        RecordingPreferencesManager reflective = new RecordingPreferencesManager(true)
+        Map<String, Object> snapshots = [:]
+        [generated, reflective].each { RecordingPreferencesManager manager ->
+            manager.preferences.node(countNodePath)['count'] = 42
+            manager.preferences.node('/from/getter')['both'] = 'getter'
+            manager.preferences.node('/from/setter')['both'] = 'setter'
+            manager.preferences.node('/sample/' + type.simpleName)['title'] = 'stored'
+
+            Object instance = type.newInstance()
+            manager.injectPreferences(instance)
+            manager.preferences.node('/sample/' + type.simpleName)['plain'] = 'updated'
+            manager.preferences.node('/sample/' + type.simpleName)['enabled'] = true
+            snapshots[manager.reflective ? 'reflective' : 'generated'] = MEMBERS.collectEntries { [it, instance[it]] }
+        }
+
+        assert generated.injectors.any { it?.class == injectorType }
+        assert !reflective.injectors.any()
+        assert snapshots.generated == snapshots.reflective
+        assert snapshots.generated == [plain: 'updated', count: 42, title: 'stored', enabled: true, both: 'setter', broken: null, last: 'last']
+    }
+
+    private static Class<?> compileJava() {
+        File sources = File.createTempDir()
+        File classes = File.createTempDir()
+        File source = new File(sources, 'sample/JavaModel.java')
+        source.parentFile.mkdirs()
+        source.text = JAVA_SOURCE
+
+        JavaCompiler compiler = ToolProvider.systemJavaCompiler
+        def fileManager = compiler.getStandardFileManager(null, null, null)
+        def task = compiler.getTask(null, fileManager, null,
+            ['-classpath', System.getProperty('java.class.path'), '-d', classes.absolutePath, '-s', sources.absolutePath],
+            null, fileManager.getJavaFileObjects(source))
+        task.processors = [new PreferencesInjectorProcessor()]
+        assert task.call()
+        fileManager.close()
+
+        new URLClassLoader([classes.toURI().toURL()] as URL[], PreferencesInjectorTest.classLoader).loadClass('sample.JavaModel')
+    }
+}
+
+class RecordingPreferencesManager extends DefaultPreferencesManager {
+    final boolean reflective
+    final List<PreferencesInjector> injectors = []
+
+    RecordingPreferencesManager(boolean reflective) {
+        super(PreferencesManagerTest.createApplication())
+        this.reflective = reflective
+    }
+
+    protected PreferencesInjector resolveInjector(Class klass) {
+        PreferencesInjector injector = reflective ? null : super.resolveInjector(klass)
+        injectors << injector
+        injector
+    }
+}
@@ -0,0 +1,112 @@
+package griffon.plugins.preferences
+
+import griffon.plugins.preferences.journal.JournalEntry
+import groovy.json.JsonSlurper
+import org.codehaus.griffon.runtime.prefs.DefaultPreferences
+import org.codehaus.griffon.runtime.prefs.PersistentPreferences
+import org.codehaus.griffon.runtime.prefs.journal.FileJournalSink
+import org.codehaus.griffon.runtime.prefs.journal.RingBufferPreferencesJournal
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class PreferencesJournalTest extends GroovyTestCase {
+    void testReplayFromSequence() {
+        [new DefaultPreferences(), new PersistentPreferences()].each { prefs ->
+            RingBufferPreferencesJournal journal = new RingBufferPreferencesJournal(4)
+            prefs.journal = journal
+            assert journal.firstSequence == 1
+            assert journal.lastSequence == 0
+            assert !journal.entriesFrom(1)
+
+            prefs.node('/window')['width'] = 100
+            prefs.node('/window')['width'] = 200
+            assert journal.lastSequence == 3
+            assert journal.entriesFrom(1)*.sequence == [1, 2, 3]
+            assert journal.entriesFrom(1)[0].nodeEvent.path == '/window'
+            assert journal.entriesFrom(3)[0].preferenceEvent.newValue == 200
+
+            List<PreferenceChangeEvent> changes = []
+            List<NodeChangeEvent> nodes = []
+            long last = journal.replay(2, { changes << it } as PreferenceChangeListener, { nodes << it } as NodeChangeListener)
+            assert last == 3
+            assert changes*.newValue == [100, 200]
+            assert !nodes
+            assert journal.replay(4, null, null) == 3
+
+            prefs.beginBatch()
+            prefs.node('/window')['height'] = 1
+            prefs.node('/window')['height'] = 2
+            prefs.endBatch()
+            prefs.node('/window')['width'] = 300
+            prefs.node('/window')['width'] = 400
+            assert journal.lastSequence == 6
+            assert journal.firstSequence == 3
+            assert journal.entriesFrom(1)*.sequence == [3, 4, 5, 6]
+            assert journal.entriesFrom(4)[0].preferenceEvent.oldValue == null
+            assert journal.entriesFrom(4)[0].preferenceEvent.newValue == 2
+        }
+    }
+
+    void testFileSinkAppendsOneLinePerEntry() {
+        File file = File.createTempFile('preferences', '.journal')
+        file.deleteOnExit()
+        DefaultPreferences prefs = new DefaultPreferences()
+        FileJournalSink sink = new FileJournalSink(file)
+        prefs.journal = new RingBufferPreferencesJournal(2, sink)
+
+        prefs.node('/window')['width'] = 100
+        prefs.node('/window')['title'] = new StringBuilder('Sample')
+        prefs.removeNode('/window')
+        sink.close()
+        sink.append(new JournalEntry(99, 0, new NodeChangeEvent('/ignored', NodeChangeEvent.Type.ADDED)))
+
+        List<Map> lines = file.readLines().collect { new JsonSlurper().parseText(it) }
+        assert lines*.sequence == [1, 2, 3, 4]
+        assert lines[0].node == 'ADDED'
+        assert lines[1].key == 'width'
+        assert lines[1].newValue == 100
+        assert lines[2].newValue == 'Sample'
+        assert lines[3].node == 'REMOVED'
+        assert lines.every { it.path == '/window' }
+    }
+
+    void testFileSinkDropsEntriesWhenFullAndClosesWhenTheWriterFails() {
+        File file = File.createTempFile('preferences', '.journal')
+        file.deleteOnExit()
+        FileJournalSink sink = new FileJournalSink(file, 1)
+        CountDownLatch writing = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        def slow = new Object() {
+            String toString() {
+                writing.countDown()
+                release.await(5, TimeUnit.SECONDS)
+                'slow'
+            }
+        }
+        def failing = new Object() {
+            String toString() { throw new IllegalStateException('boom') }
+        }
+
+        sink.append(entry(1, 'slow', slow))
+        assert writing.await(5, TimeUnit.SECONDS)
+        sink.append(entry(2, 'failing', failing))
+        sink.append(entry(3, 'dropped', 3))
+        sink.append(entry(4, 'dropped', 4))
+        assert sink.droppedCount == 2
+
+        release.countDown()
+        for (int i = 0; i < 50 && !sink.closed; i++) Thread.sleep(100)
+        assert sink.closed
+        sink.append(entry(5, 'ignored', 5))
+        sink.close()
+
+        List<Map> lines = file.readLines().collect { new JsonSlurper().parseText(it) }
+        assert lines*.sequence == [1]
+        assert lines[0].newValue == 'slow'
+    }
+
+    private static JournalEntry entry(long sequence, String key, Object value) {
+        new JournalEntry(sequence, 0, new PreferenceChangeEvent('/journal', key, null, value))
+    }
+}
@@ -0,0 +1,135 @@
+package griffon.plugins.preferences
+
+import griffon.core.GriffonApplication
+import org.codehaus.griffon.runtime.prefs.DefaultPreferencesManager
+
+class PreferencesManagerTest extends GroovyTestCase {
+    private DefaultPreferencesManager preferencesManager
+
+    protected void setUp() {
+        preferencesManager = new DefaultPreferencesManager(createApplication())
+    }
+
+    void testInstanceRegistryDoesNotGrowWithInstanceChurn() {
+        int iterations = 20000
+        for (int i = 0; i < iterations; i++) {
+            preferencesManager.injectPreferences(new ChurnModel())
+            if (i % 1000 == 0) System.gc()
+        }
+
+        int registered = preferencesManager.registeredInstanceCount
+        for (int i = 0; i < 20 && registered > 0; i++) {
+            System.gc()
+            Thread.sleep(50)
+            registered = preferencesManager.registeredInstanceCount
+        }
+        assert registered < iterations / 10
+
+        // reclaimed instances no longer receive updates, live ones still do
+        ChurnModel model = new ChurnModel()
+        preferencesManager.injectPreferences(model)
+        preferencesManager.preferences.node(ChurnModel)['value'] = 'updated'
+        assert model.value == 'updated'
+    }
+
+    void testRegistryComparesInstancesByIdentity() {
+        ChurnModel model1 = new ChurnModel()
+        ChurnModel model2 = new ChurnModel()
+        preferencesManager.injectPreferences(model1)
+        preferencesManager.injectPreferences(model2)
+        preferencesManager.injectPreferences(model1)
+        assert preferencesManager.registeredInstanceCount == 2
+    }
+
+    void testSaveAllPublishesOneEventPerChangedKey() {
+        List<ChurnModel> models = (1..100).collect { new ChurnModel() }
+        models.each { preferencesManager.injectPreferences(it) }
+        List<PreferenceChangeEvent> events = []
+        preferencesManager.preferences.addPreferencesChangeListener({ events << it } as PreferenceChangeListener)
+
+        models.eachWithIndex { model, i -> model.value = 'value' + i }
+        preferencesManager.saveAll(models)
+
+        assert events.size() == 1
+        assert events[0].oldValue == 'default'
+        assert events[0].newValue == 'value99'
+        assert models.every { it.value == 'value99' }
+    }
+
+    void testMemoizedValuesAreForgottenOnChangeAndNodeRemoval() {
+        preferencesManager = new DefaultPreferencesManager(createApplication('preferences.injection.memoize': true))
+        int evaluations = 0
+        Closure greeting = { String name -> evaluations++; "Hello ${name}".toString() }
+        PreferencesNode node = preferencesManager.preferences.node(GreetingModel)
+        node['greeting'] = greeting
+
+        GreetingModel model = new GreetingModel()
+        3.times { preferencesManager.injectPreferences(model) }
+        assert model.greeting == 'Hello World'
+        assert evaluations == 1
+
+        // same closure as before, but the value changed in between
+        node['greeting'] = 'replaced'
+        node['greeting'] = greeting
+        preferencesManager.injectPreferences(model)
+        assert evaluations == 2
+
+        preferencesManager.preferences.removeNode(GreetingModel)
+        preferencesManager.preferences.node(GreetingModel)['greeting'] = greeting
+        preferencesManager.injectPreferences(model)
+        preferencesManager.injectPreferences(model)
+        assert evaluations == 3
+    }
+
+    void testCoalescedInjectionsAreFlushedOnShutdown() {
+        Map<String, List> listeners = [:]
+        ConfigObject config = new ConfigObject()
+        config.putAll('preferences.injection.coalesce': true, 'preferences.injection.coalesce.window': 60000)
+        GriffonApplication app = [
+            addApplicationEventListener: { String name, handler -> listeners.get(name, []) << handler },
+            getConfig: { config },
+            execInsideUIAsync: { Runnable runnable -> runnable.run() },
+            execInsideUISync: { Runnable runnable -> runnable.run() }
+        ] as GriffonApplication
+        DefaultPreferencesManager manager = new DefaultPreferencesManager(app)
+        ChurnModel model = new ChurnModel()
+        manager.injectPreferences(model)
+
+        String value = 'coalesced-' + System.nanoTime()
+        manager.preferences.node(ChurnModel)['value'] = value
+        assert model.value != value
+        assert Thread.allStackTraces.keySet().any { it.name == 'preferences-injection-coalescer' }
+
+        listeners[GriffonApplication.Event.SHUTDOWN_START.name].each { it.run(new Object[0]) }
+        assert model.value == value
+        for (int i = 0; i < 20 && Thread.allStackTraces.keySet().any { it.name == 'preferences-injection-coalescer' }; i++) {
+            Thread.sleep(50)
+        }
+        assert !Thread.allStackTraces.keySet().any { it.name == 'preferences-injection-coalescer' }
+    }
+
+    static GriffonApplication createApplication(Map config = [:], Map<String, List> listeners = [:]) {
+        ConfigObject configObject = new ConfigObject()
+        configObject.putAll(config)
+        [
+            addApplicationEventListener: { String name, handler -> listeners.get(name, []) << handler },
+            getConfig: { configObject }
+        ] as GriffonApplication
+    }
+}
+
+@PreferencesAware
+class ChurnModel {
+    @Preference(defaultValue = 'default')
+    String value
+
+    // every instance is equal to any other, only identity tells them apart
+    boolean equals(Object o) { o instanceof ChurnModel }
+
+    int hashCode() { 1 }
+}
+
+class GreetingModel {
+    @Preference(args = ['World'])
+    String greeting
+}
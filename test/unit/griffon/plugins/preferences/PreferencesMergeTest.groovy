@@ -0,0 +1,67 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.DefaultPreferences
+
+class PreferencesMergeTest extends GroovyTestCase {
+    private static final int DOCUMENTS = 200
+    private static final int NODES_PER_DOCUMENT = 50
+
+    void testMergeOnlyPublishesRealChanges() {
+        Preferences target = populate(new DefaultPreferences())
+        Preferences source = populate(new DefaultPreferences())
+        source.node('/doc1/item1')['width'] = 1000
+        source.node('/doc1/item1/extra')['key'] = 'value'
+
+        List<NodeChangeEvent> nodeEvents = []
+        List<PreferenceChangeEvent> changes = []
+        List<ChangeBatchEvent> batches = []
+        target.addNodeChangeListener({ nodeEvents << it } as NodeChangeListener)
+        target.addPreferencesChangeListener({ changes << it } as PreferenceChangeListener)
+        target.addChangeBatchListener({ batches << it } as ChangeBatchListener)
+
+        target.root.merge(source.root)
+
+        assert nodeEvents*.path == ['/doc1/item1/extra']
+        assert changes.collect { [it.path, it.key, it.oldValue, it.newValue] } == [
+            ['/doc1/item1', 'width', 1, 1000],
+            ['/doc1/item1/extra', 'key', null, 'value']
+        ]
+        assert batches.size() == 1
+        assert target.node('/doc1/item1/extra')['key'] == 'value'
+
+        nodeEvents.clear()
+        changes.clear()
+        target.root.merge(source.root)
+        assert !nodeEvents
+        assert !changes
+    }
+
+    void testMergeMostlyIdenticalTrees() {
+        Preferences target = populate(new DefaultPreferences())
+        Preferences source = populate(new DefaultPreferences())
+        (0..<DOCUMENTS).step(20) { source.node("/doc${it}/item0")['title'] = 'changed' }
+        List<PreferenceChangeEvent> changes = []
+        List<NodeChangeEvent> nodeEvents = []
+        target.addPreferencesChangeListener({ changes << it } as PreferenceChangeListener)
+        target.addNodeChangeListener({ nodeEvents << it } as NodeChangeListener)
+
+        target.root.merge(source.root)
+
+        assert !nodeEvents
+        assert changes*.path == (0..<DOCUMENTS).step(20).collect { "/doc${it}/item0".toString() }
+        assert changes.every { it.key == 'title' && it.newValue == 'changed' }
+        assert target.node('/doc20/item0')['title'] == 'changed'
+        assert target.node('/doc21/item0')['title'] == 'item0'
+    }
+
+    private static Preferences populate(Preferences prefs) {
+        DOCUMENTS.times { int d ->
+            NODES_PER_DOCUMENT.times { int n ->
+                PreferencesNode node = prefs.node("/doc${d}/item${n}")
+                node['title'] = "item${n}".toString()
+                node['width'] = n
+            }
+        }
+        prefs
+    }
+}
@@ -0,0 +1,83 @@
+package griffon.plugins.preferences
+
+import griffon.core.GriffonApplication
+import griffon.plugins.preferences.metrics.PreferencesMetrics
+import org.codehaus.griffon.runtime.prefs.DefaultPreferences
+import org.codehaus.griffon.runtime.prefs.DefaultPreferencesManager
+import org.codehaus.griffon.runtime.prefs.metrics.InMemoryPreferencesMetrics
+
+import javax.management.MBeanServer
+import javax.management.ObjectName
+import java.lang.management.ManagementFactory
+
+class PreferencesMetricsTest extends GroovyTestCase {
+    private static final ObjectName OBJECT_NAME = new ObjectName('griffon.plugins.preferences:type=PreferencesMetrics')
+
+    void testTimersAndGauges() {
+        InMemoryPreferencesMetrics metrics = new InMemoryPreferencesMetrics()
+        long start = System.nanoTime()
+        metrics.stopTimer('sample', start - 1000)
+        metrics.stopTimer('sample', start - 3000)
+        metrics.registerGauge('answer', { 42L } as PreferencesMetrics.Gauge)
+
+        assert metrics.counts == [sample: 2L]
+        assert metrics.totalTimes.sample >= 4000
+        assert metrics.maxTimes.sample >= 3000
+        assert metrics.getHistogram('sample').sum() == 2
+        assert metrics.getHistogram('missing').sum() == 0
+        assert metrics.gauges == [answer: 42L]
+
+        metrics.reset()
+        assert !metrics.counts
+        assert metrics.gauges == [answer: 42L]
+    }
+
+    void testManagerRecordsInjections() {
+        DefaultPreferencesManager manager = new DefaultPreferencesManager(PreferencesManagerTest.createApplication('preferences.metrics': 'memory'))
+        // instances are weakly held, keep the model reachable until the gauges are read
+        ChurnModel model = new ChurnModel()
+        manager.injectPreferences(model)
+        InMemoryPreferencesMetrics metrics = (InMemoryPreferencesMetrics) manager.metrics
+        assert metrics.counts[PreferencesMetrics.INJECT] == 1L
+        assert metrics.gauges[PreferencesMetrics.REGISTERED_INSTANCES] == 1L
+        assert metrics.gauges[PreferencesMetrics.DISPATCH_QUEUE_DEPTH] == 0L
+        assert model
+    }
+
+    void testFailingListenersAreTimed() {
+        InMemoryPreferencesMetrics metrics = new InMemoryPreferencesMetrics()
+        DefaultPreferences preferences = new DefaultPreferences()
+        preferences.metrics = metrics
+        FailingListener listener = new FailingListener()
+        preferences.addPreferencesChangeListener(listener)
+
+        shouldFail(IllegalStateException) {
+            preferences.node('/app').putAt('key', 'value')
+        }
+        assert metrics.counts[PreferencesMetrics.DISPATCH_PREFERENCE_CHANGE + FailingListener.name] == 1L
+    }
+
+    void testMXBeanIsUnregisteredOnShutdown() {
+        MBeanServer server = ManagementFactory.platformMBeanServer
+        Map<String, List> listeners = [:]
+        DefaultPreferencesManager manager = new DefaultPreferencesManager(PreferencesManagerTest.createApplication(['preferences.metrics': 'jmx'], listeners))
+        try {
+            assert server.isRegistered(OBJECT_NAME)
+            manager.injectPreferences(new ChurnModel())
+            // maps are exposed as open types by MXBeans
+            def counts = server.getAttribute(OBJECT_NAME, 'Counts')
+            assert counts.get([PreferencesMetrics.INJECT] as Object[]).get('value') == 1L
+
+            listeners[GriffonApplication.Event.SHUTDOWN_START.name].each { it.run(new Object[0]) }
+            assert !server.isRegistered(OBJECT_NAME)
+        } finally {
+            if (server.isRegistered(OBJECT_NAME)) server.unregisterMBean(OBJECT_NAME)
+        }
+    }
+
+    private static class FailingListener implements PreferenceChangeListener {
+        void preferenceChanged(PreferenceChangeEvent event) {
+            throw new IllegalStateException('boom')
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.DefaultPreferences
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class PreferencesNodeStressTest extends GroovyTestCase {
+    private static final int THREADS = 8
+    private static final int PARENTS = 20
+    private static final int CHILDREN = 50
+
+    void testConcurrentNodeCreationNeitherLosesNorDuplicatesNodes() {
+        Preferences prefs = new DefaultPreferences()
+        Map<String, AtomicInteger> additions = new ConcurrentHashMap<String, AtomicInteger>()
+        prefs.addNodeChangeListener({ NodeChangeEvent event ->
+            if (event.type == NodeChangeEvent.Type.ADDED) {
+                AtomicInteger counter = new AtomicInteger()
+                AtomicInteger existing = additions.putIfAbsent(event.path, counter)
+                (existing ?: counter).incrementAndGet()
+            }
+        } as NodeChangeListener)
+
+        Map<String, Set<PreferencesNode>> resolved = new ConcurrentHashMap<String, Set<PreferencesNode>>()
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>()
+        CountDownLatch start = new CountDownLatch(1)
+        List<Thread> threads = (0..<THREADS).collect { int t ->
+            Thread.start {
+                start.await()
+                try {
+                    // every thread walks the same paths, each one in a different order
+                    List<Integer> parents = (0..<PARENTS).toList()
+                    Collections.shuffle(parents, new Random(t))
+                    for (int p : parents) {
+                        for (int c = 0; c < CHILDREN; c++) {
+                            String path = "/p${p}/c${c}"
+                            PreferencesNode node = prefs.node(path)
+                            resolved.putIfAbsent(path, Collections.newSetFromMap(new IdentityHashMap<PreferencesNode, Boolean>()).asSynchronized())
+                            resolved[path] << node
+                        }
+                        // iterating while other threads add children must not fail
+                        prefs.root.children().each { name, node -> node.children().size() }
+                    }
+                } catch (Throwable e) {
+                    failures << e
+                }
+            }
+        }
+        start.countDown()
+        threads*.join()
+
+        assert failures.isEmpty()
+        assert prefs.root.children().size() == PARENTS
+        for (int p = 0; p < PARENTS; p++) {
+            PreferencesNode parent = prefs.root.getChildNode("p${p}")
+            assert parent.children().size() == CHILDREN
+            assert parent.children().keySet().toList() == (0..<CHILDREN).collect { "c${it}".toString() }
+        }
+        assert resolved.size() == PARENTS * CHILDREN
+        resolved.each { path, nodes -> assert nodes.size() == 1 }
+        assert additions.size() == PARENTS + PARENTS * CHILDREN
+        additions.each { path, count -> assert count.get() == 1 }
+    }
+}
@@ -1,6 +1,14 @@
 package griffon.plugins.preferences
 
+import griffon.plugins.preferences.persistors.JsonPreferencesPersistor
+import griffon.plugins.preferences.util.ContentHashed
+import groovy.transform.CompileStatic
+import griffon.plugins.preferences.util.ContentHashedCollections
+import org.codehaus.griffon.runtime.prefs.CompactPreferences
 import org.codehaus.griffon.runtime.prefs.DefaultPreferences
+import org.codehaus.griffon.runtime.prefs.PersistentPreferences
+
+import java.lang.management.ManagementFactory
 
 class PreferencesTest extends GroovyTestCase {
     void testSmokeTests() {
@@ -105,6 +113,207 @@ class PreferencesTest extends GroovyTestCase {
         assert prefs2.node('/foo/bar')['key1'] == 'value1'
         assert prefs2.node('/foo/bar')['key2'] == 'value2'
     }
+
+    void testTypedAccessors() {
+        Preferences prefs = new DefaultPreferences()
+        PrefsChangeListener changeListener = new PrefsChangeListener()
+        prefs.addPreferencesChangeListener(changeListener)
+        PreferencesNode node = prefs.node('/foo')
+
+        node.putInt('count', 3)
+        assert changeListener.event.newValue == 3
+        changeListener.event = null
+        node.putInt('count', 3)
+        assert !changeListener.event
+        node.putInt('count', 4)
+        assert changeListener.event.oldValue == 3
+        assert changeListener.event.newValue == 4
+
+        node.putDouble('ratio', 0.5d)
+        node.putBoolean('enabled', true)
+        node.putLong('stamp', 42L)
+        assert node.getInt('count', 0) == 4
+        assert node.getDouble('ratio', 0d) == 0.5d
+        assert node.getBoolean('enabled', false)
+        assert node.getLong('stamp', 0L) == 42L
+        assert node['count'] == 4
+        assert node.keys().toList().sort() == ['count', 'enabled', 'ratio', 'stamp']
+
+        node['count'] = '12'
+        assert node.getInt('count', 0) == 12
+        node['count'] = 'twelve'
+        assert node.getInt('count', 7) == 7
+        assert node.getInt('missing', 7) == 7
+    }
+
+    void testRewritingTheSameDoubleAllocatesNothing() {
+        Preferences prefs = new DefaultPreferences()
+        PrefsChangeListener changeListener = new PrefsChangeListener()
+        PreferencesNode node = prefs.node('/foo')
+        node.putDouble('ratio', 1234.5d)
+        prefs.addPreferencesChangeListener(changeListener)
+
+        def threads = ManagementFactory.threadMXBean
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return
+        long id = Thread.currentThread().id
+        rewriteDouble(node, 'ratio', 1234.5d, 1000)
+        long before = threads.getThreadAllocatedBytes(id)
+        rewriteDouble(node, 'ratio', 1234.5d, 100000)
+        long allocated = threads.getThreadAllocatedBytes(id) - before
+
+        assert !changeListener.event
+        // a single Double per write would take well over a megabyte
+        assert allocated < 100000
+        assert node.getDouble('ratio', 0d) == 1234.5d
+    }
+
+    @CompileStatic
+    private static void rewriteDouble(PreferencesNode node, String key, double value, int times) {
+        for (int i = 0; i < times; i++) {
+            node.putDouble(key, value)
+        }
+    }
+
+    void testContentHashedValues() {
+        Preferences prefs = new DefaultPreferences()
+        PrefsChangeListener changeListener = new PrefsChangeListener()
+        prefs.addPreferencesChangeListener(changeListener)
+        PreferencesNode node = prefs.node('/foo')
+
+        List<String> files = (0..<100000).collect { "file${it}".toString() }
+        List<String> recent = ContentHashedCollections.list(files)
+        assert recent instanceof ContentHashed
+        assert recent == files
+        shouldFail(UnsupportedOperationException) { recent << 'other' }
+
+        node['recent'] = recent
+        assert changeListener.event.newValue.is(recent)
+        changeListener.event = null
+        node['recent'] = ContentHashedCollections.list(files)
+        assert !changeListener.event
+        node['recent'] = ContentHashedCollections.list(files.reverse())
+        assert changeListener.event
+
+        Map<String, Integer> columns = ContentHashedCollections.map([name: 100, size: 50])
+        assert columns == [name: 100, size: 50]
+        assert columns.contentHash() == ContentHashedCollections.map([name: 100, size: 50]).contentHash()
+        assert ContentHashedCollections.set([1, 2, 3]) == ContentHashedCollections.set([3, 2, 1])
+        assert !ContentHashedCollections.areEqual(columns, ContentHashedCollections.map([name: 100, size: 60]))
+
+        // nested collections hash alike whether they are wrapped or not
+        List<Object> nestedPlain = ContentHashedCollections.list([[1, 2], [a: [3] as Set]])
+        List<Object> nestedHashed = ContentHashedCollections.list([ContentHashedCollections.list([1, 2]),
+            ContentHashedCollections.map([a: ContentHashedCollections.set([3])])])
+        assert nestedPlain.contentHash() == nestedHashed.contentHash()
+        assert nestedPlain.equals(nestedHashed)
+        assert nestedHashed.equals(nestedPlain)
+        assert nestedPlain.hashCode() == nestedHashed.hashCode()
+
+        JsonPreferencesPersistor persistor = new JsonPreferencesPersistor(null)
+        assert persistor.convertValue(ContentHashedCollections.set(['a', 'b'])) == ['a', 'b']
+    }
+
+    void testModificationStamps() {
+        [new DefaultPreferences(), new CompactPreferences(), new PersistentPreferences()].each { Preferences prefs ->
+            prefs.node('/a/b')['key'] = 'value'
+            prefs.node('/c/d')['key'] = 'value'
+            long saved = prefs.currentStamp()
+            assert !prefs.changedSince(saved)
+            assert prefs.root.subtreeModificationStamp() <= saved
+
+            prefs.node('/a/b')['key'] = 'value'
+            prefs.node('/a/b')['key'] = new String('value')
+            assert !prefs.changedSince(saved)
+            prefs.node('/c/d')['list'] = [1, 2]
+            saved = prefs.currentStamp()
+            prefs.node('/c/d')['list'] = [1L, 2L]
+            prefs.beginTransaction().put('/c/d', 'list', [1, 2]).commit()
+            assert !prefs.changedSince(saved)
+
+            prefs.node('/a/b')['key'] = 'other'
+            assert prefs.changedSince(saved)*.path() == ['/a/b']
+            assert prefs.root.subtreeModificationStamp() > saved
+            assert prefs.node('/a').subtreeModificationStamp() > saved
+            assert prefs.node('/a').modificationStamp() <= saved
+            assert prefs.node('/c').subtreeModificationStamp() <= saved
+
+            saved = prefs.currentStamp()
+            prefs.removeNode('/c/d')
+            prefs.node('/e')
+            assert prefs.changedSince(saved)*.path() as Set == ['/', '/c', '/e'] as Set
+        }
+    }
+
+    void testQueries() {
+        [new DefaultPreferences(), new CompactPreferences(), new PersistentPreferences()].each { Preferences prefs ->
+            prefs.node('/plugins/editor/window')['width'] = 800
+            prefs.node('/plugins/editor/window')['height'] = 600
+            prefs.node('/plugins/editor/fonts')['size'] = 12
+            prefs.node('/plugins/console/window')['width'] = 400
+            prefs.node('/plugins/console/deep/nested/window')['width'] = 200
+            prefs.node('/other/window')['width'] = 100
+
+            assert prefs.queryNodes('/plugins/*/window')*.path() as Set == ['/plugins/editor/window', '/plugins/console/window'] as Set
+            assert prefs.queryNodes('/plugins/**/window')*.path() as Set ==
+                ['/plugins/editor/window', '/plugins/console/window', '/plugins/console/deep/nested/window'] as Set
+            assert prefs.queryNodes('/**/window').toList().size() == 4
+            assert prefs.queryNodes('plugins.edit?r')*.path() == ['/plugins/editor']
+            assert prefs.queryNodes('/plugins/editor/fonts')*.path() == ['/plugins/editor/fonts']
+            assert !prefs.queryNodes('/missing/*').iterator().hasNext()
+
+            assert prefs.query('/plugins/*/window.*').collect { "${it.path}#${it.key}=${it.value}".toString() } as Set ==
+                ['/plugins/editor/window#width=800', '/plugins/editor/window#height=600', '/plugins/console/window#width=400'] as Set
+            assert prefs.query('/plugins/**', 'w*')*.value as Set == [800, 400, 200] as Set
+            assert prefs.query('/plugins/editor/*.size')*.value == [12]
+            assert prefs.query('/other/window').toList().size() == 1
+            prefs.node('/a/b/c')['key'] = 'value'
+            assert prefs.query('/a.b/c')*.key == ['key']
+            assert prefs.query('/a.b/c.k*')*.value == ['value']
+            assert prefs.query('plugins')*.key == []
+            assert prefs.query('*').toList().size() == 0
+            assert prefs.query('**')*.value as Set == [800, 600, 12, 400, 200, 100, 'value'] as Set
+
+            Iterator<PreferenceEntry> entries = prefs.query('/**.width').iterator()
+            assert entries.hasNext()
+            entries.next()
+            shouldFail(UnsupportedOperationException) { entries.remove() }
+        }
+    }
+
+    void testScopedListeners() {
+        [new DefaultPreferences(), new PersistentPreferences()].each { Preferences prefs ->
+            List<String> editor = []
+            List<String> fonts = []
+            List<String> other = []
+            List<String> nodes = []
+            PreferenceChangeListener editorListener = { editor << "${it.path}#${it.key}".toString() } as PreferenceChangeListener
+            prefs.addPreferencesChangeListener('/editor', editorListener)
+            prefs.addPreferencesChangeListener('editor.fonts', ['size'], { fonts << it.key } as PreferenceChangeListener)
+            prefs.addPreferencesChangeListener('/other', { other << it.key } as PreferenceChangeListener)
+            prefs.addNodeChangeListener('/editor/fonts/bold', { nodes << "${it.type} ${it.path}".toString() } as NodeChangeListener)
+
+            prefs.node('/editor')['width'] = 10
+            prefs.node('/editor/fonts')['size'] = 12
+            prefs.node('/editor/fonts')['family'] = 'mono'
+            prefs.node('/editorial')['key'] = 'value'
+            assert editor == ['/editor#width', '/editor/fonts#size', '/editor/fonts#family']
+            assert fonts == ['size']
+            assert !other
+            assert nodes == ['ADDED /editor', 'ADDED /editor/fonts']
+
+            prefs.node('/editor/fonts/bold')
+            prefs.removeNode('/editor')
+            assert nodes == ['ADDED /editor', 'ADDED /editor/fonts', 'ADDED /editor/fonts/bold', 'REMOVED /editor']
+
+            prefs.removePreferencesChangeListener(editorListener)
+            prefs.node('/editor')['width'] = 20
+            assert editor.size() == 3
+            prefs.addPreferencesChangeListener('/editor', editorListener)
+            prefs.removePreferencesChangeListener('/editor', editorListener)
+            prefs.node('/editor')['width'] = 30
+            assert editor.size() == 3
+        }
+    }
 }
 
 class PrefsChangeListener implements PreferenceChangeListener {
@@ -0,0 +1,240 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.CompactPreferences
+import org.codehaus.griffon.runtime.prefs.DefaultPreferences
+import org.codehaus.griffon.runtime.prefs.PersistentPreferences
+
+class PreferencesTransactionTest extends GroovyTestCase {
+    void testCommitPublishesASingleBatch() {
+        [new DefaultPreferences(), new PersistentPreferences()].each { Preferences prefs ->
+            prefs.node('/window')['width'] = 100
+            prefs.node('/obsolete')['key'] = 'value'
+            List<ChangeBatchEvent> batches = []
+            List<PreferenceChangeEvent> changes = []
+            prefs.addChangeBatchListener({ batches << it } as ChangeBatchListener)
+            prefs.addPreferencesChangeListener({ changes << it } as PreferenceChangeListener)
+
+            PreferencesTransaction tx = prefs.beginTransaction()
+            tx.put('/window', 'width', 200)
+                .put('/window', 'width', 300)
+                .put('/window/toolbar', 'visible', true)
+                .removeNode('/obsolete')
+            assert tx.get('/window', 'width') == 300
+            assert tx.get('window.toolbar', 'visible')
+            assert !tx.get('/obsolete', 'key')
+            assert prefs.node('/window')['width'] == 100
+            assert !prefs.root.getChildNode('window').getChildNode('toolbar')
+            assert !batches
+
+            tx.commit()
+            assert !tx.active
+            assert prefs.node('/window')['width'] == 300
+            assert prefs.node('/window/toolbar')['visible']
+            assert !prefs.root.getChildNode('obsolete')
+
+            assert batches.size() == 1
+            assert batches[0].nodeEvents*.path.sort() == ['/obsolete', '/window/toolbar']
+            assert batches[0].preferenceEvents.size() == 2
+            PreferenceChangeEvent width = batches[0].preferenceEvents.find { it.key == 'width' }
+            assert width.oldValue == 100
+            assert width.newValue == 300
+            assert changes.size() == 2
+
+            shouldFail(IllegalStateException) { tx.commit() }
+        }
+    }
+
+    void testRollbackDiscardsChangesSilently() {
+        [new DefaultPreferences(), new PersistentPreferences()].each { Preferences prefs ->
+            List events = []
+            prefs.addChangeBatchListener({ events << it } as ChangeBatchListener)
+            prefs.addPreferencesChangeListener({ events << it } as PreferenceChangeListener)
+            prefs.addNodeChangeListener({ events << it } as NodeChangeListener)
+
+            PreferencesTransaction tx = prefs.beginTransaction()
+            tx.createNode('/a/b').put('/a', 'key', 'value')
+            tx.rollback()
+
+            assert !tx.active
+            assert !prefs.root.getChildNode('a')
+            assert !events
+        }
+    }
+
+    void testFailedCommitLeavesNoTraces() {
+        [new DefaultPreferences(), new CompactPreferences(), new PersistentPreferences()].each { Preferences prefs ->
+            prefs.node('/a')['k'] = 1
+            prefs.node('/a')['gone'] = 'value'
+            prefs.node('/a')['bad'] = new FailingValue()
+            prefs.node('/old')['key'] = 'value'
+            List events = []
+            prefs.addChangeBatchListener({ events << it } as ChangeBatchListener)
+            prefs.addPreferencesChangeListener({ events << it } as PreferenceChangeListener)
+            prefs.addNodeChangeListener({ events << it } as NodeChangeListener)
+
+            PreferencesTransaction tx = prefs.beginTransaction()
+            tx.put('/a', 'k', 2)
+                .remove('/a', 'gone')
+                .put('/n/m', 'key', 'value')
+                .removeNode('/old')
+                .put('/a', 'bad', 'replaced')
+            shouldFail(IllegalStateException) { tx.commit() }
+
+            prefs.beginBatch()
+            prefs.node('/a')['k'] = 3
+            shouldFail(IllegalStateException) { prefs.beginTransaction().put('/a', 'k', 4).put('/a', 'bad', 'replaced').commit() }
+            prefs.endBatch()
+
+            assert prefs.node('/a')['k'] == 3
+            assert prefs.node('/a')['gone'] == 'value'
+            assert !prefs.root.getChildNode('n')
+            assert prefs.node('/old')['key'] == 'value'
+            assert events.size() == 2
+            assert events[0].key == 'k' && events[0].newValue == 3
+            assert events[1] instanceof ChangeBatchEvent
+            assert events[1].preferenceEvents*.newValue == [3]
+            assert !events[1].nodeEvents
+
+            shouldFail(IllegalArgumentException) { prefs.beginTransaction().put('/a', 'k', 5).put('/a', null, 5).commit() }
+            assert prefs.node('/a')['k'] == 3
+        }
+    }
+
+    void testBatchesPublishTheNetChangesInOrder() {
+        [new DefaultPreferences(), new PersistentPreferences()].each { Preferences prefs ->
+            prefs.node('/a')['k'] = [1]
+            List events = []
+            List<ChangeBatchEvent> batches = []
+            prefs.addPreferencesChangeListener({ events << it } as PreferenceChangeListener)
+            prefs.addNodeChangeListener({ events << it } as NodeChangeListener)
+            prefs.addChangeBatchListener({ batches << it } as ChangeBatchListener)
+
+            prefs.beginBatch()
+            prefs.node('/a')['k'] = [2]
+            prefs.node('/a')['k'] = [1L]
+            prefs.node('/a')['j'] = 'x'
+            prefs.removeNode('/a')
+            prefs.node('/b')
+            prefs.removeNode('/b')
+            prefs.node('/b')
+            prefs.node('/c')
+            prefs.removeNode('/c')
+            prefs.endBatch()
+
+            assert events.collect { it instanceof NodeChangeEvent ? "${it.type} ${it.path}" : "${it.path}.${it.key}" } ==
+                ['/a.j', 'REMOVED /a', 'ADDED /b']
+            assert batches.size() == 1
+            assert batches[0].nodeEvents.collect { "${it.type} ${it.path}" } == ['REMOVED /a', 'ADDED /b']
+            assert batches[0].preferenceEvents*.key == ['j']
+
+            events.clear()
+            prefs.beginBatch()
+            prefs.node('/b')['k'] = 1
+            prefs.removeNode('/b')
+            prefs.node('/b')['k'] = 2
+            prefs.endBatch()
+            assert events.collect { it instanceof NodeChangeEvent ? "${it.type} ${it.path}" : "${it.path}.${it.key}=${it.newValue}" } ==
+                ['REMOVED /b', 'ADDED /b', '/b.k=2']
+        }
+    }
+
+    void testBatchAwareListenersReceiveOneCallbackPerBatch() {
+        [new DefaultPreferences(), new PersistentPreferences()].each { Preferences prefs ->
+            BatchAwareListener aware = new BatchAwareListener()
+            List<PreferenceChangeEvent> changes = []
+            List<PreferenceChangeEvent> adapted = []
+            PreferenceChangeListener plain = { changes << it } as PreferenceChangeListener
+            prefs.addPreferencesChangeListener(aware)
+            prefs.addNodeChangeListener(aware)
+            prefs.addPreferencesChangeListener(plain)
+            PreferenceChangeListener recording = { adapted << it } as PreferenceChangeListener
+            prefs.addChangeBatchListener(new ChangeBatchAdapter(recording))
+
+            prefs.beginBatch()
+            (0..<1000).each { prefs.node("/bulk/n${it % 10}")["key${it}"] = it }
+            prefs.endBatch()
+            assert aware.batches.size() == 1
+            assert aware.batches[0].preferenceEvents.size() == 1000
+            assert aware.batches[0].nodeEvents.size() == 11
+            assert !aware.changes
+            assert changes.size() == 1000
+            assert adapted.size() == 1000
+
+            Preferences other = new DefaultPreferences()
+            other.node('/bulk/n0')['key0'] = 'merged'
+            other.node('/bulk/n0')['extra'] = 'merged'
+            prefs.node('/bulk').merge(other.node('/bulk'))
+            assert aware.batches.size() == 2
+            assert aware.batches[1].preferenceEvents*.key as Set == ['key0', 'extra'] as Set
+            assert !aware.changes
+
+            prefs.node('/single')['key'] = 'value'
+            assert aware.changes*.path == ['/single', '/single']
+            assert aware.batches.size() == 2
+
+            prefs.removeChangeBatchListener(new ChangeBatchAdapter(recording))
+            assert !prefs.changeBatchListeners
+        }
+    }
+
+    void testScopedBatchAwareListenersReceiveTheirPartOfEachBatch() {
+        [new DefaultPreferences(), new PersistentPreferences()].each { Preferences prefs ->
+            BatchAwareListener editor = new BatchAwareListener()
+            BatchAwareListener fonts = new BatchAwareListener()
+            BatchAwareListener other = new BatchAwareListener()
+            prefs.addPreferencesChangeListener('/editor', editor)
+            prefs.addNodeChangeListener('/editor', editor)
+            prefs.addPreferencesChangeListener('/editor', ['size'], fonts)
+            prefs.addPreferencesChangeListener('/other', other)
+
+            prefs.beginBatch()
+            prefs.node('/editor/window')['width'] = 800
+            prefs.node('/editor/fonts')['size'] = 12
+            prefs.node('/console')['width'] = 400
+            prefs.endBatch()
+
+            assert !editor.changes
+            assert editor.batches.size() == 1
+            assert editor.batches[0].preferenceEvents.collect { "${it.path}.${it.key}" } == ['/editor/window.width', '/editor/fonts.size']
+            assert editor.batches[0].nodeEvents*.path as Set == ['/editor', '/editor/window', '/editor/fonts'] as Set
+            assert !fonts.changes
+            assert fonts.batches.size() == 1
+            assert fonts.batches[0].preferenceEvents*.key == ['size']
+            assert !fonts.batches[0].nodeEvents
+            assert !other.batches
+            assert !other.changes
+
+            prefs.node('/editor/window')['width'] = 1024
+            assert editor.changes*.key == ['width']
+            assert editor.batches.size() == 1
+        }
+    }
+}
+
+class BatchAwareListener implements PreferenceChangeListener, NodeChangeListener, ChangeBatchListener {
+    List<ChangeBatchEvent> batches = []
+    List<Object> changes = []
+
+    void preferenceChanged(PreferenceChangeEvent event) {
+        changes << event
+    }
+
+    void nodeChanged(NodeChangeEvent event) {
+        changes << event
+    }
+
+    void changesCommitted(ChangeBatchEvent event) {
+        batches << event
+    }
+}
+
+class FailingValue {
+    boolean equals(Object other) {
+        if (other == 'replaced') throw new IllegalStateException('boom')
+        this.is(other)
+    }
+
+    int hashCode() {
+        System.identityHashCode(this)
+    }
+}
@@ -0,0 +1,45 @@
+package griffon.plugins.preferences
+
+import org.codehaus.griffon.runtime.prefs.converters.ValueConverters
+
+import java.beans.PropertyEditorManager
+import java.beans.PropertyEditorSupport
+
+class ValueConvertersTest extends GroovyTestCase {
+    void testBuiltInConvertersAreCached() {
+        assert ValueConverters.getConverter(Integer.TYPE, null).is(ValueConverters.getConverter(Integer.TYPE, ''))
+        assert ValueConverters.convert(Integer.TYPE, ' 42 ', null) == 42
+        assert ValueConverters.convert(Boolean, 'true', null) == Boolean.TRUE
+    }
+
+    void testEditorsRegisteredLaterArePickedUpOnceCleared() {
+        assert ValueConverters.getConverter(Dimension2, null).is(ValueConverters.IDENTITY)
+        assert ValueConverters.convert(Dimension2, '3x4', null) == '3x4'
+
+        PropertyEditorManager.registerEditor(Dimension2, SizeTextEditor)
+        try {
+            // misses are cached until cleared
+            assert ValueConverters.convert(Dimension2, '3x4', null) == '3x4'
+            ValueConverters.clear()
+            Dimension2 dimension = ValueConverters.convert(Dimension2, '3x4', null)
+            assert dimension.width == 3
+            assert dimension.height == 4
+        } finally {
+            PropertyEditorManager.registerEditor(Dimension2, null)
+            ValueConverters.clear()
+        }
+        assert ValueConverters.getConverter(Dimension2, null).is(ValueConverters.IDENTITY)
+    }
+}
+
+class Dimension2 {
+    int width
+    int height
+}
+
+class SizeTextEditor extends PropertyEditorSupport {
+    void setAsText(String text) {
+        List<String> parts = text.tokenize('x')
+        setValue(new Dimension2(width: parts[0] as int, height: parts[1] as int))
+    }
+}